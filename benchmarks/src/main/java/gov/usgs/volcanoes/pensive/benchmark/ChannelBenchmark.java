@@ -0,0 +1,155 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.benchmark;
+
+import gov.usgs.plot.data.SliceWave;
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+import gov.usgs.volcanoes.pensive.Channel;
+import gov.usgs.volcanoes.pensive.ChannelPlot;
+import gov.usgs.volcanoes.pensive.plot.ChannelPlotter;
+import gov.usgs.volcanoes.pensive.plot.FullPlotter;
+import gov.usgs.volcanoes.pensive.plot.Spectra;
+import gov.usgs.volcanoes.pensive.plot.SpectraCalculator;
+import gov.usgs.volcanoes.pensive.plot.ThumbnailPlotter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-channel plotting path at Pensive's default settings.
+ *
+ * @author Tom Parker
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChannelBenchmark {
+
+  private static final String CHANNEL = "BENCH_EHZ_AV";
+
+  /** samples per second of the synthetic wave. */
+  @Param({"50", "100", "200"})
+  public double samplingRate;
+
+  private Wave wave;
+  private Wave detrended;
+  private Channel channel;
+  private SpectraCalculator calculator;
+  private ChannelPlotter full;
+  private ChannelPlotter thumb;
+  private SliceWave slice;
+  private Spectra spectra;
+  private BufferedImage fullImage;
+  private BufferedImage thumbImage;
+
+  /**
+   * Build a channel and plotters holding a synthetic wave.
+   */
+  @Setup
+  public void setup() {
+    final ConfigFile config = new ConfigFile();
+    final Dimension fullDimension = new Dimension(576, 343);
+    final Dimension thumbDimension = new Dimension(151, 99);
+
+    wave = SyntheticWave.create(samplingRate);
+    detrended = SyntheticWave.copy(wave);
+    detrended.detrend();
+    detrended.removeMean();
+
+    channel = new Channel(CHANNEL, 0, fullDimension, thumbDimension, true, config, "BENCH",
+        "Bench");
+    calculator = new SpectraCalculator(config);
+
+    spectra = calculator.compute(detrended, SyntheticWave.T1, SyntheticWave.T2);
+    slice = new SliceWave(detrended);
+    slice.setSlice(SyntheticWave.T1, SyntheticWave.T2);
+    full = new FullPlotter(CHANNEL, 0, fullDimension, true, config);
+    thumb = new ThumbnailPlotter(CHANNEL, 0, thumbDimension, config);
+
+    fullImage = new BufferedImage(fullDimension.width, fullDimension.height + 70,
+        BufferedImage.TYPE_INT_RGB);
+    thumbImage = new BufferedImage(thumbDimension.width, thumbDimension.height,
+        BufferedImage.TYPE_INT_RGB);
+  }
+
+  /**
+   * Detrend, compute spectra, and build both plotters' renderers, as done once per channel per
+   * plot.
+   *
+   * @return the prepared plot
+   */
+  @Benchmark
+  public ChannelPlot prepare() {
+    return channel.prepare(SyntheticWave.PLOT_END_MS, SyntheticWave.copy(wave));
+  }
+
+  /**
+   * Compute spectra.
+   *
+   * @return the spectra
+   */
+  @Benchmark
+  public Spectra spectra() {
+    return calculator.compute(detrended, SyntheticWave.T1, SyntheticWave.T2);
+  }
+
+  /**
+   * Build renderers for and draw a full channel plot.
+   *
+   * @return the image drawn on
+   */
+  @Benchmark
+  public BufferedImage renderFull() {
+    return render(full, fullImage);
+  }
+
+  /**
+   * Build renderers for and draw a thumbnail channel plot.
+   *
+   * @return the image drawn on
+   */
+  @Benchmark
+  public BufferedImage renderThumbnail() {
+    return render(thumb, thumbImage);
+  }
+
+  /**
+   * Format spectra as CSV.
+   *
+   * @return CSV text
+   */
+  @Benchmark
+  public String csv() {
+    return ChannelPlotter.getCsv(spectra, SyntheticWave.PLOT_END_MS,
+        Channel.DEFAULT_DATA_TIMESTAMP_FORMAT);
+  }
+
+  private BufferedImage render(final ChannelPlotter plotter, final BufferedImage image) {
+    final Graphics2D g = image.createGraphics();
+    plotter.plot(slice, spectra).render(g);
+    g.dispose();
+    return image;
+  }
+}
@@ -0,0 +1,38 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run Pensive's benchmarks with the GC profiler attached, so allocation rates are reported
+ * alongside times. Accepts the usual JMH command line options.
+ *
+ * @author Tom Parker
+ */
+public final class PensiveBenchmarks {
+
+  private PensiveBenchmarks() {}
+
+  /**
+   * Where it all begins.
+   *
+   * @param args JMH command line args
+   * @throws Exception when things go wrong
+   */
+  public static void main(final String[] args) throws Exception {
+    final Options options = new OptionsBuilder()
+        .parent(new CommandLineOptions(args))
+        .addProfiler(GCProfiler.class)
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,153 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.benchmark;
+
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+import gov.usgs.volcanoes.pensive.plot.PlotImage;
+import gov.usgs.volcanoes.pensive.plot.PngEncoder;
+import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole-subnet rendering, PNG encoding and file naming.
+ *
+ * @author Tom Parker
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubnetBenchmark {
+
+  private static final String NETWORK = "BENCH";
+  private static final String SUBNET = "Bench";
+  private static final int CHANNELS = 4;
+
+  /** samples per second of the synthetic waves. */
+  @Param({"50", "100", "200"})
+  public double samplingRate;
+
+  /** If true, write palette PNGs when possible. */
+  @Param({"true", "false"})
+  public boolean pngIndexed;
+
+  private SubnetPlotter subnet;
+  private Wave wave;
+  private ExecutorService executor;
+  private PngEncoder encoder;
+  private List<PlotImage> images;
+  private File pathRoot;
+
+  /**
+   * Build a subnet and render it once for the encoding benchmark.
+   *
+   * @throws Exception when things go wrong
+   */
+  @Setup
+  public void setup() throws Exception {
+    pathRoot = File.createTempFile("pensive-benchmark", "");
+    pathRoot.delete();
+
+    final ConfigFile config = new ConfigFile();
+    config.put("pathRoot", pathRoot.getPath());
+    config.put("pngIndexed", "" + pngIndexed);
+    final List<String> channels = new ArrayList<String>();
+    for (int i = 0; i < CHANNELS; i++) {
+      channels.add("STA" + i + " EHZ AV");
+    }
+    config.putList(SUBNET + ".channel", channels);
+
+    subnet = new SubnetPlotter(NETWORK, SUBNET, config);
+    wave = SyntheticWave.create(samplingRate);
+    executor = Executors.newSingleThreadExecutor();
+    encoder = new PngEncoder(config);
+    images = subnet.render(SyntheticWave.PLOT_END_MS, waves(), executor);
+  }
+
+  /**
+   * Remove files written by the encoding benchmark.
+   *
+   * @throws IOException when things go wrong
+   */
+  @TearDown
+  public void tearDown() throws IOException {
+    executor.shutdown();
+    delete(pathRoot);
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private Wave[] waves() {
+    final Wave[] waves = new Wave[CHANNELS];
+    for (int i = 0; i < CHANNELS; i++) {
+      waves[i] = SyntheticWave.copy(wave);
+    }
+    return waves;
+  }
+
+  /**
+   * Prepare every channel and draw the full and thumbnail images.
+   *
+   * @return rendered images
+   * @throws InterruptedException when interrupted
+   */
+  @Benchmark
+  public List<PlotImage> render() throws InterruptedException {
+    return subnet.render(SyntheticWave.PLOT_END_MS, waves(), executor);
+  }
+
+  /**
+   * Encode and write the full and thumbnail images.
+   */
+  @Benchmark
+  public void encode() {
+    for (final PlotImage image : images) {
+      encoder.write(image);
+    }
+  }
+
+  /**
+   * Generate a plot file name.
+   *
+   * @return file name
+   */
+  @Benchmark
+  public String fileName() {
+    return subnet.generateFileBase(SyntheticWave.PLOT_END_MS);
+  }
+}
@@ -0,0 +1,64 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.benchmark;
+
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.core.time.J2kSec;
+import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+
+import java.util.Random;
+
+/**
+ * Waves shaped roughly like volcanic tremor: a few tones over a noise floor.
+ *
+ * @author Tom Parker
+ */
+public final class SyntheticWave {
+
+  /** end of the benchmark plot, a plot boundary. */
+  public static final long PLOT_END_MS = 1444521600000L;
+
+  /** time of last sample, J2kSec. */
+  public static final double T2 = J2kSec.fromEpoch(PLOT_END_MS);
+
+  /** time of first sample, J2kSec. */
+  public static final double T1 = T2 - SubnetPlotter.DURATION_S;
+
+  private static final double[] TONES = {1.5, 3.2, 7.0};
+
+  private SyntheticWave() {}
+
+  /**
+   * Create a wave covering one plot.
+   *
+   * @param samplingRate samples per second
+   * @return a new wave
+   */
+  public static Wave create(final double samplingRate) {
+    final Random random = new Random(samplingRate > 0 ? (long) samplingRate : 0);
+    final int[] samples = new int[(int) (SubnetPlotter.DURATION_S * samplingRate)];
+    for (int i = 0; i < samples.length; i++) {
+      final double t = i / samplingRate;
+      double value = 200 * random.nextGaussian();
+      for (final double tone : TONES) {
+        value += 500 * Math.sin(2 * Math.PI * tone * t);
+      }
+      samples[i] = (int) value;
+    }
+    return new Wave(samples, T1, samplingRate);
+  }
+
+  /**
+   * Copy a wave so it can be modified.
+   *
+   * @param wave wave to copy
+   * @return a new wave
+   */
+  public static Wave copy(final Wave wave) {
+    return new Wave(wave.buffer.clone(), wave.getStartTime(), wave.getSamplingRate());
+  }
+}
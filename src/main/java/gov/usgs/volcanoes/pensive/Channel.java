@@ -14,9 +14,20 @@ import gov.usgs.volcanoes.core.time.J2kSec;
 import gov.usgs.volcanoes.core.time.Time;
 import gov.usgs.volcanoes.pensive.plot.ChannelPlotter;
 import gov.usgs.volcanoes.pensive.plot.FullPlotter;
+import gov.usgs.volcanoes.pensive.plot.Spectra;
+import gov.usgs.volcanoes.pensive.plot.SpectraCalculator;
 import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
 import gov.usgs.volcanoes.pensive.plot.ThumbnailPlotter;
-import gov.usgs.volcanoes.swarm.data.SeismicDataSource;
+import gov.usgs.volcanoes.pensive.store.EnvelopePool;
+import gov.usgs.volcanoes.pensive.store.EnvelopeReader;
+import gov.usgs.volcanoes.pensive.store.EnvelopeWriter;
+import gov.usgs.volcanoes.pensive.store.SpectraHeader;
+import gov.usgs.volcanoes.pensive.store.SpectraPool;
+import gov.usgs.volcanoes.pensive.store.SpectraReader;
+import gov.usgs.volcanoes.pensive.store.SpectraWriter;
+import gov.usgs.volcanoes.pensive.store.WaveEnvelope;
+import gov.usgs.volcanoes.pensive.wave.SharedWaveCache;
+import gov.usgs.volcanoes.pensive.wave.WaveFetcher;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,7 +39,8 @@ import java.io.IOException;
 import java.util.regex.Matcher;
 
 /**
- * A single channel of seismic data on a single subnet plot.
+ * A single channel of seismic data on a single subnet plot. Between plots I keep my data files
+ * open for appending, and the files last read for restoring plots. Both are guarded by my lock.
  *
  * @author Tom Parker
  */
@@ -46,6 +58,12 @@ public class Channel {
   /** Default data timestamp. */
   public static final String DEFAULT_DATA_TIMESTAMP_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS";
 
+  /** Default data file format, binary or csv. */
+  public static final String DEFAULT_DATA_FORMAT = "binary";
+
+  /** Default seconds of data requested beyond each end of the plot. */
+  public static final double DEFAULT_WAVE_PADDING = 0;
+
   /** channel name in config file format. */
   public final String name;
 
@@ -55,6 +73,9 @@ public class Channel {
   /** My thumbnail ChannelPlotter. */
   private final ChannelPlotter thumb;
 
+  /** Computes spectra shared by my plotters. */
+  private final SpectraCalculator spectraCalculator;
+
   /** If true write data files. */
   private final boolean writeData;
 
@@ -76,6 +97,39 @@ public class Channel {
   /** data file timestamp format. */
   private final String dataTimestampFormat;
 
+  /** If true write binary spectra files rather than CSV. */
+  private final boolean binaryData;
+
+  /** my open binary data file, or null if none is open. Guarded by me. */
+  private SpectraWriter dataWriter;
+
+  /** my open envelope file, or null if none is open. Guarded by me. */
+  private EnvelopeWriter envelopeWriter;
+
+  /** last binary data file read, or null if none has been read. Guarded by me. */
+  private SpectraReader dataReader;
+
+  /** path of dataReader's file. Guarded by me. */
+  private File dataReaderFile;
+
+  /** size of dataReader's file when it was opened. Guarded by me. */
+  private long dataReaderLength;
+
+  /** last envelope file read, or null if none has been read. Guarded by me. */
+  private EnvelopeReader envelopeReader;
+
+  /** path of envelopeReader's file. Guarded by me. */
+  private File envelopeReaderFile;
+
+  /** size of envelopeReader's file when it was opened. Guarded by me. */
+  private long envelopeReaderLength;
+
+  /** seconds of data requested beyond each end of the plot, used only for spectra. */
+  private final double wavePadding;
+
+  /** If true, I've warned that restored spectra don't cover the frequencies plotted. */
+  private volatile boolean narrowBandWarned;
+
   /**
    * Class constructor.
    *
@@ -95,6 +149,7 @@ public class Channel {
 
     plot = new FullPlotter(channel, index, plotDimension, decorateX, config);
     thumb = new ThumbnailPlotter(channel, index, thumbDimension, config);
+    spectraCalculator = new SpectraCalculator(config);
     writeData = config.getBoolean("writeData", DEFAULT_WRITE_DATA);
 
     dataFilePathFormat = config.getString("dataFilePathFormat", config.getString("filePathFormat"));
@@ -102,56 +157,197 @@ public class Channel {
         config.getString("dataFileSuffixFormat", DEFAULT_DATA_FILE_SUFFIX_FORMAT);
     dataPathRoot = config.getString("dataPathRoot", config.getString("pathRoot"));
     dataTimestampFormat = config.getString("dataTimestampFormat", DEFAULT_DATA_TIMESTAMP_FORMAT);
+    binaryData = !"csv".equalsIgnoreCase(config.getString("dataFormat", DEFAULT_DATA_FORMAT));
+    wavePadding = Math.max(0, config.getDouble("wavePadding", DEFAULT_WAVE_PADDING));
 
     this.networkName = networkName;
     this.subnetName = subnetName;
   }
 
   /**
-   * Gather new wave data and offer to plotters.
+   * Decide if channels configured by a stanza store the spectra and envelopes needed to restore
+   * their plots. Only binary data files are read back.
+   *
+   * @param config a config stanza
+   * @return true if plots can be restored from stored data
+   */
+  public static boolean storesData(final ConfigFile config) {
+    return config.getBoolean("writeData", DEFAULT_WRITE_DATA)
+        && !"csv".equalsIgnoreCase(config.getString("dataFormat", DEFAULT_DATA_FORMAT));
+  }
+
+  /**
+   * Register interest in the wave needed for a plot.
+   *
+   * @param plotEndMs Time of last sample of waveform
+   * @param waveCache cache shared with other subnets
+   */
+  public void subscribe(final long plotEndMs, final SharedWaveCache waveCache) {
+    final double t2 = J2kSec.fromEpoch(plotEndMs);
+    final double t1 = t2 - SubnetPlotter.DURATION_S;
+    waveCache.subscribe(name.replace('_', ' '), t1 - wavePadding, t2 + wavePadding);
+  }
+
+  /**
+   * Withdraw interest in the wave needed for a plot.
+   *
+   * @param plotEndMs Time of last sample of waveform
+   * @param waveCache cache shared with other subnets
+   */
+  public void release(final long plotEndMs, final SharedWaveCache waveCache) {
+    final double t2 = J2kSec.fromEpoch(plotEndMs);
+    final double t1 = t2 - SubnetPlotter.DURATION_S;
+    waveCache.release(name.replace('_', ' '), t1 - wavePadding, t2 + wavePadding);
+  }
+
+  /**
+   * Gather new wave data, padded so spectrogram windows may run across the ends of the plot.
    *
    * @param plotEndMs Time of last sample of waveform
-   * @param dataSource Who to ask for data
+   * @param waveFetcher Who to ask for data
+   * @return the wave or null if no data is available
    */
-  public void updateWave(final long plotEndMs, final SeismicDataSource dataSource) {
+  public Wave fetchWave(final long plotEndMs, final WaveFetcher waveFetcher) {
     final double t2 = J2kSec.fromEpoch(plotEndMs);
     final double t1 = t2 - SubnetPlotter.DURATION_S;
-    final Wave w = dataSource.getWave(name.replace('_', ' '), t1, t2);
-    if (w != null && w.numSamples() > 0) {
-      w.detrend();
-      w.removeMean();
-      SliceWave wave = new SliceWave(w);
-      wave.setSlice(t1, t2);
-      plot.setWave(wave);
-      wave = new SliceWave(w);
-      wave.setSlice(t1, t2);
-      thumb.setWave(wave);
-    } else {
-      plot.setWave(null);
-      thumb.setWave(null);
+    return waveFetcher.getWave(name.replace('_', ' '), t1 - wavePadding, t2 + wavePadding);
+  }
+
+  /**
+   * Prepare a plot of wave data. Plots of different intervals may be prepared concurrently. Only
+   * appends to my data files are serialized.
+   *
+   * @param plotEndMs Time of last sample of waveform
+   * @param w wave returned by fetchWave, may be null
+   * @return full and thumbnail renderers
+   */
+  public ChannelPlot prepare(final long plotEndMs, final Wave w) {
+    if (w == null || w.numSamples() == 0) {
+      return new ChannelPlot(plot.plot(null, null), thumb.plot(null, null), null);
+    }
+
+    final double t2 = J2kSec.fromEpoch(plotEndMs);
+    final double t1 = t2 - SubnetPlotter.DURATION_S;
+    w.detrend();
+    w.removeMean();
+    final Spectra spectra = spectraCalculator.compute(w, t1 - wavePadding, t2 + wavePadding);
+    if (writeData && binaryData) {
+      if (spectra != null) {
+        writeSpectra(plotEndMs, spectra, w.getSamplingRate());
+      }
+      writeEnvelope(plotEndMs, WaveEnvelope.compute(w, t1, t2));
+    } else if (writeData && spectra != null) {
+      writeData(plotEndMs, spectra);
+    }
+
+    return plot(w, t1, t2, spectra);
+  }
+
+  /**
+   * Prepare a plot from the spectra and envelope written when it was last prepared, without its
+   * wave. Plots of different intervals may be restored concurrently. Spectra are stored only for
+   * the frequencies plotted when they were computed, so a wider band is drawn blank.
+   *
+   * @param plotEndMs Time of last sample of waveform
+   * @return full and thumbnail renderers, or null if nothing was stored for the plot
+   */
+  public ChannelPlot restore(final long plotEndMs) {
+    final double t2 = J2kSec.fromEpoch(plotEndMs);
+    final double t1 = t2 - SubnetPlotter.DURATION_S;
+    final EnvelopeReader envelopes = getEnvelopeReader(plotEndMs);
+    final int[] envelope = envelopes == null ? null : envelopes.get(plotEndMs);
+    if (envelope == null) {
+      return null;
     }
+
+    final SpectraReader data = getDataReader(plotEndMs);
+    final Spectra spectra = data == null ? null : data.getSpectra(t1, t2);
+    if (spectra != null && !narrowBandWarned && !spectraCalculator.covers(spectra)) {
+      narrowBandWarned = true;
+      LOGGER.warn("Spectra stored for {} span {} - {} Hz. Wider frequencies will be blank.", name,
+          spectra.getMinFreq(), spectra.getMaxFreq());
+    }
+    return plot(WaveEnvelope.toWave(envelope, t1, t2), t1, t2, spectra);
   }
 
   /**
-   * Create a full plot.
+   * Prepare a plot longer than a single interval by pooling the spectra and envelopes written for
+   * each interval it spans. No wave is needed. Plots may be restored concurrently.
    *
-   * @return The plot Renderer
+   * @param plotEndMs Time of last sample of waveform
+   * @param durationS seconds spanned by the plot, a multiple of the interval
+   * @param maxPooling if true pool the greatest power of each time slice, otherwise the mean
+   * @return full and thumbnail renderers
    */
-  public Renderer plot() {
-    if (writeData) {
-      writeData();
+  public ChannelPlot restore(final long plotEndMs, final int durationS, final boolean maxPooling) {
+    final double t2 = J2kSec.fromEpoch(plotEndMs);
+    final double t1 = t2 - durationS;
+    final long intervalMs = SubnetPlotter.DURATION_S * 1000;
+    final EnvelopePool envelopes = new EnvelopePool(t1, t2);
+    SpectraPool spectra = null;
+    SpectraReader pooled = null;
+    for (long end = plotEndMs - durationS * 1000L + intervalMs; end <= plotEndMs;
+        end += intervalMs) {
+      final EnvelopeReader envelopeFile = getEnvelopeReader(end);
+      final int[] envelope = envelopeFile == null ? null : envelopeFile.get(end);
+      if (envelope != null) {
+        final double intervalEnd = J2kSec.fromEpoch(end);
+        envelopes.add(intervalEnd - SubnetPlotter.DURATION_S, intervalEnd, envelope);
+      }
+
+      final SpectraReader data = getDataReader(end);
+      if (data == null || data == pooled) {
+        continue;
+      }
+      if (spectra == null) {
+        spectra = new SpectraPool(data.getHeader(), t1, t2, maxPooling);
+      }
+      if (!data.poolInto(spectra)) {
+        LOGGER.warn("Cannot pool spectra of {} with different frequency bins.", name);
+      }
+      pooled = data;
     }
 
-    return plot.plot();
+    final int[] envelope = envelopes.toEnvelope();
+    if (envelope == null) {
+      return new ChannelPlot(plot.plot(null, null), thumb.plot(null, null), null);
+    }
+    return plot(WaveEnvelope.toWave(envelope, t1, t2), t1, t2,
+        spectra == null ? null : spectra.toSpectra());
+  }
+
+  /**
+   * Draw a wave and its spectra.
+   *
+   * @param w the wave
+   * @param t1 time of first sample on plot, J2kSec
+   * @param t2 time of last sample on plot, J2kSec
+   * @param spectra spectra of the wave, may be null
+   * @return full and thumbnail renderers
+   */
+  private ChannelPlot plot(final Wave w, final double t1, final double t2,
+      final Spectra spectra) {
+    SliceWave wave = new SliceWave(w);
+    wave.setSlice(t1, t2);
+    final Renderer full = plot.plot(wave, spectra, t2 - t1);
+    wave = new SliceWave(w);
+    wave.setSlice(t1, t2);
+    return new ChannelPlot(full, thumb.plot(wave, spectra, t2 - t1), spectra);
   }
 
-  private void writeData() {
-    final String csv = plot.getCsv(dataTimestampFormat);
+  /**
+   * Append spectra to my data file. Concurrent plots share the file, so appends are serialized.
+   *
+   * @param plotEndMs Time of last sample of waveform
+   * @param spectra spectra to write
+   */
+  private synchronized void writeData(final long plotEndMs, final Spectra spectra) {
+    final String csv = ChannelPlotter.getCsv(spectra, plotEndMs, dataTimestampFormat);
     if (csv == null) {
       return;
     }
 
-    final String fileBase = generateFileBase(plot.getPlotEndMs());
+    final String fileBase = generateFileBase(plotEndMs, ".dat");
     final File file = new File(fileBase);
 
     file.getParentFile().mkdirs();
@@ -170,7 +366,140 @@ public class Channel {
 
   }
 
-  private String generateFileBase(final long timeMs) {
+  /**
+   * Append the time slices of a plot to my binary data file, which is kept open until a plot
+   * belongs in another file. Concurrent plots share the file, so appends are serialized.
+   *
+   * @param plotEndMs Time of last sample of waveform
+   * @param spectra spectra to write
+   * @param samplingRate sampling rate of the wave analyzed
+   */
+  private synchronized void writeSpectra(final long plotEndMs, final Spectra spectra,
+      final double samplingRate) {
+    final File file = new File(generateFileBase(plotEndMs, ".spc"));
+    final double t2 = J2kSec.fromEpoch(plotEndMs);
+    try {
+      if (dataWriter == null || !dataWriter.file.equals(file)) {
+        closeSpectra();
+        final SpectraHeader header =
+            SpectraHeader.of(spectra, spectraCalculator.getWindowS(samplingRate));
+        dataWriter = new SpectraWriter(file, header);
+      }
+      dataWriter.append(spectra, t2 - SubnetPlotter.DURATION_S, t2);
+    } catch (final IOException e) {
+      LOGGER.error("Cannot write {}. {}", file, e.getLocalizedMessage());
+      closeSpectra();
+    }
+  }
+
+  /**
+   * Append the envelope of a plot to my envelope file, which is kept open until a plot belongs in
+   * another file.
+   *
+   * @param plotEndMs Time of last sample of waveform
+   * @param envelope envelope of the plot
+   */
+  private synchronized void writeEnvelope(final long plotEndMs, final int[] envelope) {
+    final File file = new File(generateFileBase(plotEndMs, ".env"));
+    try {
+      if (envelopeWriter == null || !envelopeWriter.file.equals(file)) {
+        closeEnvelope();
+        envelopeWriter = new EnvelopeWriter(file);
+      }
+      envelopeWriter.append(plotEndMs, envelope);
+    } catch (final IOException e) {
+      LOGGER.error("Cannot write {}. {}", file, e.getLocalizedMessage());
+      closeEnvelope();
+    }
+  }
+
+  /**
+   * Close my data files and forget the files last read. Call once no more plots will be prepared.
+   */
+  public synchronized void close() {
+    closeSpectra();
+    closeEnvelope();
+    dataReader = null;
+    dataReaderFile = null;
+    envelopeReader = null;
+    envelopeReaderFile = null;
+  }
+
+  private void closeEnvelope() {
+    if (envelopeWriter == null) {
+      return;
+    }
+    try {
+      envelopeWriter.close();
+    } catch (final IOException e) {
+      LOGGER.error("Cannot close {}. {}", envelopeWriter.file, e.getLocalizedMessage());
+    }
+    envelopeWriter = null;
+  }
+
+  /**
+   * Open the binary data file holding a plot, keeping it for the next plot unless it grows. The
+   * reader returned never changes, so it may be used after another thread replaces it.
+   *
+   * @param plotEndMs Time of last sample of waveform
+   * @return the file, or null if it cannot be read
+   */
+  private synchronized SpectraReader getDataReader(final long plotEndMs) {
+    final File file = new File(generateFileBase(plotEndMs, ".spc"));
+    final long length = file.length();
+    if (!file.equals(dataReaderFile) || length != dataReaderLength) {
+      dataReaderFile = file;
+      dataReaderLength = length;
+      dataReader = null;
+      if (file.exists()) {
+        try {
+          dataReader = new SpectraReader(file);
+        } catch (final IOException e) {
+          LOGGER.error("Cannot read {}. {}", file, e.getLocalizedMessage());
+        }
+      }
+    }
+    return dataReader;
+  }
+
+  /**
+   * Open the envelope file holding a plot, keeping it for the next plot unless it grows. The reader
+   * returned never changes, so it may be used after another thread replaces it.
+   *
+   * @param plotEndMs Time of last sample of waveform
+   * @return the file, or null if it cannot be read
+   */
+  private synchronized EnvelopeReader getEnvelopeReader(final long plotEndMs) {
+    final File file = new File(generateFileBase(plotEndMs, ".env"));
+    final long length = file.length();
+    if (!file.equals(envelopeReaderFile) || length != envelopeReaderLength) {
+      envelopeReaderFile = file;
+      envelopeReaderLength = length;
+      envelopeReader = null;
+      if (file.exists()) {
+        try {
+          envelopeReader = new EnvelopeReader(file);
+        } catch (final IOException e) {
+          LOGGER.error("Cannot read {}. {}", file, e.getLocalizedMessage());
+        }
+      }
+    }
+    return envelopeReader;
+  }
+
+  private void closeSpectra() {
+    if (dataWriter == null) {
+      return;
+    }
+    try {
+      dataWriter.close();
+    } catch (final IOException e) {
+      LOGGER.error("Cannot close {}. {}", dataWriter.file, e.getLocalizedMessage());
+    }
+    dataWriter = null;
+  }
+
+  private String generateFileBase(final long timeMs, final String suffix) {
     final StringBuilder sb = new StringBuilder();
     sb.append(dataPathRoot + '/');
     if (networkName != null) {
@@ -181,25 +510,10 @@ public class Channel {
 
     sb.append('/' + name);
     sb.append(Time.format(dataFileSuffixFormat, timeMs));
-    sb.append(".dat");
+    sb.append(suffix);
     String name = sb.toString();
     name = name.replaceAll("/+", Matcher.quoteReplacement(File.separator));
     name = name.replaceAll("\\s+", "_");
     return name;
   }
-
-  /**
-   * Create a thumbnail plot.
-   *
-   * @return The thumbnail Renderer
-   */
-  public Renderer plotThumb() {
-    return thumb.plot();
-  }
-
-  public void flushWave() {
-    plot.setWave(null);
-    thumb.setWave(null);
-  }
-
 }
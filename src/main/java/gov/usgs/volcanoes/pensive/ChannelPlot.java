@@ -0,0 +1,41 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive;
+
+import gov.usgs.plot.render.Renderer;
+import gov.usgs.volcanoes.pensive.plot.Spectra;
+
+/**
+ * A single channel prepared for a single plot. Each plot job gets its own, so a channel may be
+ * plotted for several intervals at once.
+ *
+ * @author Tom Parker
+ */
+public class ChannelPlot {
+
+  /** full plot renderer. */
+  public final Renderer full;
+
+  /** thumbnail plot renderer. */
+  public final Renderer thumb;
+
+  /** spectra drawn by both renderers, or null if no data was available. */
+  public final Spectra spectra;
+
+  /**
+   * Class constructor.
+   *
+   * @param full full plot renderer
+   * @param thumb thumbnail plot renderer
+   * @param spectra spectra drawn by both renderers, may be null
+   */
+  public ChannelPlot(final Renderer full, final Renderer thumb, final Spectra spectra) {
+    this.full = full;
+    this.thumb = thumb;
+    this.spectra = spectra;
+  }
+}
@@ -0,0 +1,121 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive;
+
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+import gov.usgs.volcanoes.pensive.wave.CircuitBreaker;
+import gov.usgs.volcanoes.pensive.wave.ConcurrencyLimiter;
+import gov.usgs.volcanoes.pensive.wave.LatencyStats;
+import gov.usgs.volcanoes.pensive.wave.WaveFetcher;
+
+import java.util.LinkedList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Established connections to a single wave server. Each request borrows an idle connection, so
+ * requests from many threads, such as the channels of one subnet, are made concurrently. Requests
+ * in flight are also held under a limiter which adapts to the server's response, and the latency
+ * of each request which doesn't fail is recorded. The time spent on the wire, not waiting for a
+ * connection, is reported to a circuit breaker.
+ *
+ * @author Tom Parker
+ */
+public class ConnectionPool implements WaveFetcher {
+
+  /** idle connections. */
+  private final LinkedList<WaveSource> idle;
+
+  /** limit on requests in flight. */
+  private final ConcurrencyLimiter limiter;
+
+  /** latencies of recent requests. */
+  private final LatencyStats latency;
+
+  /** told how each request went. */
+  private final CircuitBreaker breaker;
+
+  private final ReentrantLock lock;
+
+  /** signaled when a connection is returned. */
+  private final Condition returned;
+
+  /**
+   * Class constructor. Connections are established immediately.
+   *
+   * @param name wave server name
+   * @param count number of connections
+   * @param config wave server config stanza
+   * @param limiter limit on requests in flight
+   * @param latency where request latencies are recorded
+   * @param breaker told how each request went
+   */
+  public ConnectionPool(final String name, final int count, final ConfigFile config,
+      final ConcurrencyLimiter limiter, final LatencyStats latency, final CircuitBreaker breaker) {
+    this.limiter = limiter;
+    this.latency = latency;
+    this.breaker = breaker;
+    idle = new LinkedList<WaveSource>();
+    for (int i = 0; i < count; i++) {
+      idle.add(new WaveSource(name + "-" + i, config));
+    }
+    lock = new ReentrantLock();
+    returned = lock.newCondition();
+  }
+
+  /**
+   * Retrieve a wave over the next idle connection, waiting for one if needed.
+   *
+   * @param channel channel name
+   * @param t1 time of first sample, J2kSec
+   * @param t2 time of last sample, J2kSec
+   * @return the wave or null if no data is available
+   */
+  public Wave getWave(final String channel, final double t1, final double t2) {
+    final long startNs = limiter.acquire();
+    boolean failed = true;
+    try {
+      final WaveSource connection = borrow();
+      final long wireNs = System.nanoTime();
+      Wave wave = null;
+      try {
+        wave = connection.getWave(channel, t1, t2);
+        failed = false;
+        latency.record(System.nanoTime() - startNs, t2 - t1);
+        return wave;
+      } finally {
+        breaker.record(channel, System.nanoTime() - wireNs, t2 - t1, wave, failed);
+        giveBack(connection);
+      }
+    } finally {
+      limiter.release(startNs, t2 - t1, failed);
+    }
+  }
+
+  private WaveSource borrow() {
+    lock.lock();
+    try {
+      while (idle.isEmpty()) {
+        returned.awaitUninterruptibly();
+      }
+      return idle.removeFirst();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void giveBack(final WaveSource connection) {
+    lock.lock();
+    try {
+      idle.addLast(connection);
+      returned.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,303 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive;
+
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A single pool of fetch threads shared by every wave server. Each server offers its job queue, the
+ * most of its jobs to fetch at once, and a way to fetch them. A thread takes a ready job from
+ * whichever server has room for another, so no thread waits on one server while another has work.
+ * Servers are visited in turn, realtime jobs from any server before backfill jobs from any server.
+ *
+ * @author Tom Parker
+ */
+public class FetchPool {
+
+  /** my logger. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(FetchPool.class);
+
+  /** default number of fetch threads. */
+  public static final int DEFAULT_FETCH_THREADS = 10;
+
+  /** how long a thread waits for work before checking if it should exit. */
+  private static final long POLL_NS = TimeUnit.SECONDS.toNanos(2);
+
+  /** shared by all of my queues. */
+  private final ReentrantLock lock;
+
+  /** signaled when any queue changes or a job is fetched. */
+  private final Condition changed;
+
+  /** servers offering work. */
+  private final List<Server> servers;
+
+  private final int threadCount;
+  private final List<Thread> threads;
+
+  /** index of the server to visit first. */
+  private int next;
+
+  private boolean running;
+
+  /**
+   * Class constructor.
+   *
+   * @param config my config file
+   */
+  public FetchPool(final ConfigFile config) {
+    threadCount = Math.max(1, config.getInt("fetchThreads", DEFAULT_FETCH_THREADS));
+    lock = new ReentrantLock();
+    changed = lock.newCondition();
+    servers = new ArrayList<Server>();
+    threads = new LinkedList<Thread>();
+  }
+
+  /**
+   * Create a job queue which my threads may take from.
+   *
+   * @param backfillLimit most backfill jobs in progress at once
+   * @return the queue
+   */
+  public PlotJobQueue createQueue(final int backfillLimit) {
+    final PlotJobQueue queue = new PlotJobQueue(backfillLimit, lock);
+    queue.signal(changed);
+    return queue;
+  }
+
+  /**
+   * Offer a server's jobs to my threads.
+   *
+   * @param queue the server's jobs, created by createQueue
+   * @param slots most of the server's jobs fetched at once
+   * @param fetcher fetches the server's jobs
+   */
+  public void add(final PlotJobQueue queue, final int slots, final JobFetcher fetcher) {
+    lock.lock();
+    try {
+      servers.add(new Server(queue, Math.max(1, slots), fetcher));
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Start fetch threads.
+   */
+  public void start() {
+    lock.lock();
+    try {
+      running = true;
+    } finally {
+      lock.unlock();
+    }
+
+    LOGGER.info("Starting {} fetch threads", threadCount);
+    for (int i = 0; i < threadCount; i++) {
+      final Thread t = new Thread(new Worker());
+      t.setName("fetch-" + i);
+      t.start();
+      threads.add(t);
+    }
+  }
+
+  /**
+   * Fetch queued jobs and stop threads. Call only after everything scheduling jobs has stopped.
+   */
+  public void stop() {
+    lock.lock();
+    try {
+      running = false;
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+
+    for (final Thread t : threads) {
+      try {
+        t.join();
+      } catch (final InterruptedException e) {
+        LOGGER.info("Interrupted while waiting for {} to finish.", t.getName());
+      }
+    }
+  }
+
+  /**
+   * Take a ready job from a server with room for it. Call with my lock held.
+   *
+   * @return the job's server, or null if no server has both
+   */
+  private Assignment take() {
+    final int count = servers.size();
+    for (final PlotJob.Priority priority : PlotJob.Priority.values()) {
+      for (int i = 0; i < count; i++) {
+        final Server server = servers.get((next + i) % count);
+        if (server.free == 0) {
+          continue;
+        }
+        final PlotJob job = server.queue.take(priority);
+        if (job != null) {
+          next = (next + i + 1) % count;
+          server.free--;
+          return new Assignment(server, job);
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Find how long until a job from a server with room may be ready. Call with my lock held.
+   *
+   * @return nanoseconds to wait
+   */
+  private long readyInNs() {
+    long readyNs = POLL_NS;
+    for (final Server server : servers) {
+      if (server.free > 0) {
+        readyNs = Math.min(readyNs, server.queue.readyInNs());
+      }
+    }
+    return readyNs;
+  }
+
+  /**
+   * Check for queued jobs. Call with my lock held.
+   *
+   * @return true if no jobs are waiting
+   */
+  private boolean isEmpty() {
+    for (final Server server : servers) {
+      if (!server.queue.isEmpty()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Take jobs from any server and fetch them.
+   */
+  private class Worker implements Runnable {
+    public void run() {
+      while (true) {
+        final Assignment assignment;
+        try {
+          assignment = await();
+        } catch (final InterruptedException noAction) {
+          continue;
+        }
+        if (assignment == null) {
+          return;
+        }
+
+        boolean handedOff = false;
+        try {
+          assignment.server.fetcher.fetch(assignment.job);
+          handedOff = true;
+        } catch (final InterruptedException noAction) {
+          LOGGER.info("Interrupted while fetching {}.", assignment.job.subnet.subnetName);
+        } catch (final RuntimeException e) {
+          LOGGER.error("Cannot fetch {}. {}", assignment.job.subnet.subnetName,
+              e.getLocalizedMessage());
+        } finally {
+          if (!handedOff) {
+            assignment.job.finished();
+          }
+          lock.lock();
+          try {
+            assignment.server.free++;
+            assignment.server.queue.done(assignment.job);
+          } finally {
+            lock.unlock();
+          }
+        }
+      }
+    }
+
+    /**
+     * Wait for an assignment.
+     *
+     * @return the assignment, or null if I should exit
+     * @throws InterruptedException when interrupted while waiting
+     */
+    private Assignment await() throws InterruptedException {
+      lock.lockInterruptibly();
+      try {
+        while (true) {
+          final Assignment assignment = take();
+          if (assignment != null) {
+            return assignment;
+          }
+          if (!running && isEmpty()) {
+            return null;
+          }
+          changed.awaitNanos(readyInNs());
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Fetches the jobs of a single server.
+   */
+  public interface JobFetcher {
+
+    /**
+     * Fetch a job's waves and pass them on.
+     *
+     * @param job the job
+     * @throws InterruptedException when interrupted while waiting
+     */
+    void fetch(PlotJob job) throws InterruptedException;
+  }
+
+  /**
+   * A server's jobs and its room for more.
+   */
+  private static final class Server {
+    private final PlotJobQueue queue;
+    private final int slots;
+    private final JobFetcher fetcher;
+
+    /** jobs which may still be taken. */
+    private int free;
+
+    private Server(final PlotJobQueue queue, final int slots, final JobFetcher fetcher) {
+      this.queue = queue;
+      this.slots = slots;
+      this.fetcher = fetcher;
+      free = slots;
+    }
+  }
+
+  /**
+   * A job and its server.
+   */
+  private static final class Assignment {
+    private final Server server;
+    private final PlotJob job;
+
+    private Assignment(final Server server, final PlotJob job) {
+      this.server = server;
+      this.job = job;
+    }
+  }
+}
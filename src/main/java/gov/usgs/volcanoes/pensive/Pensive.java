@@ -8,13 +8,21 @@ package gov.usgs.volcanoes.pensive;
 import gov.usgs.volcanoes.core.configfile.ConfigFile;
 import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
 import gov.usgs.volcanoes.pensive.schedule.AbstractPlotScheduler;
+import gov.usgs.volcanoes.pensive.schedule.BackfillMonitor;
 import gov.usgs.volcanoes.pensive.schedule.BackfillPlotScheduler;
+import gov.usgs.volcanoes.pensive.schedule.BackfillState;
+import gov.usgs.volcanoes.pensive.schedule.GapScanner;
 import gov.usgs.volcanoes.pensive.schedule.RealtimePlotScheduler;
+import gov.usgs.volcanoes.pensive.wave.DiskWaveCache;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.FileNotFoundException;
+import java.lang.management.ManagementFactory;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -23,8 +31,13 @@ import java.util.Map;
 import java.util.TimeZone;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 /**
  * An application to produce a continuous collection of subnet spectrograms.
  *
@@ -34,6 +47,12 @@ public class Pensive {
 
   private static final boolean DEFAULT_WRITE_HTML = true;
 
+  /** If true, look for and backfill missing plots in real-time mode. */
+  private static final boolean DEFAULT_GAP_SCAN = false;
+
+  /** minutes between scans for missing plots. */
+  private static final int DEFAULT_GAP_SCAN_INTERVAL = 60;
+
   static {
     TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
   }
@@ -50,6 +69,18 @@ public class Pensive {
   /** One plot scheduler per wave server. */
   private Map<String, AbstractPlotScheduler> plotScheduler;
 
+  /** Render and write stages shared by all wave servers. */
+  private final PlotPipeline pipeline;
+
+  /** Fetch threads shared by all wave servers. */
+  private final FetchPool fetchPool;
+
+  /** Positions of unfinished backfill ranges. */
+  private final BackfillState backfillState;
+
+  /** Past data kept on disk, or null if not kept. */
+  private final DiskWaveCache diskCache;
+
   /**
    * Class constructor.
    *
@@ -63,6 +94,10 @@ public class Pensive {
     LOGGER.info("Launching Pensive ({})", Version.VERSION_STRING);
 
     webApp = new PensiveWebApp(configFile);
+    pipeline = new PlotPipeline(configFile);
+    fetchPool = new FetchPool(configFile);
+    backfillState = new BackfillState(configFile);
+    diskCache = DiskWaveCache.isEnabled(configFile) ? new DiskWaveCache(configFile) : null;
     final boolean writeHtml = configFile.getBoolean("writeHtml", DEFAULT_WRITE_HTML);
     if (writeHtml) {
       webApp.writeHtml();
@@ -77,7 +112,7 @@ public class Pensive {
    * @param endTime time of last plot. May be in the future.
    */
   public Pensive(final ConfigFile configFile, final Date startTime, final Date endTime) {
-    super();
+    this(configFile);
   }
 
   /**
@@ -89,12 +124,81 @@ public class Pensive {
     for (final String server : configFile.getList("waveSource")) {
       final ConfigFile c = configFile.getSubConfig(server, true);
       LOGGER.info("Creating plot scheduler for " + server);
-      plotScheduler.put(server, new RealtimePlotScheduler(server, c));
+      plotScheduler.put(server, new RealtimePlotScheduler(server, c, pipeline, fetchPool));
     }
     assignSubnets();
     pruneSchedulers();
     schedulePlots();
+    scheduleBackfill();
+    scheduleGapScans();
     startWaveSources();
+    closeOnExit();
+  }
+
+  /**
+   * Close the data files held open by subnets when the application is stopped from outside, as it
+   * is in real-time mode.
+   */
+  private void closeOnExit() {
+    final Thread hook = new Thread(new Runnable() {
+      public void run() {
+        for (final AbstractPlotScheduler ps : plotScheduler.values()) {
+          ps.close();
+        }
+      }
+    });
+    hook.setName("close-data-files");
+    Runtime.getRuntime().addShutdownHook(hook);
+  }
+
+  /**
+   * Look for missing plots now and periodically, if asked to.
+   */
+  private void scheduleGapScans() {
+    if (!configFile.getBoolean("gapScan", DEFAULT_GAP_SCAN)) {
+      return;
+    }
+
+    final int interval = configFile.getInt("gapScanInterval", DEFAULT_GAP_SCAN_INTERVAL);
+    final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    for (final Map.Entry<String, AbstractPlotScheduler> entry : plotScheduler.entrySet()) {
+      final ConfigFile c = configFile.getSubConfig(entry.getKey(), true);
+      final GapScanner scanner = new GapScanner(entry.getValue(), c);
+      LOGGER.info("Scanning {} for missing plots every {} minutes", entry.getKey(), interval);
+      scheduler.scheduleWithFixedDelay(scanner, 0, interval, TimeUnit.MINUTES);
+    }
+  }
+
+  /**
+   * Queue the timespans given by backfill directives alongside real-time plots.
+   */
+  private void scheduleBackfill() {
+    final List<String> spans = configFile.getList("backfill");
+    if (spans == null) {
+      return;
+    }
+
+    final SimpleDateFormat format = new SimpleDateFormat(PensiveArgs.INPUT_TIME_FORMAT);
+    for (final String span : spans) {
+      final String[] times = span.split("-");
+      final long startTime;
+      final long endTime;
+      try {
+        if (times.length != 2) {
+          throw new ParseException(span, 0);
+        }
+        startTime = format.parse(times[0].trim()).getTime();
+        endTime = format.parse(times[1].trim()).getTime();
+      } catch (final ParseException e) {
+        LOGGER.error("Cannot parse backfill directive {}. I'll skip it.", span);
+        continue;
+      }
+
+      LOGGER.info("Backfilling {} - {}", new Date(startTime), new Date(endTime));
+      for (final AbstractPlotScheduler ps : plotScheduler.values()) {
+        ps.backfill(startTime, endTime);
+      }
+    }
   }
 
   /**
@@ -106,7 +210,8 @@ public class Pensive {
     for (final String server : configFile.getList("waveSource")) {
       final ConfigFile c = configFile.getSubConfig(server, true);
       LOGGER.info("Creating plot scheduler for " + server);
-      final BackfillPlotScheduler ps = new BackfillPlotScheduler(server, c);
+      final BackfillPlotScheduler ps =
+          new BackfillPlotScheduler(server, c, pipeline, fetchPool);
       ps.setRange(startTime, endTime);
       plotScheduler.put(server, ps);
     }
@@ -116,10 +221,119 @@ public class Pensive {
     startWaveSources();
   }
 
+  /**
+   * Render plots again from stored spectra and envelopes, without contacting any wave server.
+   * Plots are rendered in parallel by the render stage, in its backfill lane.
+   *
+   * @param startTime time of first plot
+   * @param endTime time of last plot
+   */
+  private void rerenderPlots(final long startTime, final long endTime) {
+    final List<SubnetPlotter> subnets = findSubnets();
+
+    final long duration = SubnetPlotter.DURATION_S * 1000;
+    final long firstPlot = startTime - (startTime % duration) + duration;
+    long lastPlot = endTime;
+    final long offset = endTime % duration;
+    if (offset > 0) {
+      lastPlot += duration - offset;
+    }
+
+    LOGGER.info("Re-rendering plots ({} - {})", new Date(firstPlot), new Date(lastPlot));
+    pipeline.start();
+    try {
+      for (long plotEnd = firstPlot; plotEnd <= lastPlot; plotEnd += duration) {
+        for (final SubnetPlotter subnet : subnets) {
+          pipeline.rerender(new PlotJob(subnet, plotEnd, PlotJob.Priority.BACKFILL));
+        }
+      }
+    } catch (final InterruptedException e) {
+      LOGGER.info("Interrupted while re-rendering plots.");
+    }
+    pipeline.stop();
+  }
+
   private void startWaveSources() {
+    pipeline.start();
     for (final AbstractPlotScheduler ps : plotScheduler.values()) {
       ps.startWaveSources();
     }
+    fetchPool.start();
+    startBackfillMonitors();
+    registerLimiters();
+  }
+
+  /**
+   * Report backfill progress periodically and make backfill limits adjustable through JMX.
+   */
+  private void startBackfillMonitors() {
+    final int interval =
+        configFile.getInt("backfillReportInterval", BackfillMonitor.DEFAULT_REPORT_INTERVAL);
+    final ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+          public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "backfill-monitor");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+
+    final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    for (final AbstractPlotScheduler ps : plotScheduler.values()) {
+      final BackfillMonitor monitor = new BackfillMonitor(ps);
+      try {
+        mbeanServer.registerMBean(monitor,
+            new ObjectName("gov.usgs.volcanoes.pensive:type=Backfill,name=" + ps.name));
+      } catch (final JMException e) {
+        LOGGER.warn("Cannot register backfill monitor for {}. {}", ps.name,
+            e.getLocalizedMessage());
+      }
+      scheduler.scheduleWithFixedDelay(monitor, interval, interval, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Make each wave server's request limit visible through JMX.
+   */
+  private void registerLimiters() {
+    final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    for (final AbstractPlotScheduler ps : plotScheduler.values()) {
+      try {
+        mbeanServer.registerMBean(ps.getLimiter(),
+            new ObjectName("gov.usgs.volcanoes.pensive:type=Concurrency,name=" + ps.name));
+      } catch (final JMException e) {
+        LOGGER.warn("Cannot register concurrency limiter for {}. {}", ps.name,
+            e.getLocalizedMessage());
+      }
+    }
+  }
+
+  /**
+   * Find every subnet with channels, whichever wave server it feeds from.
+   *
+   * @return the subnets
+   */
+  private List<SubnetPlotter> findSubnets() {
+    final List<String> networks = configFile.getList("network");
+    if (networks == null) {
+      throw new RuntimeException("No network directives found.");
+    }
+
+    final List<SubnetPlotter> subnets = new ArrayList<SubnetPlotter>();
+    for (final String network : networks) {
+      final ConfigFile netConfig = configFile.getSubConfig(network, true);
+      final List<String> names = netConfig.getList("subnet");
+      if (names == null) {
+        continue;
+      }
+      for (final String subnet : names) {
+        final ConfigFile subnetConfig = netConfig.getSubConfig(subnet, true);
+        if (subnetConfig.getList("channel") != null) {
+          subnets.add(new SubnetPlotter(network, subnet, subnetConfig));
+        }
+      }
+    }
+    return subnets;
   }
 
   /**
@@ -156,9 +370,20 @@ public class Pensive {
 
         final String dataSource = subnetConfig.getString("dataSource");
         if (dataSource != null) {
-          final AbstractPlotScheduler scheduler = plotScheduler.get(dataSource);
-          LOGGER.info("Assigning subnet " + subnet + " to " + dataSource);
-          scheduler.add(new SubnetPlotter(network, subnet, subnetConfig));
+          final String[] servers = dataSource.split(",");
+          final AbstractPlotScheduler scheduler = plotScheduler.get(servers[0].trim());
+          LOGGER.info("Assigning subnet " + subnet + " to " + servers[0].trim());
+          final List<AbstractPlotScheduler> alternates = new ArrayList<AbstractPlotScheduler>();
+          for (int i = 1; i < servers.length; i++) {
+            final AbstractPlotScheduler alternate = plotScheduler.get(servers[i].trim());
+            if (alternate == null) {
+              LOGGER.warn("Cannot find dataSource {} for subnet {}. I'll skip it.",
+                  servers[i].trim(), subnet);
+            } else {
+              alternates.add(alternate);
+            }
+          }
+          scheduler.add(new SubnetPlotter(network, subnet, subnetConfig), alternates);
         } else {
           LOGGER.error("Cannot find dataSource for subnet {}. I'll skip it this time.", subnet);
         }
@@ -171,7 +396,7 @@ public class Pensive {
     while (schedulerIt.hasNext()) {
       final String server = schedulerIt.next();
       final AbstractPlotScheduler ps = plotScheduler.get(server);
-      if (ps.subnetCount() < 1) {
+      if (ps.subnetCount() < 1 && !ps.isAlternate()) {
         LOGGER.warn("No subnets feeding from " + ps.name + ". I'll prune it.");
         schedulerIt.remove();
       }
@@ -186,9 +411,12 @@ public class Pensive {
     while (schedulerIt.hasNext()) {
       final String server = schedulerIt.next();
       final AbstractPlotScheduler ps = plotScheduler.get(server);
-      if (ps.subnetCount() < 1) {
+      if (ps.subnetCount() < 1 && !ps.isAlternate()) {
         LOGGER.warn("No subnets feeding from " + ps.name + ". I'll prune it.");
         schedulerIt.remove();
+      } else {
+        ps.setBackfillState(backfillState);
+        ps.setDiskCache(diskCache);
       }
     }
   }
@@ -199,16 +427,19 @@ public class Pensive {
   private void schedulePlots() {
     for (final AbstractPlotScheduler ps : plotScheduler.values()) {
 
-      // schedule first plot immediately
-      new Thread(ps).start();
-
       if (ps instanceof RealtimePlotScheduler) {
+        // schedule first plot immediately
+        new Thread(ps).start();
+
         final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
         // satrt automated plots at the top of the next period
         int delay = SubnetPlotter.DURATION_S;
         delay -= (System.currentTimeMillis() / 1000) % SubnetPlotter.DURATION_S;
         LOGGER.debug("Scheduled plots start in " + delay + "ms");
         scheduler.scheduleAtFixedRate(ps, delay, SubnetPlotter.DURATION_S, TimeUnit.SECONDS);
+      } else {
+        // backfill jobs are produced as they're needed, so this returns promptly
+        ps.run();
       }
     }
   }
@@ -224,12 +455,17 @@ public class Pensive {
   }
 
   /**
-   * Stop plotting.
+   * Stop plotting once queued plots are finished, then close the data files held open by subnets.
    */
   public void stop() {
     for (final AbstractPlotScheduler ps : plotScheduler.values()) {
       ps.stop();
     }
+    fetchPool.stop();
+    pipeline.stop();
+    for (final AbstractPlotScheduler ps : plotScheduler.values()) {
+      ps.close();
+    }
   }
 
   /**
@@ -249,9 +485,16 @@ public class Pensive {
       System.exit(1);
     }
 
+    if (config.rerender && !Channel.storesData(cf)) {
+      LOGGER.error("--rerender reads stored spectra. Set writeData=true and dataFormat=binary.");
+      System.exit(1);
+    }
+
     final Pensive pensive = new Pensive(cf);
     if (config.startTime < 0) {
       pensive.createRealtimePlotSchedulers();
+    } else if (config.rerender) {
+      pensive.rerenderPlots(config.startTime, config.endTime);
     } else {
       pensive.createBackfillPlotSchedulers(config.startTime, config.endTime);
       pensive.stop();
@@ -6,8 +6,10 @@
 
 package gov.usgs.volcanoes.pensive;
 
+import com.martiansoftware.jsap.JSAP;
 import com.martiansoftware.jsap.JSAPResult;
 import com.martiansoftware.jsap.Parameter;
+import com.martiansoftware.jsap.Switch;
 
 import gov.usgs.volcanoes.core.args.Args;
 import gov.usgs.volcanoes.core.args.Arguments;
@@ -38,7 +40,9 @@ public class PensiveArgs {
   /** format of time on cmd line */
   public static final String INPUT_TIME_FORMAT = "yyyyMMddHHmm";
 
-  private static final Parameter[] PARAMETERS = new Parameter[] {};
+  private static final Parameter[] PARAMETERS = new Parameter[] {
+      new Switch("rerender", JSAP.NO_SHORTFLAG, "rerender",
+          "Re-render plots between startTime and endTime from stored spectra.")};
 
   /** If true, log more. */
   public final boolean verbose;
@@ -52,6 +56,9 @@ public class PensiveArgs {
   /** my config file. */
   public final String configFileName;
 
+  /** If true, re-render plots from stored spectra rather than fetching waves. */
+  public final boolean rerender;
+
   /**
    * Class constructor.
    * @param commandLineArgs the command line arguments
@@ -90,6 +97,13 @@ public class PensiveArgs {
     configFileName = jsapResult.getString("config-filename");
     LOGGER.debug("Setting: config-filename={}", configFileName);
 
+    rerender = jsapResult.getBoolean("rerender");
+    LOGGER.debug("Setting: rerender={}", rerender);
+    if (rerender && (startDate == null || endDate == null)) {
+      LOGGER.error("--rerender needs a timespan. Give both --startTime and --endTime.");
+      System.exit(1);
+    }
+
     if (jsapResult.getBoolean("create-config")) {
       System.exit(1);
     }
@@ -8,12 +8,39 @@ package gov.usgs.volcanoes.pensive;
 
 import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
 
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
 /**
  * A single plot job.
  *
  * @author Tom Parker
  */
-public class PlotJob implements Comparable<PlotJob> {
+public class PlotJob implements Delayed {
+
+  /**
+   * Queue lanes. A ready job in an earlier lane is always taken before any job in a later lane.
+   */
+  public enum Priority {
+    /** the most recent time slot. */
+    REALTIME,
+
+    /** past time slots. */
+    BACKFILL
+  }
+
+  /**
+   * Told when a job's images have been written, or the job has failed.
+   */
+  public interface Listener {
+
+    /**
+     * A job is finished.
+     *
+     * @param job the job
+     */
+    void finished(PlotJob job);
+  }
 
   /** Time of last sample plotted. */
   public final long plotEndMs;
@@ -24,6 +51,11 @@ public class PlotJob implements Comparable<PlotJob> {
   /** my subnet. */
   public final SubnetPlotter subnet;
 
+  /** my lane. */
+  public final Priority priority;
+
+  /** who to tell when I'm finished, may be null. */
+  private final Listener listener;
 
   /**
    * Class constructor which uses the most recent time slice as the time of
@@ -35,20 +67,94 @@ public class PlotJob implements Comparable<PlotJob> {
     this.subnet = subnet;
     this.plotEndMs = findPlotEnd();
     plotTimeMs = plotEndMs + subnet.embargoMs;
+    priority = Priority.REALTIME;
+    listener = null;
   }
 
   /**
-   * Class constructor with a specific plot time.
+   * Class constructor with a specific plot time, queued as backfill.
    * 
    * @param subnet my subnet
    * @param plotEndMs The end of the plot
    */
   public PlotJob(final SubnetPlotter subnet, final long plotEndMs) {
+    this(subnet, plotEndMs, Priority.BACKFILL);
+  }
+
+  /**
+   * Class constructor with a specific plot time and lane.
+   * 
+   * @param subnet my subnet
+   * @param plotEndMs The end of the plot
+   * @param priority my lane
+   */
+  public PlotJob(final SubnetPlotter subnet, final long plotEndMs, final Priority priority) {
+    this(subnet, plotEndMs, priority, null);
+  }
+
+  /**
+   * Class constructor with a specific plot time, lane, and someone to tell when I'm finished.
+   * 
+   * @param subnet my subnet
+   * @param plotEndMs The end of the plot
+   * @param priority my lane
+   * @param listener who to tell when I'm finished, may be null
+   */
+  public PlotJob(final SubnetPlotter subnet, final long plotEndMs, final Priority priority,
+      final Listener listener) {
     this.subnet = subnet;
     this.plotEndMs = plotEndMs;
+    this.priority = priority;
+    this.listener = listener;
     plotTimeMs = plotEndMs + subnet.embargoMs;
   }
 
+  /**
+   * Copy constructor, deferring the copy.
+   *
+   * @param job job to copy
+   * @param plotTimeMs when to create the plot
+   * @param priority lane of the copy
+   */
+  private PlotJob(final PlotJob job, final long plotTimeMs, final Priority priority) {
+    subnet = job.subnet;
+    plotEndMs = job.plotEndMs;
+    this.priority = priority;
+    listener = job.listener;
+    this.plotTimeMs = plotTimeMs;
+  }
+
+  /**
+   * Copy me to be retried later. The copy has my lane and listener.
+   *
+   * @param delayMs how long from now to wait
+   * @return the copy
+   */
+  public PlotJob defer(final long delayMs) {
+    return defer(delayMs, priority);
+  }
+
+  /**
+   * Copy me to be retried later in another lane. The copy has my listener.
+   *
+   * @param delayMs how long from now to wait
+   * @param priority lane of the copy
+   * @return the copy
+   */
+  public PlotJob defer(final long delayMs, final Priority priority) {
+    return new PlotJob(this, Math.max(plotTimeMs, System.currentTimeMillis() + delayMs),
+        priority);
+  }
+
+  /**
+   * Mark me finished, once my images are written or I have failed.
+   */
+  public void finished() {
+    if (listener != null) {
+      listener.finished(this);
+    }
+  }
+
   /**
    * Calculate the time of the last sample in the most recent time slice.
    *
@@ -62,11 +168,27 @@ public class PlotJob implements Comparable<PlotJob> {
   }
 
   /**
-   * Order plots by increasing last sample time.
+   * Time remaining until the embargo is lifted.
+   *
+   * @param unit units of the result
+   * @return remaining delay, zero or negative once the job is ready
+   */
+  public long getDelay(final TimeUnit unit) {
+    return unit.convert(plotTimeMs - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Order plots by increasing plot time, then by increasing last sample time.
    *
-   * @param other The PlotJob to compare to
+   * @param other The job to compare to
    */
-  public int compareTo(final PlotJob other) {
-    return (int) (plotTimeMs - other.plotTimeMs);
+  public int compareTo(final Delayed other) {
+    if (other instanceof PlotJob) {
+      final PlotJob job = (PlotJob) other;
+      final int cmp = Long.compare(plotTimeMs, job.plotTimeMs);
+      return cmp != 0 ? cmp : Long.compare(plotEndMs, job.plotEndMs);
+    } else {
+      return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+    }
   }
 }
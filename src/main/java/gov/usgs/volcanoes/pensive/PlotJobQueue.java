@@ -0,0 +1,252 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An unbounded queue of plot jobs which releases each job once its embargo has passed. Jobs wait
+ * in one lane per priority, ordered by plot time. A ready job in a higher priority lane is always
+ * taken first; a lower priority job is only taken when no higher priority job is ready. Backfill
+ * jobs may be limited to a number in progress at once, leaving the rest of the takers free for
+ * realtime jobs. Queues may share a lock with a FetchPool, so one pool can wait on many queues.
+ *
+ * @author Tom Parker
+ */
+public class PlotJobQueue {
+
+  /** one lane per priority, in priority order. */
+  private final PriorityQueue<PlotJob>[] lanes;
+
+  /** jobs taken from each lane and not yet done. */
+  private final int[] active;
+
+  /** most jobs from each lane in progress at once. */
+  private final int[] limits;
+
+  private final ReentrantLock lock;
+
+  /** signaled when a job is added or finished. */
+  private final Condition changed;
+
+  /** signaled along with changed, may be null. */
+  private Condition shared;
+
+  /**
+   * Class constructor. No lane is limited.
+   */
+  public PlotJobQueue() {
+    this(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Class constructor.
+   *
+   * @param backfillLimit most backfill jobs in progress at once
+   */
+  public PlotJobQueue(final int backfillLimit) {
+    this(backfillLimit, new ReentrantLock());
+  }
+
+  /**
+   * Class constructor.
+   *
+   * @param backfillLimit most backfill jobs in progress at once
+   * @param lock lock shared with anything waiting on me
+   */
+  @SuppressWarnings("unchecked")
+  PlotJobQueue(final int backfillLimit, final ReentrantLock lock) {
+    lanes = new PriorityQueue[PlotJob.Priority.values().length];
+    for (int i = 0; i < lanes.length; i++) {
+      lanes[i] = new PriorityQueue<PlotJob>();
+    }
+    active = new int[lanes.length];
+    limits = new int[lanes.length];
+    Arrays.fill(limits, Integer.MAX_VALUE);
+    limits[PlotJob.Priority.BACKFILL.ordinal()] = Math.max(1, backfillLimit);
+    this.lock = lock;
+    changed = lock.newCondition();
+  }
+
+  /**
+   * Signal a condition of my lock, as well as my own, whenever a job is added or finished.
+   *
+   * @param shared condition of the lock given to my constructor
+   */
+  void signal(final Condition shared) {
+    lock.lock();
+    try {
+      this.shared = shared;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Add a job.
+   *
+   * @param job job to add
+   */
+  public void put(final PlotJob job) {
+    lock.lock();
+    try {
+      lanes[job.priority.ordinal()].add(job);
+      signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Take the next ready job, waiting until one is ready or the timeout elapses. Each job taken must
+   * be handed back to done() once it has been passed on.
+   *
+   * @param timeout how long to wait
+   * @param unit units of timeout
+   * @return the job, or null if none became ready in time
+   * @throws InterruptedException when interrupted while waiting
+   */
+  public PlotJob poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+    long remainingNs = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (true) {
+        for (final PlotJob.Priority priority : PlotJob.Priority.values()) {
+          final PlotJob job = take(priority);
+          if (job != null) {
+            return job;
+          }
+        }
+        if (remainingNs <= 0) {
+          return null;
+        }
+        final long startNs = System.nanoTime();
+        changed.awaitNanos(Math.min(remainingNs, readyInNs()));
+        remainingNs -= System.nanoTime() - startNs;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Take a ready job from one lane without waiting. Each job taken must be handed back to done()
+   * once it has been passed on.
+   *
+   * @param priority the lane
+   * @return the job, or null if none is ready or the lane is at its limit
+   */
+  PlotJob take(final PlotJob.Priority priority) {
+    final int lane = priority.ordinal();
+    lock.lock();
+    try {
+      final PlotJob head = lanes[lane].peek();
+      if (head == null || active[lane] >= limits[lane]
+          || head.getDelay(TimeUnit.NANOSECONDS) > 0) {
+        return null;
+      }
+      active[lane]++;
+      return lanes[lane].poll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Find how long until a job may be ready to take, ignoring lanes at their limit.
+   *
+   * @return nanoseconds until the next job is ready, or Long.MAX_VALUE if none is waiting
+   */
+  long readyInNs() {
+    lock.lock();
+    try {
+      long readyNs = Long.MAX_VALUE;
+      for (int i = 0; i < lanes.length; i++) {
+        final PlotJob head = lanes[i].peek();
+        if (head != null && active[i] < limits[i]) {
+          readyNs = Math.min(readyNs, Math.max(0, head.getDelay(TimeUnit.NANOSECONDS)));
+        }
+      }
+      return readyNs;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Mark a job taken by poll() as finished, making room for another from its lane.
+   *
+   * @param job the job
+   */
+  public void done(final PlotJob job) {
+    lock.lock();
+    try {
+      active[job.priority.ordinal()]--;
+      signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Wait until fewer than a given number of jobs from a lane are waiting or in progress.
+   *
+   * @param priority the lane
+   * @param max the number of jobs
+   * @throws InterruptedException when interrupted while waiting
+   */
+  public void awaitRoom(final PlotJob.Priority priority, final int max)
+      throws InterruptedException {
+    final int lane = priority.ordinal();
+    lock.lockInterruptibly();
+    try {
+      while (lanes[lane].size() + active[lane] >= max) {
+        changed.await();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Count jobs in all lanes, ready or not.
+   *
+   * @return count of jobs
+   */
+  public int size() {
+    lock.lock();
+    try {
+      int size = 0;
+      for (final PriorityQueue<PlotJob> lane : lanes) {
+        size += lane.size();
+      }
+      return size;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void signalAll() {
+    changed.signalAll();
+    if (shared != null) {
+      shared.signalAll();
+    }
+  }
+
+  /**
+   * Check for waiting jobs.
+   *
+   * @return true if no jobs are waiting
+   */
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+}
@@ -0,0 +1,353 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive;
+
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+import gov.usgs.volcanoes.pensive.plot.PlotImage;
+import gov.usgs.volcanoes.pensive.plot.PngEncoder;
+import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The CPU-bound and output stages of plot production. Wave sources fetch waves and hand them to a
+ * render pool sized to the available cores, which hands finished images to a pool of writers. Each
+ * hand-off is a bounded queue, so a slow stage holds back the stage feeding it. Render threads
+ * share a fork/join pool which prepares the channels of a subnet in parallel. Queued realtime jobs
+ * are always rendered before queued backfill jobs, and backfill jobs may hold only a share of the
+ * render threads, so a realtime job never waits for a thread.
+ *
+ * @author Tom Parker
+ */
+public class PlotPipeline {
+
+  /** my logger. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(PlotPipeline.class);
+
+  /** default number of render threads. */
+  public static final int DEFAULT_RENDER_THREADS = Runtime.getRuntime().availableProcessors();
+
+  /** default number of fetched jobs waiting to be rendered. */
+  public static final int DEFAULT_RENDER_QUEUE_SIZE = 2 * DEFAULT_RENDER_THREADS;
+
+  /** default parallelism of the channel pool. */
+  public static final int DEFAULT_CHANNEL_THREADS = Runtime.getRuntime().availableProcessors();
+
+  /** default number of write threads. */
+  public static final int DEFAULT_WRITE_THREADS = 2;
+
+  /** default number of images waiting to be written. */
+  public static final int DEFAULT_WRITE_QUEUE_SIZE = 20;
+
+  /** default share of fetch and render capacity available to backfill jobs. */
+  public static final double DEFAULT_BACKFILL_SHARE = 0.5;
+
+  /** how long a stage waits for work before checking if it should exit. */
+  private static final int POLL_S = 2;
+
+  /** fetched jobs waiting to be rendered, realtime jobs first. */
+  private final BlockingQueue<RenderJob> renderJobs;
+
+  /** free room in renderJobs. */
+  private final Semaphore renderSlots;
+
+  /** count of jobs queued for rendering, orders jobs of a lane. */
+  private final AtomicLong renderSequence;
+
+  /** rendered images waiting to be written. */
+  private final BlockingQueue<WriteJob> writeJobs;
+
+  /** backfill jobs queued or rendering, taken from a share of the render threads. */
+  private final Semaphore backfillPermits;
+
+  /** encodes and writes images. */
+  private final PngEncoder encoder;
+
+  /** prepares channels of a subnet in parallel. */
+  private final ForkJoinPool channelPool;
+
+  /** renders longer plots as their intervals are rendered. */
+  private final PlotPyramid pyramid;
+
+  private final int renderThreadCount;
+  private final int writeThreadCount;
+  private final List<Thread> renderThreads;
+  private final List<Thread> writeThreads;
+
+  private volatile boolean rendering;
+  private volatile boolean writing;
+
+  /**
+   * Class constructor.
+   *
+   * @param config my config file
+   */
+  public PlotPipeline(final ConfigFile config) {
+    renderThreadCount = config.getInt("renderThreads", DEFAULT_RENDER_THREADS);
+    writeThreadCount = config.getInt("writeThreads", DEFAULT_WRITE_THREADS);
+    final int renderQueueSize = config.getInt("renderQueueSize", DEFAULT_RENDER_QUEUE_SIZE);
+    renderJobs = new PriorityBlockingQueue<RenderJob>(renderQueueSize);
+    renderSlots = new Semaphore(renderQueueSize);
+    renderSequence = new AtomicLong();
+    backfillPermits = new Semaphore(backfillLimit(config, renderThreadCount));
+    writeJobs = new ArrayBlockingQueue<WriteJob>(
+        config.getInt("writeQueueSize", DEFAULT_WRITE_QUEUE_SIZE));
+    renderThreads = new LinkedList<Thread>();
+    writeThreads = new LinkedList<Thread>();
+    encoder = new PngEncoder(config);
+    channelPool = new ForkJoinPool(config.getInt("channelThreads", DEFAULT_CHANNEL_THREADS));
+    pyramid = new PlotPyramid(config);
+  }
+
+  /**
+   * Find how many of a resource backfill jobs may use at once. At least one, and, if there is more
+   * than one, always leave one for realtime jobs.
+   *
+   * @param config config holding backfillShare
+   * @param capacity count of the resource
+   * @return most backfill jobs using the resource at once
+   */
+  public static int backfillLimit(final ConfigFile config, final int capacity) {
+    final double share = config.getDouble("backfillShare", DEFAULT_BACKFILL_SHARE);
+    final int limit = Math.min(capacity - 1, (int) (capacity * share));
+    return Math.max(1, limit);
+  }
+
+  /**
+   * Start render and write threads.
+   */
+  public void start() {
+    rendering = true;
+    writing = true;
+    LOGGER.info("Starting {} render and {} write threads", renderThreadCount, writeThreadCount);
+
+    for (int i = 0; i < renderThreadCount; i++) {
+      final Thread t = new Thread(new Renderer());
+      t.setName("render-" + i);
+      t.start();
+      renderThreads.add(t);
+    }
+
+    for (int i = 0; i < writeThreadCount; i++) {
+      final Thread t = new Thread(new Writer());
+      t.setName("write-" + i);
+      t.start();
+      writeThreads.add(t);
+    }
+  }
+
+  /**
+   * Queue fetched waves for rendering, waiting for space if the render stage is behind. Backfill
+   * jobs also wait for their share of the render threads. The job is marked finished once its
+   * images are written.
+   *
+   * @param job plot job
+   * @param waves waves returned by SubnetPlotter.fetch
+   * @throws InterruptedException when interrupted while waiting for queue space
+   */
+  public void render(final PlotJob job, final Wave[] waves) throws InterruptedException {
+    final boolean backfill = job.priority == PlotJob.Priority.BACKFILL;
+    if (backfill) {
+      backfillPermits.acquire();
+    }
+    try {
+      renderSlots.acquire();
+      renderJobs.add(new RenderJob(job, waves, renderSequence.getAndIncrement()));
+    } catch (final InterruptedException e) {
+      if (backfill) {
+        backfillPermits.release();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Queue a plot to be rendered again from its stored spectra and envelopes, waiting for space if
+   * the render stage is behind. The job is marked finished once its images are written.
+   *
+   * @param job plot job
+   * @throws InterruptedException when interrupted while waiting for queue space
+   */
+  public void rerender(final PlotJob job) throws InterruptedException {
+    render(job, null);
+  }
+
+  /**
+   * Finish queued work and stop threads. Call only after everything feeding me has stopped.
+   */
+  public void stop() {
+    rendering = false;
+    join(renderThreads);
+    channelPool.shutdown();
+    writing = false;
+    join(writeThreads);
+  }
+
+  private static void join(final List<Thread> threads) {
+    for (final Thread t : threads) {
+      try {
+        t.join();
+      } catch (final InterruptedException e) {
+        LOGGER.info("Interrupted while waiting for {} to finish.", t.getName());
+      }
+    }
+  }
+
+  /**
+   * Render stage.
+   */
+  private class Renderer implements Runnable {
+    public void run() {
+      while (rendering || !renderJobs.isEmpty()) {
+        try {
+          final RenderJob job = renderJobs.poll(POLL_S, TimeUnit.SECONDS);
+          if (job == null) {
+            continue;
+          }
+          renderSlots.release();
+
+          try {
+            render(job);
+          } finally {
+            if (job.job.priority == PlotJob.Priority.BACKFILL) {
+              backfillPermits.release();
+            }
+          }
+        } catch (final InterruptedException noAction) {
+          continue;
+        }
+      }
+    }
+
+    /**
+     * Render a job and hand its images to the writers. The job is marked finished once its images
+     * are written, or at once if it has none or it fails. I hold one count of the job's remaining
+     * images until every image is handed off, so it is finished however I exit.
+     *
+     * @param job the job
+     * @throws InterruptedException when interrupted while waiting for channels or writers
+     */
+    private void render(final RenderJob job) throws InterruptedException {
+      final SubnetPlotter subnet = job.job.subnet;
+      LOGGER.info("Rendering subnet {}", subnet.subnetName);
+      final AtomicInteger remaining = new AtomicInteger(1);
+      try {
+        final List<PlotImage> images = new ArrayList<PlotImage>();
+        try {
+          if (job.waves == null) {
+            images.addAll(subnet.restore(job.job.plotEndMs, channelPool));
+          } else {
+            images.addAll(subnet.render(job.job.plotEndMs, job.waves, channelPool));
+          }
+        } catch (final RuntimeException e) {
+          LOGGER.error("Cannot render plot. {}", e.getLocalizedMessage());
+          return;
+        }
+
+        try {
+          images.addAll(pyramid.render(subnet, job.job.plotEndMs, channelPool));
+        } catch (final RuntimeException e) {
+          LOGGER.error("Cannot render longer plots. {}", e.getLocalizedMessage());
+        }
+
+        for (final PlotImage image : images) {
+          remaining.incrementAndGet();
+          try {
+            writeJobs.put(new WriteJob(image, job.job, remaining));
+          } catch (final InterruptedException e) {
+            remaining.decrementAndGet();
+            throw e;
+          }
+        }
+      } finally {
+        if (remaining.decrementAndGet() == 0) {
+          job.job.finished();
+        }
+      }
+    }
+  }
+
+  /**
+   * Write stage.
+   */
+  private class Writer implements Runnable {
+    public void run() {
+      while (writing || !writeJobs.isEmpty()) {
+        try {
+          final WriteJob job = writeJobs.poll(POLL_S, TimeUnit.SECONDS);
+          if (job == null) {
+            continue;
+          }
+
+          try {
+            encoder.write(job.image);
+          } finally {
+            if (job.remaining.decrementAndGet() == 0) {
+              job.job.finished();
+            }
+          }
+        } catch (final InterruptedException noAction) {
+          continue;
+        }
+      }
+    }
+  }
+
+  /**
+   * Fetched waves awaiting rendering. Without waves, the plot is restored from stored spectra.
+   * Ordered by lane, then by when it was queued.
+   */
+  private static final class RenderJob implements Comparable<RenderJob> {
+    private final PlotJob job;
+    /** waves to plot, or null to restore the plot. */
+    private final Wave[] waves;
+    private final long sequence;
+
+    private RenderJob(final PlotJob job, final Wave[] waves, final long sequence) {
+      this.job = job;
+      this.waves = waves;
+      this.sequence = sequence;
+    }
+
+    public int compareTo(final RenderJob other) {
+      final int lane = job.priority.compareTo(other.job.priority);
+      if (lane != 0) {
+        return lane;
+      }
+      return sequence < other.sequence ? -1 : sequence == other.sequence ? 0 : 1;
+    }
+  }
+
+  /**
+   * A rendered image awaiting writing, and the count of its job's images not yet written.
+   */
+  private static final class WriteJob {
+    private final PlotImage image;
+    private final PlotJob job;
+    private final AtomicInteger remaining;
+
+    private WriteJob(final PlotImage image, final PlotJob job, final AtomicInteger remaining) {
+      this.image = image;
+      this.job = job;
+      this.remaining = remaining;
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive;
+
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+import gov.usgs.volcanoes.pensive.plot.PlotImage;
+import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Plots longer than a single interval, such as hourly and daily plots, pooled from the spectra and
+ * envelopes stored for each interval they span. No waves are fetched and no spectra computed for
+ * them. A longer plot is rendered when the last interval it spans is rendered, and again if
+ * intervals rendered out of order complete it later. Each level pools the stored intervals it
+ * spans directly, as pooled levels aren't stored.
+ *
+ * @author Tom Parker
+ */
+public class PlotPyramid {
+
+  /** my logger. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(PlotPyramid.class);
+
+  /** default lengths of longer plots in minutes, separated by commas. Empty disables them. */
+  public static final String DEFAULT_PYRAMID_LEVELS = "";
+
+  /** default pooling, mean or max. */
+  public static final String DEFAULT_PYRAMID_POOLING = "mean";
+
+  /** most longer plots being tracked at once. */
+  private static final int MAX_SPANS = 1000;
+
+  /** length of each longer plot in seconds. */
+  private final List<Integer> levels;
+
+  /** label appended to the image names of each longer plot. */
+  private final List<String> labels;
+
+  /** if true pool the greatest power of each time slice, otherwise the mean. */
+  private final boolean maxPooling;
+
+  /** count of intervals rendered for each longer plot not yet complete. */
+  private final Map<Span, Progress> spans;
+
+  /**
+   * Class constructor.
+   *
+   * @param config my config file
+   */
+  public PlotPyramid(final ConfigFile config) {
+    levels = new ArrayList<Integer>();
+    labels = new ArrayList<String>();
+    final String levelList = config.getString("pyramidLevels", DEFAULT_PYRAMID_LEVELS);
+    if (levelList != null && !levelList.trim().isEmpty() && !Channel.storesData(config)) {
+      LOGGER.warn("Longer plots are pooled from stored spectra. Set writeData=true and "
+          + "dataFormat=binary. I'll skip them.");
+    } else if (levelList != null) {
+      for (final String level : levelList.split(",")) {
+        if (!level.trim().isEmpty()) {
+          addLevel(level.trim());
+        }
+      }
+    }
+    maxPooling = "max".equalsIgnoreCase(
+        config.getString("pyramidPooling", DEFAULT_PYRAMID_POOLING));
+    spans = new LinkedHashMap<Span, Progress>() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Span, Progress> eldest) {
+        return size() > MAX_SPANS;
+      }
+    };
+  }
+
+  /**
+   * Add a longer plot.
+   *
+   * @param level plot length in minutes
+   */
+  private void addLevel(final String level) {
+    final int minutes;
+    try {
+      minutes = Integer.parseInt(level);
+    } catch (final NumberFormatException e) {
+      LOGGER.error("Cannot parse pyramid level {}. I'll skip it.", level);
+      return;
+    }
+
+    final int durationS = minutes * 60;
+    if (durationS <= SubnetPlotter.DURATION_S || durationS % SubnetPlotter.DURATION_S != 0) {
+      LOGGER.error("Pyramid level {} isn't a multiple of {} minutes. I'll skip it.", level,
+          SubnetPlotter.DURATION_S / 60);
+      return;
+    }
+    levels.add(durationS);
+    labels.add(minutes % 60 == 0 ? minutes / 60 + "h" : minutes + "m");
+    LOGGER.info("Rendering {} minute plots from stored spectra", minutes);
+  }
+
+  /**
+   * Render longer plots due once an interval has been rendered.
+   *
+   * @param subnet the subnet
+   * @param plotEndMs time of last sample on the interval's plot
+   * @param executor where to restore channels
+   * @return images of longer plots, ready to be written
+   * @throws InterruptedException when interrupted while waiting for channels
+   */
+  public List<PlotImage> render(final SubnetPlotter subnet, final long plotEndMs,
+      final ExecutorService executor) throws InterruptedException {
+    if (levels.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    final List<PlotImage> images = new ArrayList<PlotImage>();
+    for (int i = 0; i < levels.size(); i++) {
+      final int durationS = levels.get(i);
+      final long durationMs = durationS * 1000L;
+      final long offset = plotEndMs % durationMs;
+      final long spanEndMs = offset == 0 ? plotEndMs : plotEndMs - offset + durationMs;
+      if (isDue(new Span(subnet, durationS, spanEndMs), plotEndMs == spanEndMs)) {
+        LOGGER.info("Rendering {} plot of subnet {}", labels.get(i), subnet.subnetName);
+        images.addAll(subnet.restore(spanEndMs, durationS, labels.get(i), maxPooling, executor));
+      }
+    }
+    return images;
+  }
+
+  /**
+   * Count an interval rendered and decide if its longer plot should be rendered.
+   *
+   * @param span the longer plot
+   * @param last true if the interval is the last the longer plot spans
+   * @return true if the longer plot should be rendered
+   */
+  private synchronized boolean isDue(final Span span, final boolean last) {
+    Progress progress = spans.get(span);
+    if (progress == null) {
+      progress = new Progress();
+    }
+    progress.count++;
+    final boolean complete = progress.count >= span.durationS / SubnetPlotter.DURATION_S;
+    final boolean due = last || complete && progress.lastRendered;
+    progress.lastRendered |= last;
+
+    if (complete) {
+      spans.remove(span);
+    } else {
+      spans.put(span, progress);
+    }
+    return due;
+  }
+
+  /**
+   * A longer plot of a single subnet.
+   */
+  private static final class Span {
+    private final SubnetPlotter subnet;
+    private final int durationS;
+    private final long endMs;
+
+    private Span(final SubnetPlotter subnet, final int durationS, final long endMs) {
+      this.subnet = subnet;
+      this.durationS = durationS;
+      this.endMs = endMs;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof Span)) {
+        return false;
+      }
+      final Span other = (Span) o;
+      return subnet == other.subnet && durationS == other.durationS && endMs == other.endMs;
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = System.identityHashCode(subnet);
+      hash = 31 * hash + durationS;
+      hash = 31 * hash + (int) (endMs ^ (endMs >>> 32));
+      return hash;
+    }
+  }
+
+  /**
+   * Intervals of a longer plot rendered so far.
+   */
+  private static final class Progress {
+    private int count;
+    private boolean lastRendered;
+  }
+}
@@ -6,27 +6,19 @@
 
 package gov.usgs.volcanoes.pensive;
 
+import gov.usgs.plot.data.Wave;
 import gov.usgs.volcanoes.core.configfile.ConfigFile;
-import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+import gov.usgs.volcanoes.pensive.wave.WaveFetcher;
 import gov.usgs.volcanoes.swarm.data.DataSourceType;
 import gov.usgs.volcanoes.swarm.data.SeismicDataSource;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.util.Date;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.TimeUnit;
-
 /**
- * Retrieve data and produce plot.
+ * A single connection to a wave server. Connections are shared between jobs by a ConnectionPool,
+ * one request at a time over each.
  *
  * @author Tom Parker
  */
-public class WaveSource implements Runnable {
-
-  /** my logger. */
-  private static final Logger LOGGER = LoggerFactory.getLogger("gov.usgs");
+public class WaveSource implements WaveFetcher {
 
   /** default wave server type. */
   public static final String DEFAULT_TYPE = "wws";
@@ -40,14 +32,9 @@ public class WaveSource implements Runnable {
   /** default timeout. */
   public static final int DEFAULT_TIMEOUT_S = 15;
 
-  private boolean shouldRun;
-
   /** source of wave data. */
   private final SeismicDataSource dataSource;
 
-  /** Jobs to be plotted. */
-  private final BlockingQueue<PlotJob> plotJobs;
-
   /** my name. */
   public final String name;
 
@@ -55,13 +42,9 @@ public class WaveSource implements Runnable {
    * Class constructor.
    *
    * @param name My name
-   * @param plotJobs Queue containing jobs to plot
    * @param config My config stanza
    */
-  public WaveSource(final String name, final BlockingQueue<PlotJob> plotJobs,
-      final ConfigFile config) {
-    shouldRun = true;
-    this.plotJobs = plotJobs;
+  public WaveSource(final String name, final ConfigFile config) {
     this.name = name;
 
     final String type = config.getString("type", DEFAULT_TYPE);
@@ -82,39 +65,14 @@ public class WaveSource implements Runnable {
   }
 
   /**
-   * stop thread.
-   */
-  public void stop() {
-    shouldRun = false;
-  }
-
-  /**
-   * Take plot jobs and produce files.
+   * Retrieve a wave from my wave server.
+   *
+   * @param channel channel name
+   * @param t1 time of first sample, J2kSec
+   * @param t2 time of last sample, J2kSec
+   * @return the wave or null if no data is available
    */
-  public void run() {
-    while (shouldRun || !plotJobs.isEmpty()) {
-      PlotJob pj = null;
-      try {
-        pj = plotJobs.poll(2, TimeUnit.SECONDS);
-        if (pj == null) {
-          continue;
-        }
-
-        if (pj.plotTimeMs > System.currentTimeMillis()) {
-          plotJobs.put(pj);
-          Thread.sleep(1000);
-          continue;
-        }
-
-        final SubnetPlotter subnet = pj.subnet;
-
-        LOGGER.info("Plotting subnet {} from {} scheduled for {}", subnet.subnetName, name,
-            new Date(pj.plotTimeMs));
-        subnet.plot(pj.plotEndMs, dataSource);
-      } catch (final InterruptedException noAction) {
-        continue;
-      }
-    }
-    LOGGER.debug("Exiting WaveSource thread ({}). Job queue: {}", name, plotJobs.size());
+  public Wave getWave(final String channel, final double t1, final double t2) {
+    return dataSource.getWave(channel, t1, t2);
   }
 }
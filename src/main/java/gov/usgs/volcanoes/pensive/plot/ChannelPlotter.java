@@ -6,14 +6,11 @@
 package gov.usgs.volcanoes.pensive.plot;
 
 import gov.usgs.plot.data.SliceWave;
-import gov.usgs.plot.data.Spectrogram;
 import gov.usgs.plot.render.BasicFrameRenderer;
 import gov.usgs.plot.render.TextRenderer;
 import gov.usgs.plot.render.wave.MinuteMarkingWaveRenderer;
 import gov.usgs.plot.render.wave.SliceWaveRenderer;
-import gov.usgs.plot.render.wave.SpectrogramRenderer;
 import gov.usgs.volcanoes.core.configfile.ConfigFile;
-import gov.usgs.volcanoes.core.time.J2kSec;
 import gov.usgs.volcanoes.core.time.Time;
 
 import org.slf4j.Logger;
@@ -39,38 +36,21 @@ public abstract class ChannelPlotter {
   /** The ratio of a waveform plot to its spectrogram plot. */
   public static final double WAVE_RATIO = .25;
 
-  private static final double DEFAULT_OVERLAP = 0.859375;
-  private static final boolean DEFAULT_LOG_POWER = true;
-  private static final double DEFAULT_MIN_FREQ = 0;
-  private static final double DEFAULT_MAX_FREQ = 10;
-  private static final int DEFAULT_NFFT = 0;
-  private static final int DEFAULT_BIN_SIZE = 256;
   private static final int DEFAULT_MAX_POWER = 120;
   private static final int DEFAULT_MIN_POWER = 30;
-
-  /** my wave data. */
-  protected SliceWave wave;
+  private static final boolean DEFAULT_RASTER_SPECTROGRAM = false;
 
   /** Font to use for no data message. */
-  protected Font noDataFont;
+  private final Font noDataFont;
 
   /** Channel position in plot. */
-  protected int index;
+  protected final int index;
 
   /** Dimension of channel plot. */
-  protected Dimension plotDimension;
+  protected final Dimension plotDimension;
 
   /** my config stanza. */
-  protected ConfigFile config;
-
-  /** my wave renderer. */
-  private final SliceWaveRenderer waveRenderer;
-
-  /** my spectrogram renderer. */
-  protected final SpectrogramRenderer spectrogramRenderer;
-
-  /** my frame renderer. */
-  private final BasicFrameRenderer plotFrame;
+  protected final ConfigFile config;
 
   /** height of the wave panel. */
   protected final int waveHeight;
@@ -84,11 +64,8 @@ public abstract class ChannelPlotter {
   /** my name. */
   protected final String name;
 
-  /** plot end time in ms. */
-  protected long plotEndMs;
-
-  /** make any type-specific modifications to the SpectrogramRenderer. */
-  protected abstract void tweakSpectrogramRenderer(SpectrogramRenderer spectrogramRenderer);
+  /** make any type-specific modifications to the SpectraRenderer. */
+  protected abstract void tweakSpectrogramRenderer(SpectraRenderer spectrogramRenderer);
 
   /** make any type-specific modifications to the SliceWaveRenderer. */
   protected abstract void tweakWaveRenderer(SliceWaveRenderer waveRenderer);
@@ -105,41 +82,41 @@ public abstract class ChannelPlotter {
    * 
    * @param plotDimension The dimension of the plot
    * 
+   * @param noDataFont Font to use for no data message
+   * 
    * @param config My configuration stanza
    */
-  public ChannelPlotter(String name, int index, Dimension plotDimension, ConfigFile config) {
+  public ChannelPlotter(String name, int index, Dimension plotDimension, Font noDataFont,
+      ConfigFile config) {
     this.name = name;
     this.index = index;
-    this.plotDimension = plotDimension;
+    this.plotDimension = new Dimension(plotDimension);
+    this.noDataFont = noDataFont;
     this.config = config;
     waveHeight = (int) (plotDimension.height * WAVE_RATIO);
 
     minPower = config.getInt("minPower", DEFAULT_MIN_POWER);
     maxPower = config.getInt("maxPower", DEFAULT_MAX_POWER);
-
-    waveRenderer = createWaveRenderer();
-    spectrogramRenderer = createSpectrogramRenderer(config);
-
-    plotFrame = new BasicFrameRenderer();
-    plotFrame.addRenderer(waveRenderer);
-    plotFrame.addRenderer(spectrogramRenderer);
-
   }
 
   /**
-   * Create a SpectrogramRendere and apply my settings.
+   * Create a SpectraRenderer and apply my settings.
    * 
    * @param config my config stanza
    * 
-   * @return my SpectrogramRenderer
+   * @return my SpectraRenderer
    * 
    */
-  protected SpectrogramRenderer createSpectrogramRenderer(ConfigFile config) {
+  protected SpectraRenderer createSpectrogramRenderer(ConfigFile config) {
 
-    SpectrogramRenderer sr = new SpectrogramRenderer();
+    SpectraRenderer sr;
+    if (config.getBoolean("rasterSpectrogram", DEFAULT_RASTER_SPECTROGRAM)) {
+      sr = new RasterSpectraRenderer(
+          config.getInt("colormapSize", RasterSpectraRenderer.DEFAULT_COLORMAP_SIZE));
+    } else {
+      sr = new SpectraRenderer();
+    }
 
-    // y-axis labels will sometimes not be displayed if x-axis tick marks
-    // are not displayed. Note sure why.
     sr.yTickMarks = false;
     sr.yTickValues = false;
     sr.xTickMarks = false;
@@ -147,15 +124,9 @@ public abstract class ChannelPlotter {
     sr.xUnits = false;
     sr.xLabel = false;
 
-    sr.setOverlap(config.getDouble("overlap", DEFAULT_OVERLAP));
-    sr.setLogPower(config.getBoolean("logPower", DEFAULT_LOG_POWER));
-    sr.setMinFreq(config.getDouble("minFreq", DEFAULT_MIN_FREQ));
-    sr.setMaxFreq(config.getDouble("maxFreq", DEFAULT_MAX_FREQ));
-    sr.setNfft(config.getInt("nfft", DEFAULT_NFFT));
-    sr.setBinSize(config.getInt("binSize", DEFAULT_BIN_SIZE));
-    sr.setMinPower(minPower);
-    sr.setMaxPower(maxPower);
-    sr.setTimeZone("UTC");
+    sr.setFreqRange(config.getDouble("minFreq", SpectraCalculator.DEFAULT_MIN_FREQ),
+        config.getDouble("maxFreq", SpectraCalculator.DEFAULT_MAX_FREQ));
+    sr.setPowerRange(minPower, maxPower);
 
     tweakSpectrogramRenderer(sr);
 
@@ -184,46 +155,47 @@ public abstract class ChannelPlotter {
   }
 
   /**
-   * wave mutator method.
+   * Produce a plot. Renderers are created for each plot, so plots of different intervals may be
+   * produced concurrently.
    * 
-   * @param wave wave to plot
+   * @param wave wave to plot, may be null
+   * @param spectra spectra of the wave, computed once for all of my channel's plotters
+   * @return frame renderer containing plot or error message
    */
-  public void setWave(SliceWave wave) {
-    this.wave = wave;
-    waveRenderer.setWave(wave);
-    spectrogramRenderer.setWave(wave);
-    if (wave != null) {
-      double plotStart = wave.getStartTime();
-      double plotEnd = wave.getStartTime() + SubnetPlotter.DURATION_S;
-
-      waveRenderer.setMinY(wave.min());
-      waveRenderer.setMaxY(wave.max());
-      waveRenderer.setWave(wave);
-      waveRenderer.setViewTimes(plotStart, plotEnd, "UTC");
-      waveRenderer.update();
-
-      spectrogramRenderer.setWave(wave);
-      spectrogramRenderer.setViewStartTime(plotStart);
-      spectrogramRenderer.setViewEndTime(plotEnd);
-      spectrogramRenderer.createDefaultFrameDecorator();
-      spectrogramRenderer.update();
-
-      plotEndMs = J2kSec.asEpoch(plotEnd);
-    }
+  public BasicFrameRenderer plot(SliceWave wave, Spectra spectra) {
+    return plot(wave, spectra, SubnetPlotter.DURATION_S);
   }
 
   /**
-   * Produce the plot.
+   * Produce a plot spanning a given time.
    * 
+   * @param wave wave to plot, may be null
+   * @param spectra spectra of the wave, computed once for all of my channel's plotters
+   * @param durationS seconds spanned by the plot
    * @return frame renderer containing plot or error message
    */
-  public BasicFrameRenderer plot() {
-
-    if (wave != null && wave.samples() > 0) {
-      return plotFrame;
-    } else {
+  public BasicFrameRenderer plot(SliceWave wave, Spectra spectra, double durationS) {
+    if (wave == null || wave.samples() == 0) {
       return noDataRenderer();
     }
+
+    double plotStart = wave.getStartTime();
+    double plotEnd = wave.getStartTime() + durationS;
+
+    SliceWaveRenderer waveRenderer = createWaveRenderer();
+    waveRenderer.setMinY(wave.min());
+    waveRenderer.setMaxY(wave.max());
+    waveRenderer.setWave(wave);
+    waveRenderer.setViewTimes(plotStart, plotEnd, "UTC");
+    waveRenderer.update();
+
+    SpectraRenderer spectrogramRenderer = createSpectrogramRenderer(config);
+    spectrogramRenderer.setSpectra(spectra, plotStart, plotEnd);
+
+    BasicFrameRenderer plotFrame = new BasicFrameRenderer();
+    plotFrame.addRenderer(waveRenderer);
+    plotFrame.addRenderer(spectrogramRenderer);
+    return plotFrame;
   }
 
   /**
@@ -247,28 +219,20 @@ public abstract class ChannelPlotter {
     return fr;
   }
 
-  /**
-   * accessor method for plotEndMs.
-   * 
-   * @return plotEndMs
-   */
-  public long getPlotEndMs() {
-    return plotEndMs;
-  }
-
   /**
    * Return data as a CSV string.
    * 
+   * @param spectra spectra to write, may be null
+   * @param plotEndMs plot end time in ms
    * @param timestampFormat format to use for the timestamp
    * @return A string CSV representation of the data
    */
-  public String getCsv(String timestampFormat) {
-    Spectrogram spectrogram = spectrogramRenderer.getSpectrogram();
-    if (spectrogram == null) {
+  public static String getCsv(Spectra spectra, long plotEndMs, String timestampFormat) {
+    if (spectra == null) {
       return null;
     }
 
-    double[][] buffer = spectrogram.getSpectraAmplitude();
+    double[][] buffer = spectra.getPower();
 
     long time = plotEndMs - (SubnetPlotter.DURATION_S * 1000);
     long incr = (plotEndMs - time) / buffer.length;
@@ -0,0 +1,268 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.plot;
+
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+
+import gov.usgs.plot.data.Wave;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Precomputed tables for computing windowed amplitude spectra of a given FFT length and window
+ * size. Plans are cached and shared by every channel with the same settings. Each thread gets its
+ * own scratch buffers, so once a plan is warm computing a spectrum allocates nothing.
+ *
+ * <p>Power-of-two lengths use a radix-2 transform of half length with the real signal packed into
+ * complex samples. Other lengths fall back to JTransforms.
+ *
+ * @author Tom Parker
+ */
+public final class FftPlan {
+
+  /** plans keyed by FFT length and window size. */
+  private static final ConcurrentMap<Long, FftPlan> PLANS = new ConcurrentHashMap<Long, FftPlan>();
+
+  /** FFT length. */
+  private final int nfft;
+
+  /** samples in each window. */
+  private final int binSize;
+
+  /** Hann window coefficients. */
+  private final double[] window;
+
+  /** length of the complex transform, half of nfft. */
+  private final int half;
+
+  /** real part of complex twiddle factors. */
+  private final double[] twiddleRe;
+
+  /** imaginary part of complex twiddle factors. */
+  private final double[] twiddleIm;
+
+  /** real part of twiddle factors used to unpack the real spectrum. */
+  private final double[] splitRe;
+
+  /** imaginary part of twiddle factors used to unpack the real spectrum. */
+  private final double[] splitIm;
+
+  /** bit-reversed order of complex samples. */
+  private final int[] bitReverse;
+
+  /** per-thread scratch, real parts followed by imaginary parts. */
+  private final ThreadLocal<double[]> scratch;
+
+  /** per-thread transform used when nfft isn't a power of two, otherwise null. */
+  private final ThreadLocal<DoubleFFT_1D> fallback;
+
+  /**
+   * Return a plan, creating it if needed.
+   *
+   * @param nfft FFT length, at least binSize and even
+   * @param binSize samples in each window
+   * @return a shared plan
+   */
+  public static FftPlan get(final int nfft, final int binSize) {
+    final Long key = ((long) nfft << 32) | binSize;
+    FftPlan plan = PLANS.get(key);
+    if (plan == null) {
+      plan = new FftPlan(nfft, binSize);
+      final FftPlan existing = PLANS.putIfAbsent(key, plan);
+      if (existing != null) {
+        plan = existing;
+      }
+    }
+    return plan;
+  }
+
+  /**
+   * Class constructor.
+   *
+   * @param nfft FFT length
+   * @param binSize samples in each window
+   */
+  private FftPlan(final int nfft, final int binSize) {
+    this.nfft = nfft;
+    this.binSize = binSize;
+    half = nfft / 2;
+
+    window = new double[binSize];
+    for (int i = 0; i < binSize; i++) {
+      window[i] = 0.5 * (1 - Math.cos(2 * Math.PI * i / (binSize - 1)));
+    }
+
+    final boolean radix2 = nfft >= 4 && (nfft & (nfft - 1)) == 0;
+    if (radix2) {
+      twiddleRe = new double[half / 2];
+      twiddleIm = new double[half / 2];
+      for (int i = 0; i < twiddleRe.length; i++) {
+        twiddleRe[i] = Math.cos(2 * Math.PI * i / half);
+        twiddleIm[i] = -Math.sin(2 * Math.PI * i / half);
+      }
+
+      splitRe = new double[half + 1];
+      splitIm = new double[half + 1];
+      for (int i = 0; i <= half; i++) {
+        splitRe[i] = Math.cos(2 * Math.PI * i / nfft);
+        splitIm[i] = -Math.sin(2 * Math.PI * i / nfft);
+      }
+
+      bitReverse = new int[half];
+      final int bits = Integer.numberOfTrailingZeros(half);
+      for (int i = 0; i < half; i++) {
+        bitReverse[i] = Integer.reverse(i) >>> (Integer.SIZE - bits);
+      }
+      fallback = null;
+    } else {
+      twiddleRe = null;
+      twiddleIm = null;
+      splitRe = null;
+      splitIm = null;
+      bitReverse = null;
+      fallback = new ThreadLocal<DoubleFFT_1D>() {
+        @Override
+        protected DoubleFFT_1D initialValue() {
+          return new DoubleFFT_1D(nfft);
+        }
+      };
+    }
+
+    scratch = new ThreadLocal<double[]>() {
+      @Override
+      protected double[] initialValue() {
+        return new double[nfft];
+      }
+    };
+  }
+
+  /**
+   * FFT length accessor.
+   *
+   * @return FFT length
+   */
+  public int getNfft() {
+    return nfft;
+  }
+
+  /**
+   * Window size accessor.
+   *
+   * @return samples in each window
+   */
+  public int getBinSize() {
+    return binSize;
+  }
+
+  /**
+   * Compute the amplitude spectrum of one Hann-windowed frame. Missing samples are treated as zero.
+   *
+   * @param samples source samples
+   * @param offset index of first sample in the frame
+   * @param lowBin first frequency bin wanted
+   * @param highBin last frequency bin wanted, at most nfft / 2
+   * @param amplitude receives highBin - lowBin + 1 amplitudes
+   */
+  public void amplitudes(final int[] samples, final int offset, final int lowBin,
+      final int highBin, final double[] amplitude) {
+    if (fallback == null) {
+      radix2Amplitudes(samples, offset, lowBin, highBin, amplitude);
+    } else {
+      fallbackAmplitudes(samples, offset, lowBin, highBin, amplitude);
+    }
+  }
+
+  private void radix2Amplitudes(final int[] samples, final int offset, final int lowBin,
+      final int highBin, final double[] amplitude) {
+    final double[] buffer = scratch.get();
+
+    // pack even samples as real, odd samples as imaginary, in bit-reversed order
+    for (int i = 0; i < half; i++) {
+      final int even = 2 * i;
+      final int odd = even + 1;
+      final int j = bitReverse[i];
+      buffer[j] = even < binSize ? windowed(samples[offset + even], even) : 0;
+      buffer[half + j] = odd < binSize ? windowed(samples[offset + odd], odd) : 0;
+    }
+
+    for (int size = 2; size <= half; size <<= 1) {
+      final int span = size >> 1;
+      final int stride = half / size;
+      for (int start = 0; start < half; start += size) {
+        for (int k = 0; k < span; k++) {
+          final double wr = twiddleRe[k * stride];
+          final double wi = twiddleIm[k * stride];
+          final int a = start + k;
+          final int b = a + span;
+          final double br = buffer[b];
+          final double bi = buffer[half + b];
+          final double tr = wr * br - wi * bi;
+          final double ti = wr * bi + wi * br;
+          buffer[b] = buffer[a] - tr;
+          buffer[half + b] = buffer[half + a] - ti;
+          buffer[a] += tr;
+          buffer[half + a] += ti;
+        }
+      }
+    }
+
+    // unpack the spectrum of the real signal from the complex one
+    for (int bin = lowBin; bin <= highBin; bin++) {
+      final int k = bin % half;
+      final int m = (half - bin) % half;
+      final double zr = buffer[k];
+      final double zi = buffer[half + k];
+      final double mr = buffer[m];
+      final double mi = buffer[half + m];
+
+      final double er = (zr + mr) / 2;
+      final double ei = (zi - mi) / 2;
+      final double or = (zi + mi) / 2;
+      final double oi = (mr - zr) / 2;
+
+      final double wr = splitRe[bin];
+      final double wi = splitIm[bin];
+      final double xr = er + wr * or - wi * oi;
+      final double xi = ei + wr * oi + wi * or;
+      amplitude[bin - lowBin] = Math.sqrt(xr * xr + xi * xi);
+    }
+  }
+
+  private void fallbackAmplitudes(final int[] samples, final int offset, final int lowBin,
+      final int highBin, final double[] amplitude) {
+    final double[] buffer = scratch.get();
+    for (int i = 0; i < binSize; i++) {
+      buffer[i] = windowed(samples[offset + i], i);
+    }
+    for (int i = binSize; i < nfft; i++) {
+      buffer[i] = 0;
+    }
+
+    fallback.get().realForward(buffer);
+
+    for (int bin = lowBin; bin <= highBin; bin++) {
+      final double re;
+      final double im;
+      if (bin == 0) {
+        re = buffer[0];
+        im = 0;
+      } else if (bin == half) {
+        re = buffer[1];
+        im = 0;
+      } else {
+        re = buffer[2 * bin];
+        im = buffer[2 * bin + 1];
+      }
+      amplitude[bin - lowBin] = Math.sqrt(re * re + im * im);
+    }
+  }
+
+  private double windowed(final int sample, final int index) {
+    return sample == Wave.NO_DATA ? 0 : sample * window[index];
+  }
+}
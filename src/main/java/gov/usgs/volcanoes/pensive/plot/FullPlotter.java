@@ -8,7 +8,6 @@ package gov.usgs.volcanoes.pensive.plot;
 
 import gov.usgs.plot.render.TextRenderer;
 import gov.usgs.plot.render.wave.SliceWaveRenderer;
-import gov.usgs.plot.render.wave.SpectrogramRenderer;
 import gov.usgs.volcanoes.core.configfile.ConfigFile;
 
 import org.slf4j.Logger;
@@ -36,6 +35,9 @@ public class FullPlotter extends ChannelPlotter {
   /** width of plot decorations in pixels. */
   public static final int LABEL_WIDTH = 30;
 
+  /** If true, decorate the X-axis. */
+  private final boolean decorateX;
+
   /**
    * Class constructor.
    * 
@@ -47,24 +49,22 @@ public class FullPlotter extends ChannelPlotter {
    */
   public FullPlotter(String name, int index, Dimension plotDimension, boolean decorateX,
       ConfigFile config) {
-    super(name, index, plotDimension, config);
-
-    spectrogramRenderer.xTickValues = decorateX;
-    spectrogramRenderer.xUnits = decorateX;
-    spectrogramRenderer.xLabel = decorateX;
-
-    noDataFont = NO_DATA_FONT;
+    super(name, index, plotDimension, NO_DATA_FONT, config);
+    this.decorateX = decorateX;
   }
 
   /**
-   * Apply any settings needed to my SpectrogramRenderer.
+   * Apply any settings needed to my SpectraRenderer.
    * 
-   * @param my SpectrogramRenderer
+   * @param my SpectraRenderer
    */
-  protected void tweakSpectrogramRenderer(SpectrogramRenderer spectrogramRenderer) {
+  protected void tweakSpectrogramRenderer(SpectraRenderer spectrogramRenderer) {
     spectrogramRenderer.yTickMarks = true;
     spectrogramRenderer.yTickValues = true;
     spectrogramRenderer.xTickMarks = true;
+    spectrogramRenderer.xTickValues = decorateX;
+    spectrogramRenderer.xUnits = decorateX;
+    spectrogramRenderer.xLabel = decorateX;
     spectrogramRenderer.setYLabelText(name.replace(' ', '_'));
 
     int top = index * plotDimension.height;
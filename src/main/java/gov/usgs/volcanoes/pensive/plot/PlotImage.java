@@ -0,0 +1,34 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.plot;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A rendered image waiting to be written.
+ *
+ * @author Tom Parker
+ */
+public class PlotImage {
+
+  /** where to write the image. */
+  public final String fileName;
+
+  /** the rendered image. */
+  public final BufferedImage image;
+
+  /**
+   * Class constructor.
+   *
+   * @param fileName where to write the image
+   * @param image the rendered image
+   */
+  public PlotImage(final String fileName, final BufferedImage image) {
+    this.fileName = fileName;
+    this.image = image;
+  }
+}
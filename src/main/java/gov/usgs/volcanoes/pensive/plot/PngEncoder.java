@@ -0,0 +1,362 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.plot;
+
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Write PNG files. Images are encoded here rather than by ImageIO, whose PNG writer ignores the
+ * compression level before Java 9. If asked, images with no more than 256 colors are written with
+ * an 8-bit palette, which is both smaller and quicker to compress than 24-bit color. Files are
+ * written under a temporary name and renamed once complete so a partial image is never visible.
+ *
+ * @author Tom Parker
+ */
+public class PngEncoder {
+
+  /** my logger. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(PngEncoder.class);
+
+  /** default deflate level, 0 (fastest) to 9 (smallest). */
+  public static final int DEFAULT_COMPRESSION_LEVEL = 3;
+
+  /** If true, write palette images when possible. */
+  public static final boolean DEFAULT_INDEXED = false;
+
+  /** most colors in a palette image. */
+  private static final int MAX_PALETTE_SIZE = 256;
+
+  /** first bytes of every PNG file. */
+  private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+  /** PNG row filter types. */
+  private static final int FILTER_NONE = 0;
+  private static final int FILTER_SUB = 1;
+  private static final int FILTER_UP = 2;
+  private static final int FILTER_AVERAGE = 3;
+  private static final int FILTER_PAETH = 4;
+
+  /** deflate level. */
+  private final int compressionLevel;
+
+  /** If true, write palette images when possible. */
+  private final boolean indexed;
+
+  /**
+   * Class constructor.
+   *
+   * @param config my config file
+   */
+  public PngEncoder(final ConfigFile config) {
+    final int level = config.getInt("pngCompressionLevel", DEFAULT_COMPRESSION_LEVEL);
+    compressionLevel = Math.max(0, Math.min(9, level));
+    indexed = config.getBoolean("pngIndexed", DEFAULT_INDEXED);
+  }
+
+  /**
+   * Write an image.
+   *
+   * @param plotImage image to write
+   */
+  public void write(final PlotImage plotImage) {
+    LOGGER.debug("writing " + plotImage.fileName);
+    final File file = new File(plotImage.fileName);
+    final File dir = file.getAbsoluteFile().getParentFile();
+    dir.mkdirs();
+
+    File tmp = null;
+    try {
+      tmp = File.createTempFile("." + file.getName(), ".tmp", dir);
+      encode(plotImage.image, tmp);
+      try {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (final AtomicMoveNotSupportedException e) {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (final IOException e) {
+      LOGGER.error("Cannot write " + plotImage.fileName + ": " + e.getLocalizedMessage());
+      if (tmp != null) {
+        tmp.delete();
+      }
+    }
+  }
+
+  /**
+   * Encode an image as PNG.
+   *
+   * @param image image to encode
+   * @param file where to write it
+   * @throws IOException when things go wrong
+   */
+  private void encode(final BufferedImage image, final File file) throws IOException {
+    BufferedImage output = image;
+    if (indexed) {
+      final BufferedImage palette = toIndexed(image);
+      if (palette != null) {
+        output = palette;
+      } else {
+        LOGGER.debug("too many colors for a palette, writing RGB");
+      }
+    }
+
+    final OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+    try {
+      encode(output, out);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Encode an image as PNG, deflated at my compression level. Palette images from toIndexed are
+   * written unfiltered with 8-bit indices, as libpng does; anything else is written as 24-bit RGB,
+   * choosing for each row the filter leaving the smallest sum of differences.
+   *
+   * @param image image to encode
+   * @param out where to write it
+   * @throws IOException when things go wrong
+   */
+  void encode(final BufferedImage image, final OutputStream out) throws IOException {
+    final int width = image.getWidth();
+    final int height = image.getHeight();
+    final boolean palette = image.getType() == BufferedImage.TYPE_BYTE_INDEXED;
+    final int bytesPerPixel = palette ? 1 : 3;
+
+    out.write(SIGNATURE);
+    final ByteBuffer header = ByteBuffer.allocate(13);
+    header.putInt(width).putInt(height);
+    header.put((byte) 8).put((byte) (palette ? 3 : 2));
+    header.put((byte) 0).put((byte) 0).put((byte) 0);
+    writeChunk(out, "IHDR", header.array());
+
+    if (palette) {
+      final IndexColorModel colorModel = (IndexColorModel) image.getColorModel();
+      final byte[] colors = new byte[colorModel.getMapSize() * 3];
+      for (int i = 0; i < colorModel.getMapSize(); i++) {
+        colors[3 * i] = (byte) colorModel.getRed(i);
+        colors[3 * i + 1] = (byte) colorModel.getGreen(i);
+        colors[3 * i + 2] = (byte) colorModel.getBlue(i);
+      }
+      writeChunk(out, "PLTE", colors);
+    }
+
+    final ByteArrayOutputStream data = new ByteArrayOutputStream();
+    final Deflater deflater = new Deflater(compressionLevel);
+    try {
+      final DeflaterOutputStream deflated = new DeflaterOutputStream(data, deflater);
+      final int rowLength = width * bytesPerPixel;
+      byte[] row = new byte[rowLength];
+      byte[] prior = new byte[rowLength];
+      final byte[] filtered = new byte[rowLength];
+      final byte[] best = new byte[rowLength];
+      final int[] rgb = palette ? null : new int[width];
+      final byte[] indices =
+          palette ? ((DataBufferByte) image.getRaster().getDataBuffer()).getData() : null;
+
+      for (int y = 0; y < height; y++) {
+        if (palette) {
+          deflated.write(FILTER_NONE);
+          deflated.write(indices, y * width, width);
+          continue;
+        }
+
+        image.getRGB(0, y, width, 1, rgb, 0, width);
+        for (int x = 0; x < width; x++) {
+          row[3 * x] = (byte) (rgb[x] >> 16);
+          row[3 * x + 1] = (byte) (rgb[x] >> 8);
+          row[3 * x + 2] = (byte) rgb[x];
+        }
+
+        int bestFilter = FILTER_NONE;
+        long bestSum = Long.MAX_VALUE;
+        for (int type = FILTER_NONE; type <= FILTER_PAETH; type++) {
+          final long sum = filter(type, row, prior, bytesPerPixel, filtered);
+          if (sum < bestSum) {
+            bestSum = sum;
+            bestFilter = type;
+            System.arraycopy(filtered, 0, best, 0, rowLength);
+          }
+        }
+        deflated.write(bestFilter);
+        deflated.write(best);
+
+        final byte[] swap = prior;
+        prior = row;
+        row = swap;
+      }
+      deflated.finish();
+    } finally {
+      deflater.end();
+    }
+    writeChunk(out, "IDAT", data.toByteArray());
+    writeChunk(out, "IEND", new byte[0]);
+  }
+
+  /**
+   * Apply a PNG filter to a row.
+   *
+   * @param type filter type
+   * @param row the row
+   * @param prior the row above, all zero for the first row
+   * @param bpp bytes per pixel
+   * @param out filtered row
+   * @return sum of the filtered bytes taken as signed, which is smaller for rows likely to
+   *         compress well
+   */
+  private static long filter(final int type, final byte[] row, final byte[] prior, final int bpp,
+      final byte[] out) {
+    long sum = 0;
+    for (int i = 0; i < row.length; i++) {
+      final int x = row[i] & 0xFF;
+      final int a = i < bpp ? 0 : row[i - bpp] & 0xFF;
+      final int b = prior[i] & 0xFF;
+      final int c = i < bpp ? 0 : prior[i - bpp] & 0xFF;
+      final int predicted;
+      switch (type) {
+        case FILTER_SUB:
+          predicted = a;
+          break;
+        case FILTER_UP:
+          predicted = b;
+          break;
+        case FILTER_AVERAGE:
+          predicted = (a + b) >> 1;
+          break;
+        case FILTER_PAETH:
+          predicted = paeth(a, b, c);
+          break;
+        default:
+          predicted = 0;
+          break;
+      }
+      out[i] = (byte) (x - predicted);
+      sum += Math.abs(out[i]);
+    }
+    return sum;
+  }
+
+  private static int paeth(final int a, final int b, final int c) {
+    final int p = a + b - c;
+    final int pa = Math.abs(p - a);
+    final int pb = Math.abs(p - b);
+    final int pc = Math.abs(p - c);
+    if (pa <= pb && pa <= pc) {
+      return a;
+    }
+    return pb <= pc ? b : c;
+  }
+
+  /**
+   * Write a PNG chunk.
+   *
+   * @param out where to write it
+   * @param type four letter chunk type
+   * @param data chunk data
+   * @throws IOException when things go wrong
+   */
+  private static void writeChunk(final OutputStream out, final String type, final byte[] data)
+      throws IOException {
+    final byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+    final CRC32 crc = new CRC32();
+    crc.update(typeBytes);
+    crc.update(data);
+
+    final ByteBuffer length = ByteBuffer.allocate(4);
+    length.putInt(data.length);
+    out.write(length.array());
+    out.write(typeBytes);
+    out.write(data);
+    final ByteBuffer checksum = ByteBuffer.allocate(4);
+    checksum.putInt((int) crc.getValue());
+    out.write(checksum.array());
+  }
+
+  /**
+   * Convert an RGB image to a palette image.
+   *
+   * @param image image to convert
+   * @return palette image or null if the image isn't RGB or has too many colors
+   */
+  static BufferedImage toIndexed(final BufferedImage image) {
+    if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+      return null;
+    }
+
+    final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+    // open-addressed table of color -> palette index
+    final int[] keys = new int[MAX_PALETTE_SIZE * 4];
+    final byte[] slots = new byte[keys.length];
+    Arrays.fill(keys, -1);
+    final int[] palette = new int[MAX_PALETTE_SIZE];
+    int colors = 0;
+
+    final byte[] indices = new byte[pixels.length];
+    int lastColor = -1;
+    byte lastIndex = 0;
+    for (int i = 0; i < pixels.length; i++) {
+      final int color = pixels[i] & 0xFFFFFF;
+      if (color != lastColor) {
+        int slot = (color * 0x9E3779B1 >>> 22) & (keys.length - 1);
+        while (keys[slot] != -1 && keys[slot] != color) {
+          slot = (slot + 1) & (keys.length - 1);
+        }
+        if (keys[slot] == -1) {
+          if (colors == MAX_PALETTE_SIZE) {
+            return null;
+          }
+          keys[slot] = color;
+          slots[slot] = (byte) colors;
+          palette[colors++] = color;
+        }
+        lastColor = color;
+        lastIndex = slots[slot];
+      }
+      indices[i] = lastIndex;
+    }
+
+    final byte[] red = new byte[colors];
+    final byte[] green = new byte[colors];
+    final byte[] blue = new byte[colors];
+    for (int i = 0; i < colors; i++) {
+      red[i] = (byte) (palette[i] >> 16);
+      green[i] = (byte) (palette[i] >> 8);
+      blue[i] = (byte) palette[i];
+    }
+
+    final IndexColorModel colorModel = new IndexColorModel(8, colors, red, green, blue);
+    final BufferedImage out = new BufferedImage(image.getWidth(), image.getHeight(),
+        BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+    final byte[] outPixels = ((DataBufferByte) out.getRaster().getDataBuffer()).getData();
+    System.arraycopy(indices, 0, outPixels, 0, indices.length);
+    return out;
+  }
+}
@@ -0,0 +1,151 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.plot;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * A SpectraRenderer which fills an image exactly the size of its frame by writing colors directly
+ * into the image's pixel array. Colors come from a lookup table spanning minPower to maxPower, so
+ * each pixel costs two table lookups and no Java2D calls. Only decorations use Graphics2D.
+ *
+ * @author Tom Parker
+ */
+public class RasterSpectraRenderer extends SpectraRenderer {
+
+  /** default number of colors in the lookup table. */
+  public static final int DEFAULT_COLORMAP_SIZE = 64;
+
+  /** color of pixels not covered by the spectra. */
+  private static final int BACKGROUND = 0xFFFFFF;
+
+  /** colors spanning minPower to maxPower. */
+  private final int[] colormap;
+
+  /** table entries per unit of power. */
+  private double colormapScale;
+
+  /**
+   * Class constructor.
+   *
+   * @param colormapSize number of colors in the lookup table
+   */
+  public RasterSpectraRenderer(final int colormapSize) {
+    colormap = new int[Math.max(2, colormapSize)];
+  }
+
+  /**
+   * Set the power range and rebuild the lookup table.
+   *
+   * @param minPower power mapped to the first color
+   * @param maxPower power mapped to the last color
+   */
+  @Override
+  public void setPowerRange(final double minPower, final double maxPower) {
+    super.setPowerRange(minPower, maxPower);
+    final double step = (maxPower - minPower) / colormap.length;
+    for (int i = 0; i < colormap.length; i++) {
+      colormap[i] = color(minPower + (i + .5) * step);
+    }
+    colormapScale = colormap.length / (maxPower - minPower);
+  }
+
+  /**
+   * Create an image the size of my frame.
+   *
+   * @param spectra spectra to draw
+   * @return image covering my frame
+   */
+  @Override
+  protected BufferedImage createImage(final Spectra spectra) {
+    if (width < 1 || height < 1) {
+      return null;
+    }
+
+    final int[] sliceForColumn = new int[width];
+    final double viewSpan = viewEndTime - viewStartTime;
+    final double sliceSpan = spectra.getEndTime() - spectra.getStartTime();
+    for (int x = 0; x < width; x++) {
+      final double time = viewStartTime + (x + .5) * viewSpan / width;
+      sliceForColumn[x] =
+          cell(time - spectra.getStartTime(), sliceSpan, spectra.getSliceCount());
+    }
+
+    final int[] binForRow = new int[height];
+    final double freqSpan = maxFreq - minFreq;
+    final double binSpan = spectra.getMaxFreq() - spectra.getMinFreq();
+    for (int y = 0; y < height; y++) {
+      final double freq = maxFreq - (y + .5) * freqSpan / height;
+      binForRow[y] = cell(freq - spectra.getMinFreq(), binSpan, spectra.getBinCount());
+    }
+
+    final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    final double[][] power = spectra.getPower();
+    final int maxIndex = colormap.length - 1;
+
+    for (int y = 0; y < height; y++) {
+      final int bin = binForRow[y];
+      final int row = y * width;
+      if (bin < 0) {
+        Arrays.fill(pixels, row, row + width, BACKGROUND);
+        continue;
+      }
+
+      for (int x = 0; x < width; x++) {
+        final int slice = sliceForColumn[x];
+        if (slice < 0) {
+          pixels[row + x] = BACKGROUND;
+        } else {
+          int idx = (int) ((power[slice][bin] - minPower) * colormapScale);
+          if (idx < 0) {
+            idx = 0;
+          } else if (idx > maxIndex) {
+            idx = maxIndex;
+          }
+          pixels[row + x] = colormap[idx];
+        }
+      }
+    }
+
+    return image;
+  }
+
+  /**
+   * Draw the image unscaled over my frame.
+   *
+   * @param g where to draw
+   * @param image image returned by createImage
+   * @param spectra spectra drawn in the image
+   */
+  @Override
+  protected void drawImage(final Graphics2D g, final BufferedImage image, final Spectra spectra) {
+    g.drawImage(image, left, top, null);
+  }
+
+  /**
+   * Find the cell nearest an offset. Cells are evenly spaced from the first to the last.
+   *
+   * @param offset distance from the first cell
+   * @param span distance from the first cell to the last
+   * @param count number of cells
+   * @return cell index or -1 if the offset is more than half a cell beyond either end
+   */
+  private static int cell(final double offset, final double span, final int count) {
+    if (count == 1) {
+      return offset >= 0 && offset <= span ? 0 : -1;
+    }
+    final double cell = Math.rint(offset * (count - 1) / span);
+    if (cell < 0 || cell >= count || Double.isNaN(cell)) {
+      return -1;
+    }
+    return (int) cell;
+  }
+}
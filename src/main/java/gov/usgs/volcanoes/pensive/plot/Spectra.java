@@ -0,0 +1,112 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.plot;
+
+/**
+ * The spectra of a single channel over a single plot interval. Computed once and shared by every
+ * consumer of the channel's spectral data.
+ *
+ * @author Tom Parker
+ */
+public class Spectra {
+
+  /** spectral power, indexed by time slice then by frequency bin. */
+  private final double[][] power;
+
+  /** start of first time slice, J2kSec. */
+  private final double startTime;
+
+  /** end of last time slice, J2kSec. */
+  private final double endTime;
+
+  /** frequency of first bin. */
+  private final double minFreq;
+
+  /** frequency of last bin. */
+  private final double maxFreq;
+
+  /**
+   * Class constructor.
+   *
+   * @param power spectral power, indexed by time slice then by frequency bin
+   * @param startTime start of first time slice, J2kSec
+   * @param endTime end of last time slice, J2kSec
+   * @param minFreq frequency of first bin
+   * @param maxFreq frequency of last bin
+   */
+  public Spectra(final double[][] power, final double startTime, final double endTime,
+      final double minFreq, final double maxFreq) {
+    this.power = power;
+    this.startTime = startTime;
+    this.endTime = endTime;
+    this.minFreq = minFreq;
+    this.maxFreq = maxFreq;
+  }
+
+  /**
+   * Power accessor. Callers must not modify the returned array.
+   *
+   * @return spectral power, indexed by time slice then by frequency bin
+   */
+  public double[][] getPower() {
+    return power;
+  }
+
+  /**
+   * Return the number of time slices.
+   *
+   * @return count of time slices
+   */
+  public int getSliceCount() {
+    return power.length;
+  }
+
+  /**
+   * Return the number of frequency bins.
+   *
+   * @return count of frequency bins
+   */
+  public int getBinCount() {
+    return power.length == 0 ? 0 : power[0].length;
+  }
+
+  /**
+   * Start time accessor.
+   *
+   * @return start of first time slice, J2kSec
+   */
+  public double getStartTime() {
+    return startTime;
+  }
+
+  /**
+   * End time accessor.
+   *
+   * @return end of last time slice, J2kSec
+   */
+  public double getEndTime() {
+    return endTime;
+  }
+
+  /**
+   * Min frequency accessor.
+   *
+   * @return frequency of first bin
+   */
+  public double getMinFreq() {
+    return minFreq;
+  }
+
+  /**
+   * Max frequency accessor.
+   *
+   * @return frequency of last bin
+   */
+  public double getMaxFreq() {
+    return maxFreq;
+  }
+}
@@ -0,0 +1,142 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.plot;
+
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+
+/**
+ * Compute the spectra of a single channel using a short-time Fourier transform. FFT tables are
+ * shared with every other channel using the same nfft and binSize.
+ *
+ * @author Tom Parker
+ */
+public class SpectraCalculator {
+
+  /** default fraction of each FFT window shared with the next. */
+  public static final double DEFAULT_OVERLAP = 0.859375;
+
+  /** default power scaling. */
+  public static final boolean DEFAULT_LOG_POWER = true;
+
+  /** default lowest frequency kept. */
+  public static final double DEFAULT_MIN_FREQ = 0;
+
+  /** default highest frequency kept. */
+  public static final double DEFAULT_MAX_FREQ = 10;
+
+  /** default FFT length. Zero uses the bin size. */
+  public static final int DEFAULT_NFFT = 0;
+
+  /** default number of samples in each FFT window. */
+  public static final int DEFAULT_BIN_SIZE = 256;
+
+  /** fraction of each window shared with the next. */
+  private final double overlap;
+
+  /** if true, return power in dB. */
+  private final boolean logPower;
+
+  /** lowest frequency kept. */
+  private final double minFreq;
+
+  /** highest frequency kept. */
+  private final double maxFreq;
+
+  /** FFT length. */
+  private final int nfft;
+
+  /** samples in each FFT window. */
+  private final int binSize;
+
+  /** shared FFT tables. */
+  private final FftPlan plan;
+
+  /**
+   * Class constructor.
+   *
+   * @param config my channel config stanza
+   */
+  public SpectraCalculator(final ConfigFile config) {
+    overlap = config.getDouble("overlap", DEFAULT_OVERLAP);
+    logPower = config.getBoolean("logPower", DEFAULT_LOG_POWER);
+    minFreq = config.getDouble("minFreq", DEFAULT_MIN_FREQ);
+    maxFreq = config.getDouble("maxFreq", DEFAULT_MAX_FREQ);
+    binSize = config.getInt("binSize", DEFAULT_BIN_SIZE);
+
+    int n = Math.max(config.getInt("nfft", DEFAULT_NFFT), binSize);
+    if (n % 2 == 1) {
+      n++;
+    }
+    nfft = n;
+    plan = FftPlan.get(nfft, binSize);
+  }
+
+  /**
+   * Return the seconds of data in each time slice.
+   *
+   * @param samplingRate sampling rate of the wave analyzed
+   * @return seconds in each FFT window
+   */
+  public double getWindowS(final double samplingRate) {
+    return binSize / samplingRate;
+  }
+
+  /**
+   * Decide if spectra span the frequencies I'd keep, to within a bin. Spectra are cropped to the
+   * frequencies plotted when they were computed, so stored spectra may not.
+   *
+   * @param spectra spectra to check
+   * @return true if the spectra include my frequencies
+   */
+  public boolean covers(final Spectra spectra) {
+    final int bins = spectra.getBinCount();
+    final double binWidth =
+        bins > 1 ? (spectra.getMaxFreq() - spectra.getMinFreq()) / (bins - 1) : 0;
+    return spectra.getMinFreq() - binWidth <= minFreq && spectra.getMaxFreq() + binWidth >= maxFreq;
+  }
+
+  /**
+   * Compute spectra for a time span.
+   *
+   * @param wave detrended wave
+   * @param t1 start of time span, J2kSec
+   * @param t2 end of time span, J2kSec
+   * @return the spectra or null if the wave is too short to analyze
+   */
+  public Spectra compute(final Wave wave, final double t1, final double t2) {
+    final double samplingRate = wave.getSamplingRate();
+    final int first = Math.max(0, (int) Math.round((t1 - wave.getStartTime()) * samplingRate));
+    final int last =
+        Math.min(wave.numSamples(), (int) Math.round((t2 - wave.getStartTime()) * samplingRate));
+    final int step = Math.max(1, (int) Math.round(binSize * (1 - overlap)));
+    final int lowBin = (int) Math.ceil(minFreq * nfft / samplingRate);
+    final int highBin = Math.min(nfft / 2, (int) Math.floor(maxFreq * nfft / samplingRate));
+
+    if (last - first < binSize || highBin < lowBin) {
+      return null;
+    }
+
+    final int[] samples = wave.buffer;
+    final double[][] power = new double[(last - first - binSize) / step + 1][highBin - lowBin + 1];
+
+    for (int slice = 0; slice < power.length; slice++) {
+      final double[] row = power[slice];
+      plan.amplitudes(samples, first + slice * step, lowBin, highBin, row);
+      for (int i = 0; i < row.length; i++) {
+        // double to account for the coherent gain of the Hann window
+        final double amplitude = 2 * row[i];
+        row[i] = logPower ? 20 * Math.log10(Math.max(amplitude, 1)) : amplitude;
+      }
+    }
+
+    final double startTime = wave.getStartTime() + first / samplingRate;
+    final double endTime = startTime + ((power.length - 1) * step + binSize) / samplingRate;
+    return new Spectra(power, startTime, endTime, lowBin * samplingRate / nfft,
+        highBin * samplingRate / nfft);
+  }
+}
@@ -0,0 +1,316 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.plot;
+
+import gov.usgs.plot.render.Renderer;
+import gov.usgs.volcanoes.core.time.J2kSec;
+import gov.usgs.volcanoes.core.time.Time;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.image.BufferedImage;
+
+/**
+ * Render precomputed spectra as a spectrogram with a frequency axis on the left and minute marks
+ * along the bottom.
+ *
+ * @author Tom Parker
+ */
+public class SpectraRenderer implements Renderer {
+
+  /** Font used for axis decorations. */
+  public static final Font AXIS_FONT = Font.decode("dialog-PLAIN-10");
+
+  /** length of tick marks in pixels. */
+  private static final int TICK_LENGTH = 4;
+
+  /** gap between the frame and the y-axis label in pixels. */
+  private static final int Y_LABEL_OFFSET = 18;
+
+  /** candidate frequency tick spacings. */
+  private static final double[] FREQ_TICK_STEPS = {.5, 1, 2, 5, 10, 20, 50};
+
+  /** most frequency ticks drawn. */
+  private static final int MAX_FREQ_TICKS = 6;
+
+  /** If true, draw frequency tick marks. */
+  public boolean yTickMarks;
+
+  /** If true, label frequency tick marks. */
+  public boolean yTickValues;
+
+  /** If true, draw minute tick marks. */
+  public boolean xTickMarks;
+
+  /** If true, label minute tick marks. */
+  public boolean xTickValues;
+
+  /** If true, include the date in the time axis label. */
+  public boolean xUnits;
+
+  /** If true, label the time axis. */
+  public boolean xLabel;
+
+  /** left edge of frame. */
+  protected int left;
+
+  /** top edge of frame. */
+  protected int top;
+
+  /** frame width. */
+  protected int width;
+
+  /** frame height. */
+  protected int height;
+
+  /** frequency at the bottom of the frame. */
+  protected double minFreq;
+
+  /** frequency at the top of the frame. */
+  protected double maxFreq;
+
+  /** power mapped to the bottom of the color scale. */
+  protected double minPower;
+
+  /** power mapped to the top of the color scale. */
+  protected double maxPower;
+
+  private String yLabelText;
+
+  /** spectra to render, may be null. */
+  private Spectra spectra;
+
+  /** spectra drawn one pixel per cell, created along with the spectra. */
+  private BufferedImage image;
+
+  /** time of left edge, J2kSec. */
+  protected double viewStartTime;
+
+  /** time of right edge, J2kSec. */
+  protected double viewEndTime;
+
+  /**
+   * Set my location.
+   *
+   * @param left left edge of frame
+   * @param top top edge of frame
+   * @param width frame width
+   * @param height frame height
+   */
+  public void setLocation(final int left, final int top, final int width, final int height) {
+    this.left = left;
+    this.top = top;
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * Set the frequency axis limits.
+   *
+   * @param minFreq frequency at the bottom of the frame
+   * @param maxFreq frequency at the top of the frame
+   */
+  public void setFreqRange(final double minFreq, final double maxFreq) {
+    this.minFreq = minFreq;
+    this.maxFreq = maxFreq;
+  }
+
+  /**
+   * Set the power mapped to either end of the color scale.
+   *
+   * @param minPower power mapped to the bottom of the color scale
+   * @param maxPower power mapped to the top of the color scale
+   */
+  public void setPowerRange(final double minPower, final double maxPower) {
+    this.minPower = minPower;
+    this.maxPower = maxPower;
+  }
+
+  /**
+   * Set the text drawn beside the frequency axis.
+   *
+   * @param yLabelText label text, or null for none
+   */
+  public void setYLabelText(final String yLabelText) {
+    this.yLabelText = yLabelText;
+  }
+
+  /**
+   * Set spectra to render. The costly work of coloring each spectral cell is done here rather than
+   * in render, so it can happen in parallel with other channels.
+   *
+   * @param spectra spectra to render, may be null
+   * @param viewStartTime time of left edge, J2kSec
+   * @param viewEndTime time of right edge, J2kSec
+   */
+  public void setSpectra(final Spectra spectra, final double viewStartTime,
+      final double viewEndTime) {
+    this.spectra = spectra;
+    this.viewStartTime = viewStartTime;
+    this.viewEndTime = viewEndTime;
+    if (spectra != null && spectra.getSliceCount() > 0) {
+      image = createImage(spectra);
+    } else {
+      image = null;
+    }
+  }
+
+  /**
+   * Render spectra and decorations.
+   *
+   * @param g where to draw
+   */
+  public void render(final Graphics2D g) {
+    if (image != null) {
+      final Shape clip = g.getClip();
+      g.clipRect(left, top, width, height);
+      drawImage(g, image, spectra);
+      g.setClip(clip);
+    }
+
+    decorate(g);
+  }
+
+  /**
+   * Draw the spectra image, scaled to fit the time and frequency axes.
+   *
+   * @param g where to draw
+   * @param image image returned by createImage
+   * @param spectra spectra drawn in the image
+   */
+  protected void drawImage(final Graphics2D g, final BufferedImage image, final Spectra spectra) {
+    g.drawImage(image, xPixel(spectra.getStartTime()), yPixel(spectra.getMaxFreq()),
+        xPixel(spectra.getEndTime()) - xPixel(spectra.getStartTime()),
+        yPixel(spectra.getMinFreq()) - yPixel(spectra.getMaxFreq()), null);
+  }
+
+  /**
+   * Create an image with one pixel per spectral cell.
+   *
+   * @param spectra spectra to draw
+   * @return image with low frequencies at the bottom
+   */
+  protected BufferedImage createImage(final Spectra spectra) {
+    final double[][] power = spectra.getPower();
+    final int bins = spectra.getBinCount();
+    final BufferedImage image =
+        new BufferedImage(power.length, bins, BufferedImage.TYPE_INT_RGB);
+    for (int slice = 0; slice < power.length; slice++) {
+      for (int bin = 0; bin < bins; bin++) {
+        image.setRGB(slice, bins - 1 - bin, color(power[slice][bin]));
+      }
+    }
+    return image;
+  }
+
+  /**
+   * Map power to a color on the jet scale.
+   *
+   * @param power spectral power
+   * @return RGB color
+   */
+  protected int color(final double power) {
+    double value = (power - minPower) / (maxPower - minPower);
+    value = Math.max(0, Math.min(1, value));
+
+    final int red = channel(1.5 - Math.abs(4 * value - 3));
+    final int green = channel(1.5 - Math.abs(4 * value - 2));
+    final int blue = channel(1.5 - Math.abs(4 * value - 1));
+    return (red << 16) | (green << 8) | blue;
+  }
+
+  private static int channel(final double value) {
+    return (int) Math.round(255 * Math.max(0, Math.min(1, value)));
+  }
+
+  /**
+   * Draw frame, ticks, and labels.
+   *
+   * @param g where to draw
+   */
+  private void decorate(final Graphics2D g) {
+    g.setColor(Color.BLACK);
+    g.setFont(AXIS_FONT);
+    final FontMetrics fm = g.getFontMetrics();
+
+    g.drawRect(left, top, width, height);
+
+    if ((yTickMarks || yTickValues) && maxFreq > minFreq) {
+      final double step = freqTickStep();
+      for (double freq = Math.ceil(minFreq / step) * step; freq <= maxFreq; freq += step) {
+        final int y = yPixel(freq);
+        if (yTickMarks) {
+          g.drawLine(left, y, left + TICK_LENGTH, y);
+          g.drawLine(left + width - TICK_LENGTH, y, left + width, y);
+        }
+        if (yTickValues) {
+          final String label = freq == Math.rint(freq) ? "" + (int) freq : "" + freq;
+          g.drawString(label, left - 2 - fm.stringWidth(label), y + fm.getAscent() / 2);
+        }
+      }
+    }
+
+    if (yLabelText != null) {
+      final Graphics2D g2 = (Graphics2D) g.create();
+      g2.translate(left - Y_LABEL_OFFSET, top + height / 2);
+      g2.rotate(-Math.PI / 2);
+      g2.drawString(yLabelText, -fm.stringWidth(yLabelText) / 2, 0);
+      g2.dispose();
+    }
+
+    if (viewEndTime <= viewStartTime) {
+      return;
+    }
+
+    final int bottom = top + height;
+    for (double t = Math.ceil(viewStartTime / 60) * 60; t <= viewEndTime; t += 60) {
+      final int x = xPixel(t);
+      if (xTickMarks) {
+        g.drawLine(x, top, x, top + TICK_LENGTH);
+        g.drawLine(x, bottom - TICK_LENGTH, x, bottom);
+      }
+      if (xTickValues) {
+        final String label = Time.format("HH:mm", J2kSec.asEpoch(t));
+        g.drawString(label, x - fm.stringWidth(label) / 2, bottom + fm.getAscent() + 2);
+      }
+    }
+
+    if (xLabel) {
+      String label = "Time";
+      if (xUnits) {
+        label += " (" + Time.format("yyyy-MM-dd", J2kSec.asEpoch(viewStartTime)) + " UTC)";
+      }
+      g.drawString(label, left + (width - fm.stringWidth(label)) / 2,
+          bottom + 2 * fm.getHeight() + 2);
+    }
+  }
+
+  /**
+   * Choose a frequency tick spacing which yields a handful of ticks.
+   *
+   * @return tick spacing
+   */
+  private double freqTickStep() {
+    for (final double step : FREQ_TICK_STEPS) {
+      if ((maxFreq - minFreq) / step <= MAX_FREQ_TICKS) {
+        return step;
+      }
+    }
+    return FREQ_TICK_STEPS[FREQ_TICK_STEPS.length - 1];
+  }
+
+  private int xPixel(final double time) {
+    return left + (int) Math.round((time - viewStartTime) / (viewEndTime - viewStartTime) * width);
+  }
+
+  private int yPixel(final double freq) {
+    return top + height - (int) Math.round((freq - minFreq) / (maxFreq - minFreq) * height);
+  }
+}
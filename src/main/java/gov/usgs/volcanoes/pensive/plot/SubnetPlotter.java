@@ -5,20 +5,32 @@
 
 package gov.usgs.volcanoes.pensive.plot;
 
-import gov.usgs.plot.Plot;
-import gov.usgs.plot.PlotException;
+import gov.usgs.plot.data.Wave;
+import gov.usgs.plot.render.Renderer;
 import gov.usgs.volcanoes.core.configfile.ConfigFile;
 import gov.usgs.volcanoes.core.time.Time;
 import gov.usgs.volcanoes.pensive.Channel;
-import gov.usgs.volcanoes.swarm.data.SeismicDataSource;
+import gov.usgs.volcanoes.pensive.ChannelPlot;
+import gov.usgs.volcanoes.pensive.wave.SharedWaveCache;
+import gov.usgs.volcanoes.pensive.wave.WaveFetcher;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 
 /**
@@ -79,6 +91,9 @@ public class SubnetPlotter {
   /** thumbnail dimension. */
   private final Dimension thumbDimension;
 
+  /** If true, anti-alias text. Off when images are written with a palette. */
+  private final boolean textAntialias;
+
   /** Channels on this plot. */
   private final List<Channel> channels;
 
@@ -108,7 +123,11 @@ public class SubnetPlotter {
     thumbDimension.width = config.getInt("thumbWidth", DEFAULT_THUMB_WIDTH);
     thumbDimension.height = config.getInt("thumbHeight", DEFAULT_THUMB_HEIGHT);
 
-    channels = createChannels(config.getSubConfig(subnetName, true));
+    // blended glyph edges add enough colors to push most plots past a palette
+    textAntialias = !config.getBoolean("pngIndexed", PngEncoder.DEFAULT_INDEXED);
+
+    channels =
+        Collections.unmodifiableList(createChannels(config.getSubConfig(subnetName, true)));
   }
 
   /**
@@ -144,46 +163,224 @@ public class SubnetPlotter {
   }
 
   /**
-   * Produce both a full and a thumbnail PNG representing my subnet. Plotting functions are not
-   * thread safe. A subnet should not be plotted by multiple threads concurrently.
+   * Register interest in the waves needed for a plot.
+   *
+   * @param plotEndMs time of last sample on plot
+   * @param waveCache cache shared with other subnets
+   */
+  public void subscribe(final long plotEndMs, final SharedWaveCache waveCache) {
+    for (final Channel channel : channels) {
+      channel.subscribe(plotEndMs, waveCache);
+    }
+  }
+
+  /**
+   * Withdraw interest in the waves needed for a plot.
+   *
+   * @param plotEndMs time of last sample on plot
+   * @param waveCache cache shared with other subnets
+   */
+  public void release(final long plotEndMs, final SharedWaveCache waveCache) {
+    for (final Channel channel : channels) {
+      channel.release(plotEndMs, waveCache);
+    }
+  }
+
+  /**
+   * Close the data files held open by my channels. Call once no more plots will be rendered.
+   */
+  public void close() {
+    for (final Channel channel : channels) {
+      channel.close();
+    }
+  }
+
+  /**
+   * Gather wave data for each of my channels. Channels are requested concurrently, so the wait is
+   * about that of the slowest channel rather than the sum of all of them.
+   *
+   * @param plotEndMs time of last sample on plot
+   * @param waveFetcher source of wave data
+   * @param executor where to request channels
+   * @return one wave per channel, in plot order. Channels without data are null.
+   * @throws InterruptedException when interrupted while waiting for channels
+   */
+  public Wave[] fetch(final long plotEndMs, final WaveFetcher waveFetcher,
+      final ExecutorService executor) throws InterruptedException {
+    final List<Callable<Wave>> requests = new ArrayList<Callable<Wave>>();
+    for (final Channel channel : channels) {
+      requests.add(new Callable<Wave>() {
+        public Wave call() {
+          return channel.fetchWave(plotEndMs, waveFetcher);
+        }
+      });
+    }
+
+    return invokeAll(executor, requests).toArray(new Wave[channels.size()]);
+  }
+
+  /**
+   * Render both a full and a thumbnail image representing my subnet. Channels are prepared in
+   * parallel, then drawn in order. Each call renders from its own renderers, so different
+   * intervals of my subnet may be rendered concurrently.
    * 
    * @param plotEndMs time of last sample on plot
-   * @param dataSource source of wave data
+   * @param waves waves returned by fetch
+   * @param executor where to prepare channels
+   * @return full and thumbnail images, ready to be written
+   * @throws InterruptedException when interrupted while waiting for channels
    */
-  public synchronized void plot(final long plotEndMs, final SeismicDataSource dataSource) {
-    final Plot plot = new Plot(plotDimension.width, plotDimension.height);
-    final Plot thumb = new Plot(thumbDimension.width, thumbDimension.height);
+  public List<PlotImage> render(final long plotEndMs, final Wave[] waves,
+      final ExecutorService executor) throws InterruptedException {
+    final List<Callable<ChannelPlot>> preparations = new ArrayList<Callable<ChannelPlot>>();
+    for (int i = 0; i < waves.length; i++) {
+      final Channel channel = channels.get(i);
+      final Wave wave = waves[i];
+      preparations.add(new Callable<ChannelPlot>() {
+        public ChannelPlot call() {
+          return channel.prepare(plotEndMs, wave);
+        }
+      });
+    }
+
+    return draw(generateFileBase(plotEndMs), invokeAll(executor, preparations));
+  }
 
+  /**
+   * Render both a full and a thumbnail image from the spectra and envelopes written when the plot
+   * was last rendered, without fetching waves or computing spectra. Channels are restored in
+   * parallel, then drawn in order. If no channel has stored data, no images are rendered, so a
+   * plot is never replaced by one with less on it.
+   *
+   * @param plotEndMs time of last sample on plot
+   * @param executor where to restore channels
+   * @return full and thumbnail images, ready to be written. Empty if nothing was stored.
+   * @throws InterruptedException when interrupted while waiting for channels
+   */
+  public List<PlotImage> restore(final long plotEndMs, final ExecutorService executor)
+      throws InterruptedException {
+    final List<Callable<ChannelPlot>> restorations = new ArrayList<Callable<ChannelPlot>>();
     for (final Channel channel : channels) {
-      channel.updateWave(plotEndMs, dataSource);
-      plot.addRenderer(channel.plot());
-      thumb.addRenderer(channel.plotThumb());
+      restorations.add(new Callable<ChannelPlot>() {
+        public ChannelPlot call() {
+          return channel.restore(plotEndMs);
+        }
+      });
     }
 
-    final String fileBase = generateFileBase(plotEndMs);
-    new File(fileBase).getParentFile().mkdirs();
+    final List<ChannelPlot> channelPlots = invokeAll(executor, restorations);
+    boolean stored = false;
+    for (int i = 0; i < channelPlots.size(); i++) {
+      if (channelPlots.get(i) == null) {
+        channelPlots.set(i, channels.get(i).prepare(plotEndMs, null));
+      } else {
+        stored = true;
+      }
+    }
+    if (!stored) {
+      LOGGER.warn("No stored data for {} at {}. I'll leave the plot alone.", subnetName,
+          new Date(plotEndMs));
+      return Collections.emptyList();
+    }
+    return draw(generateFileBase(plotEndMs), channelPlots);
+  }
 
-    writePng(plot, fileBase + ".png");
-    writePng(thumb, fileBase + "_thumb.png");
-    
+  /**
+   * Render both a full and a thumbnail image spanning several intervals, pooled from the spectra
+   * and envelopes written for each interval. Images are named as for the interval ending with
+   * them, followed by a label.
+   *
+   * @param plotEndMs time of last sample on plot
+   * @param durationS seconds spanned by the plot, a multiple of DURATION_S
+   * @param label appended to the image names
+   * @param maxPooling if true pool the greatest power of each time slice, otherwise the mean
+   * @param executor where to restore channels
+   * @return full and thumbnail images, ready to be written
+   * @throws InterruptedException when interrupted while waiting for channels
+   */
+  public List<PlotImage> restore(final long plotEndMs, final int durationS, final String label,
+      final boolean maxPooling, final ExecutorService executor) throws InterruptedException {
+    final List<Callable<ChannelPlot>> restorations = new ArrayList<Callable<ChannelPlot>>();
     for (final Channel channel : channels) {
-      channel.flushWave();
+      restorations.add(new Callable<ChannelPlot>() {
+        public ChannelPlot call() {
+          return channel.restore(plotEndMs, durationS, maxPooling);
+        }
+      });
     }
+
+    return draw(generateFileBase(plotEndMs) + "_" + label, invokeAll(executor, restorations));
   }
 
   /**
-   * Write a plot to a PNG file.
+   * Draw prepared channels in order.
    *
-   * @param plot The plot to write
-   * @param fileName The file to write
+   * @param fileBase image path, less suffix
+   * @param channelPlots one per channel, in plot order
+   * @return full and thumbnail images, ready to be written
    */
-  private void writePng(final Plot plot, final String fileName) {
-    LOGGER.debug("writing " + fileName);
-    try {
-      plot.writePNG(fileName);
-    } catch (final PlotException e) {
-      LOGGER.error("Cannot write " + fileName + ": " + e.getLocalizedMessage());
+  private List<PlotImage> draw(final String fileBase, final List<ChannelPlot> channelPlots) {
+    final List<Renderer> plot = new ArrayList<Renderer>();
+    final List<Renderer> thumb = new ArrayList<Renderer>();
+    for (final ChannelPlot channelPlot : channelPlots) {
+      plot.add(channelPlot.full);
+      thumb.add(channelPlot.thumb);
     }
+
+    final List<PlotImage> images = new ArrayList<PlotImage>();
+    images.add(new PlotImage(fileBase + ".png", renderImage(plotDimension, plot)));
+    images.add(new PlotImage(fileBase + "_thumb.png", renderImage(thumbDimension, thumb)));
+
+    return images;
+  }
+
+  /**
+   * Run tasks and gather their results, rethrowing the first failure.
+   *
+   * @param executor where to run tasks
+   * @param tasks tasks to run
+   * @return results in task order
+   * @throws InterruptedException when interrupted while waiting for tasks
+   */
+  private static <T> List<T> invokeAll(final ExecutorService executor,
+      final List<Callable<T>> tasks) throws InterruptedException {
+    final List<T> results = new ArrayList<T>();
+    for (final Future<T> future : executor.invokeAll(tasks)) {
+      try {
+        results.add(future.get());
+      } catch (final ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new RuntimeException(cause);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Draw renderers onto a white image.
+   *
+   * @param dimension image size
+   * @param renderers what to draw
+   * @return the image
+   */
+  private BufferedImage renderImage(final Dimension dimension, final List<Renderer> renderers) {
+    final BufferedImage image =
+        new BufferedImage(dimension.width, dimension.height, BufferedImage.TYPE_INT_RGB);
+    final Graphics2D g = image.createGraphics();
+    g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+        textAntialias ? RenderingHints.VALUE_TEXT_ANTIALIAS_ON
+            : RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+    g.setColor(Color.WHITE);
+    g.fillRect(0, 0, dimension.width, dimension.height);
+    for (final Renderer renderer : renderers) {
+      renderer.render(g);
+    }
+    g.dispose();
+
+    return image;
   }
 
   /**
@@ -192,7 +389,7 @@ public class SubnetPlotter {
    * @param timeMs end time of plot
    * @return generated file path
    */
-  private String generateFileBase(final long timeMs) {
+  public String generateFileBase(final long timeMs) {
     final StringBuilder sb = new StringBuilder();
     sb.append(pathRoot + '/');
     if (networkName != null) {
@@ -8,7 +8,6 @@ package gov.usgs.volcanoes.pensive.plot;
 
 import gov.usgs.plot.render.TextRenderer;
 import gov.usgs.plot.render.wave.SliceWaveRenderer;
-import gov.usgs.plot.render.wave.SpectrogramRenderer;
 import gov.usgs.volcanoes.core.configfile.ConfigFile;
 
 import java.awt.Dimension;
@@ -33,20 +32,16 @@ public class ThumbnailPlotter extends ChannelPlotter {
    * @param config My config
    */
   public ThumbnailPlotter(String name, int index, Dimension plotDimension, ConfigFile config) {
-    super(name, index, plotDimension, config);
-
-    noDataFont = NO_DATA_FONT;
+    super(name, index, plotDimension, NO_DATA_FONT, config);
   }
 
   /**
    * Apply any settings needed to the Spectrogram renderer.
    * 
-   * @param spectrogramRenderer my SpectrogramRenderer
+   * @param spectrogramRenderer my SpectraRenderer
    */
-  protected void tweakSpectrogramRenderer(SpectrogramRenderer spectrogramRenderer) {
+  protected void tweakSpectrogramRenderer(SpectraRenderer spectrogramRenderer) {
 
-    // y-axis labels will sometimes not be displayed if x-axis tick marks
-    // are not displayed. Note sure why.
     spectrogramRenderer.yTickMarks = false;
     spectrogramRenderer.yTickValues = false;
     spectrogramRenderer.xTickMarks = false;
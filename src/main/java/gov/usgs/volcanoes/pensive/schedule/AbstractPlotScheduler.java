@@ -6,23 +6,42 @@
 
 package gov.usgs.volcanoes.pensive.schedule;
 
+import gov.usgs.plot.data.Wave;
 import gov.usgs.volcanoes.core.configfile.ConfigFile;
+import gov.usgs.volcanoes.pensive.ConnectionPool;
+import gov.usgs.volcanoes.pensive.FetchPool;
 import gov.usgs.volcanoes.pensive.PlotJob;
-import gov.usgs.volcanoes.pensive.WaveSource;
+import gov.usgs.volcanoes.pensive.PlotJobQueue;
+import gov.usgs.volcanoes.pensive.PlotPipeline;
 import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+import gov.usgs.volcanoes.pensive.wave.CircuitBreaker;
+import gov.usgs.volcanoes.pensive.wave.ConcurrencyLimiter;
+import gov.usgs.volcanoes.pensive.wave.DiskWaveCache;
+import gov.usgs.volcanoes.pensive.wave.HedgedFetcher;
+import gov.usgs.volcanoes.pensive.wave.LatencyStats;
+import gov.usgs.volcanoes.pensive.wave.SharedWaveCache;
+import gov.usgs.volcanoes.pensive.wave.SpanWaveCache;
+import gov.usgs.volcanoes.pensive.wave.WaveFetcher;
+import gov.usgs.volcanoes.pensive.wave.WaveThrottle;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Create a pool of connections to a single server and assign plot jobs to
- * connections as they become available.
+ * Create a pool of connections to a single server and queue plot jobs for them. Jobs are taken by
+ * a FetchPool shared with other servers, and the channels of each job are requested concurrently
+ * over my connections.
  *
  * @author Tom Parker
  */
@@ -34,18 +53,61 @@ public abstract class AbstractPlotScheduler implements Runnable {
   /** number of concurrent connection to the wave server. */
   public static final int DEFAULT_NUMTHREADS = 5;
 
-  /** pool of plotters, each with their own wave server connection. */
-  private List<WaveSource> waveSources;
+  /** default number of backfill jobs queued or in progress at once. */
+  public static final int DEFAULT_BACKFILL_LOOK_AHEAD = 100;
 
-  private final List<Thread> threads;
+  /** takes my jobs, along with other servers' jobs. */
+  private final FetchPool fetchPool;
 
-  /** Queue of plot jobs awaiting an available plotter. */
-  protected final BlockingQueue<PlotJob> plotJobs;
+  /** where realtime jobs get their waves. */
+  private WaveFetcher realtimeFetcher;
+
+  /** where backfill jobs get their waves. */
+  private WaveFetcher backfillFetcher;
+
+  /** requests the channels of a realtime job concurrently. */
+  private ExecutorService requestPool;
+
+  /**
+   * requests the channels of a backfill job concurrently. Throttled requests wait here, never
+   * holding up realtime requests.
+   */
+  private ExecutorService backfillRequestPool;
+
+  /** my wave server, guarded by my breaker. Null until my connections are opened. */
+  private volatile WaveFetcher source;
+
+  /** asks my wave server for waves once it is available. */
+  private final WaveFetcher sourceView;
+
+  /** latencies of recent requests made of my wave server. */
+  private final LatencyStats latency;
+
+  /** other servers to ask for each subnet with redundant servers, in order. */
+  private final Map<SubnetPlotter, List<AbstractPlotScheduler>> alternates;
+
+  /** where each subnet with redundant servers gets its waves, by realtime and backfill. */
+  private final Map<SubnetPlotter, WaveFetcher[]> hedgedFetchers;
+
+  /** true if I am an alternate server for another server's subnets. */
+  private boolean alternate;
+
+  /** Queue of plot jobs awaiting their embargo and an available plotter. */
+  protected final PlotJobQueue plotJobs;
+
+  /** Waves requested by more than one subnet. */
+  private final SharedWaveCache waveCache;
+
+  /** long spans of past data, or null if not fetching spans. */
+  private final SpanWaveCache spanCache;
+
+  /** past data kept on disk, or null if not kept. */
+  private DiskWaveCache diskCache;
 
   /** list of subnets that feed from my wave server. */
   protected final List<SubnetPlotter> subnets;
 
-  /** number of connections to my wave server. */
+  /** number of connections to my wave server, and the most of my jobs fetched at once. */
   private final int numThreads;
 
   /** name of this server. */
@@ -53,6 +115,33 @@ public abstract class AbstractPlotScheduler implements Runnable {
 
   private final ConfigFile config;
 
+  /** where fetched waves go to be plotted. */
+  private final PlotPipeline pipeline;
+
+  /** most backfill jobs queued or in progress at once. */
+  private final int backfillLookAhead;
+
+  /** backfill ranges with jobs left to queue, oldest first. */
+  private final LinkedList<BackfillCursor> cursors;
+
+  /** every backfill range scheduled. */
+  private final List<BackfillCursor> ranges;
+
+  /** limits on backfill requests made of my wave server. */
+  private final WaveThrottle throttle;
+
+  /** limit on requests in flight to my wave server. */
+  private final ConcurrencyLimiter limiter;
+
+  /** stops requests to my wave server while it is unresponsive. */
+  private final CircuitBreaker breaker;
+
+  /** queues backfill jobs, or null if there are none left. */
+  private Thread feeder;
+
+  /** where backfill positions are kept. */
+  private BackfillState backfillState;
+
   protected abstract void schedulePlots();
 
   /**
@@ -60,32 +149,290 @@ public abstract class AbstractPlotScheduler implements Runnable {
    *
    * @param name name given to this wave server in the config file
    * @param config My configuration stanza
+   * @param pipeline where fetched waves go to be plotted
+   * @param fetchPool takes my jobs, along with other servers' jobs
    */
-  public AbstractPlotScheduler(final String name, final ConfigFile config) {
+  public AbstractPlotScheduler(final String name, final ConfigFile config,
+      final PlotPipeline pipeline, final FetchPool fetchPool) {
 
     this.name = name;
+    this.pipeline = pipeline;
+    this.fetchPool = fetchPool;
     numThreads = config.getInt("threads", DEFAULT_NUMTHREADS);
+    backfillLookAhead =
+        Math.max(numThreads, config.getInt("backfillLookAhead", DEFAULT_BACKFILL_LOOK_AHEAD));
+    cursors = new LinkedList<BackfillCursor>();
+    ranges = new ArrayList<BackfillCursor>();
+    throttle = new WaveThrottle(config);
+    limiter = new ConcurrencyLimiter(config, numThreads);
+    breaker = new CircuitBreaker(name, config);
+    latency = new LatencyStats();
+    alternates = new HashMap<SubnetPlotter, List<AbstractPlotScheduler>>();
+    hedgedFetchers = new HashMap<SubnetPlotter, WaveFetcher[]>();
+    sourceView = new WaveFetcher() {
+      public Wave getWave(final String channel, final double t1, final double t2) {
+        final WaveFetcher current = source;
+        return current == null ? null : current.getWave(channel, t1, t2);
+      }
+    };
     subnets = new LinkedList<SubnetPlotter>();
-    plotJobs = new PriorityBlockingQueue<PlotJob>();
-    threads = new LinkedList<Thread>();
+    plotJobs = fetchPool.createQueue(PlotPipeline.backfillLimit(config, numThreads));
+    waveCache = new SharedWaveCache();
+    spanCache = SpanWaveCache.isEnabled(config) ? new SpanWaveCache(config) : null;
     this.config = config;
   }
 
   /**
-   * Start threads.
+   * Open connections and offer my jobs to the fetch pool. Backfill requests wait for my throttle
+   * on threads of their own, and no requests are made while my breaker is open.
    */
   public void startWaveSources() {
-    waveSources = new ArrayList<WaveSource>();
-    for (int i = 0; i < numThreads; i++) {
-      final String n = name + "-" + i;
-      final WaveSource ws = new WaveSource(n, plotJobs, config);
-      waveSources.add(ws);
-      final Thread t = new Thread(ws);
-      t.setName(n);
-      t.start();
-      threads.add(t);
+    source = breaker.wrap(new ConnectionPool(name, numThreads, config, limiter, latency, breaker));
+    realtimeFetcher = createWaveFetcher(wrapRealtime(source));
+    backfillFetcher = createWaveFetcher(throttle.wrap(source));
+    requestPool = Executors.newFixedThreadPool(numThreads, daemonThreads(name + "-request-"));
+    backfillRequestPool =
+        Executors.newFixedThreadPool(numThreads, daemonThreads(name + "-backfill-request-"));
+
+    if (!alternates.isEmpty()) {
+      final double percentile =
+          config.getDouble("hedgePercentile", HedgedFetcher.DEFAULT_HEDGE_PERCENTILE);
+      final ExecutorService hedgePool =
+          Executors.newCachedThreadPool(daemonThreads(name + "-hedge-"));
+      for (final SubnetPlotter subnet : alternates.keySet()) {
+        final HedgedFetcher realtime = new HedgedFetcher(percentile, hedgePool);
+        final HedgedFetcher backfill = new HedgedFetcher(percentile, hedgePool);
+        final List<AbstractPlotScheduler> servers = new ArrayList<AbstractPlotScheduler>();
+        servers.add(this);
+        servers.addAll(alternates.get(subnet));
+        for (final AbstractPlotScheduler server : servers) {
+          realtime.add(server.name, server.sourceView, server.latency);
+          backfill.add(server.name, server.throttle.wrap(server.sourceView), server.latency);
+        }
+        hedgedFetchers.put(subnet, new WaveFetcher[] {createWaveFetcher(wrapRealtime(realtime)),
+            createWaveFetcher(backfill)});
+      }
+    }
+
+    fetchPool.add(plotJobs, numThreads, new FetchPool.JobFetcher() {
+      public void fetch(final PlotJob job) throws InterruptedException {
+        AbstractPlotScheduler.this.fetch(job);
+      }
+    });
+  }
+
+  /**
+   * Fetch a job's waves and queue them for rendering. While my wave server is unresponsive, jobs
+   * are put off until it may have recovered rather than plotted without data, which nothing would
+   * later repair. Realtime jobs are retried in the backfill lane. Realtime jobs of subnets with
+   * other servers are still fetched, as the other servers may answer.
+   *
+   * @param pj the job
+   * @throws InterruptedException when interrupted while waiting for channels or the render stage
+   */
+  private void fetch(final PlotJob pj) throws InterruptedException {
+    final SubnetPlotter subnet = pj.subnet;
+    final WaveFetcher[] hedged = hedgedFetchers.get(subnet);
+    if (breaker.isOpen() && (pj.priority == PlotJob.Priority.BACKFILL || hedged == null)) {
+      subnet.release(pj.plotEndMs, waveCache);
+      deferUntilRecovered(pj);
+      return;
+    }
+
+    LOGGER.info("Fetching subnet {} from {} scheduled for {}", subnet.subnetName, name,
+        new Date(pj.plotTimeMs));
+    final int lane = pj.priority == PlotJob.Priority.BACKFILL ? 1 : 0;
+    final WaveFetcher fetcher;
+    if (hedged != null) {
+      fetcher = hedged[lane];
+    } else {
+      fetcher = lane == 1 ? backfillFetcher : realtimeFetcher;
+    }
+    final ExecutorService requests = lane == 1 ? backfillRequestPool : requestPool;
+    final Wave[] waves;
+    try {
+      waves = subnet.fetch(pj.plotEndMs, fetcher, requests);
+    } finally {
+      subnet.release(pj.plotEndMs, waveCache);
+    }
+
+    // channels asked for after the breaker opened came back empty
+    if (hedged == null && breaker.isOpen()) {
+      deferUntilRecovered(pj);
+      return;
+    }
+    pipeline.render(pj, waves);
+  }
+
+  /**
+   * Queue a job again for when my wave server may have recovered, in the backfill lane.
+   *
+   * @param pj the job
+   */
+  private void deferUntilRecovered(final PlotJob pj) {
+    LOGGER.debug("Putting off subnet {} ({}) until {} recovers", pj.subnet.subnetName,
+        new Date(pj.plotEndMs), name);
+    schedule(pj.defer(breaker.getProbeIntervalMs(), PlotJob.Priority.BACKFILL));
+  }
+
+  /**
+   * Decide where my subnets get their waves. Waves shared between subnets are always consulted
+   * first, then long spans of past data if I fetch them, then past data kept on disk.
+   *
+   * @param waveSource the wave server connections
+   * @return where subnets get their waves
+   */
+  protected WaveFetcher createWaveFetcher(final WaveFetcher waveSource) {
+    final WaveFetcher stored = diskCache == null ? waveSource : diskCache.wrap(waveSource);
+    if (spanCache == null) {
+      return waveCache.wrap(stored);
+    } else {
+      return waveCache.wrap(spanCache.wrap(stored));
+    }
+  }
+
+  /**
+   * Decide where realtime jobs get waves before the caches shared with backfill jobs are
+   * consulted.
+   *
+   * @param waveSource the wave server connections
+   * @return where realtime jobs get their waves
+   */
+  protected WaveFetcher wrapRealtime(final WaveFetcher waveSource) {
+    return waveSource;
+  }
+
+  /**
+   * Queue a plot job. Waves needed by the job are shared with any other job covering the same
+   * interval.
+   *
+   * @param plotJob the job to queue
+   */
+  protected void schedule(final PlotJob plotJob) {
+    plotJob.subnet.subscribe(plotJob.plotEndMs, waveCache);
+    plotJobs.put(plotJob);
+  }
+
+  /**
+   * Queue backfill plots for each subnet covering a timespan. Jobs are produced a few at a time as
+   * earlier ones are taken, and the range resumes from its saved position if it was interrupted.
+   * Backfill jobs use at most a share of my connections and always give way to realtime jobs
+   * which are due.
+   *
+   * @param startTime time of first plot
+   * @param endTime time of last plot. May be in the future.
+   */
+  public void backfill(final long startTime, final long endTime) {
+    final long duration = SubnetPlotter.DURATION_S * 1000;
+    final long firstPlot = startTime - (startTime % duration) + duration;
+    long lastPlot = endTime;
+    final long offset = endTime % duration;
+    if (offset > 0) {
+      lastPlot += duration - offset;
+    }
+
+    final String key = name + ":" + firstPlot + "-" + lastPlot;
+    final BackfillCursor cursor =
+        new BackfillCursor(key, subnets, firstPlot, lastPlot, getBackfillState());
+    LOGGER.info("Scheduling backfill plots ({} - {})", new Date(firstPlot), new Date(lastPlot));
+    synchronized (cursors) {
+      cursors.add(cursor);
+      ranges.add(cursor);
+      if (feeder == null) {
+        feeder = new Thread(new Feeder());
+        feeder.setName(name + "-backfill");
+        feeder.start();
+      }
     }
+  }
+
+  /**
+   * Share a backfill state file with other schedulers.
+   *
+   * @param backfillState where backfill positions are kept
+   */
+  public void setBackfillState(final BackfillState backfillState) {
+    this.backfillState = backfillState;
+  }
+
+  /**
+   * Share a disk cache of past data with other schedulers. Call before startWaveSources.
+   *
+   * @param diskCache where past data is kept, or null to keep none
+   */
+  public void setDiskCache(final DiskWaveCache diskCache) {
+    this.diskCache = diskCache;
+  }
+
+  private synchronized BackfillState getBackfillState() {
+    if (backfillState == null) {
+      backfillState = new BackfillState(config);
+    }
+    return backfillState;
+  }
+
+  /**
+   * Return the limits on backfill requests made of my wave server.
+   *
+   * @return my throttle
+   */
+  public WaveThrottle getThrottle() {
+    return throttle;
+  }
 
+  /**
+   * Return the limit on requests in flight to my wave server.
+   *
+   * @return my limiter
+   */
+  public ConcurrencyLimiter getLimiter() {
+    return limiter;
+  }
+
+  /**
+   * Count backfill plots finished.
+   *
+   * @return count of finished plots
+   */
+  public long getBackfillFinished() {
+    long count = 0;
+    synchronized (cursors) {
+      for (final BackfillCursor range : ranges) {
+        count += range.getFinished();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Count backfill plots not yet finished.
+   *
+   * @return count of remaining plots
+   */
+  public long getBackfillRemaining() {
+    long count = 0;
+    synchronized (cursors) {
+      for (final BackfillCursor range : ranges) {
+        count += range.getRemaining();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Wait until every backfill job has been queued.
+   */
+  private void awaitBackfill() {
+    synchronized (cursors) {
+      while (feeder != null) {
+        try {
+          cursors.wait();
+        } catch (final InterruptedException e) {
+          LOGGER.info("Interrupted while waiting for backfill jobs to be queued.");
+          return;
+        }
+      }
+    }
   }
 
   /**
@@ -97,6 +444,32 @@ public abstract class AbstractPlotScheduler implements Runnable {
     subnets.add(subnet);
   }
 
+  /**
+   * Add a subnet whose waves may also come from other servers. Other servers are asked when I am
+   * slow to answer. Call before connections are opened.
+   *
+   * @param subnet the subnet to be added
+   * @param others other servers holding the same data, in order
+   */
+  public void add(final SubnetPlotter subnet, final List<AbstractPlotScheduler> others) {
+    subnets.add(subnet);
+    if (!others.isEmpty()) {
+      alternates.put(subnet, new ArrayList<AbstractPlotScheduler>(others));
+      for (final AbstractPlotScheduler other : others) {
+        other.alternate = true;
+      }
+    }
+  }
+
+  /**
+   * Check if another server's subnets may get waves from me.
+   *
+   * @return true if I am needed by another server
+   */
+  public boolean isAlternate() {
+    return alternate;
+  }
+
   /**
    * Return the count of subnets.
    * 
@@ -107,14 +480,39 @@ public abstract class AbstractPlotScheduler implements Runnable {
   }
 
   /**
-   * Stop scheduling plots.
+   * Stop scheduling plots. Queued jobs are left for the fetch pool, and my request threads exit
+   * with the application.
    */
   public void stop() {
-    for (final WaveSource ws : waveSources) {
-      ws.stop();
+    awaitBackfill();
+  }
+
+  /**
+   * Close the data files held open by my subnets. Call once the render stage has stopped.
+   */
+  public void close() {
+    for (final SubnetPlotter subnet : subnets) {
+      subnet.close();
     }
   }
 
+  /**
+   * Create daemon threads, which don't hold the application open.
+   *
+   * @param prefix thread name prefix
+   * @return the thread factory
+   */
+  private static ThreadFactory daemonThreads(final String prefix) {
+    final AtomicInteger count = new AtomicInteger();
+    return new ThreadFactory() {
+      public Thread newThread(final Runnable r) {
+        final Thread t = new Thread(r, prefix + count.getAndIncrement());
+        t.setDaemon(true);
+        return t;
+      }
+    };
+  }
+
   /**
    * Schedule the next set of plots. Try to catch all exceptions,
    * ScheduledExecutorService does the wrong thing with exceptions.
@@ -127,4 +525,45 @@ public abstract class AbstractPlotScheduler implements Runnable {
       LOGGER.error("Caught exception heading for scheduler. " + e.getLocalizedMessage());
     }
   }
+
+  /**
+   * Queue jobs from each backfill range in turn, keeping only a few waiting.
+   */
+  private class Feeder implements Runnable {
+    public void run() {
+      while (true) {
+        final BackfillCursor cursor;
+        synchronized (cursors) {
+          cursor = cursors.peek();
+          if (cursor == null) {
+            feeder = null;
+            cursors.notifyAll();
+            return;
+          }
+        }
+
+        try {
+          plotJobs.awaitRoom(PlotJob.Priority.BACKFILL, backfillLookAhead);
+        } catch (final InterruptedException e) {
+          LOGGER.info("Interrupted. Unable to schedule backfill {}", cursor.key);
+          synchronized (cursors) {
+            cursors.clear();
+          }
+          continue;
+        }
+
+        final PlotJob job = cursor.next();
+        if (job == null) {
+          LOGGER.info("All backfill plots scheduled for {}", cursor.key);
+          synchronized (cursors) {
+            cursors.remove(cursor);
+          }
+        } else {
+          LOGGER.debug("Scheduling subnet {} ({})", job.subnet.subnetName,
+              new Date(job.plotEndMs));
+          schedule(job);
+        }
+      }
+    }
+  }
 }
@@ -0,0 +1,158 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.schedule;
+
+import gov.usgs.volcanoes.pensive.PlotJob;
+import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A backfill range, producing one plot job at a time in time order, every subnet for one time slot
+ * before the next slot. The first slot with an unfinished job is checkpointed as jobs finish.
+ *
+ * @author Tom Parker
+ */
+public class BackfillCursor implements PlotJob.Listener {
+
+  private static final long DURATION_MS = SubnetPlotter.DURATION_S * 1000;
+
+  /** identifies my range in the state file. */
+  public final String key;
+
+  private final List<SubnetPlotter> subnets;
+
+  /** end of last plot. */
+  private final long lastPlot;
+
+  /** where my position is kept. */
+  private final BackfillState state;
+
+  /** end of next plot to produce. */
+  private long nextPlot;
+
+  /** index of next subnet to produce in the current slot. */
+  private int nextSubnet;
+
+  /** count of unfinished jobs in each slot produced. */
+  private final TreeMap<Long, Integer> unfinished;
+
+  /** last position saved. */
+  private long checkpoint;
+
+  /** count of jobs from the starting position to the end of the range. */
+  private final long total;
+
+  /** count of jobs finished. */
+  private long finished;
+
+  /**
+   * Class constructor.
+   *
+   * @param key identifies the range in the state file
+   * @param subnets subnets to plot
+   * @param firstPlot end of first plot
+   * @param lastPlot end of last plot
+   * @param state where my position is kept
+   */
+  public BackfillCursor(final String key, final List<SubnetPlotter> subnets, final long firstPlot,
+      final long lastPlot, final BackfillState state) {
+    this.key = key;
+    this.subnets = new ArrayList<SubnetPlotter>(subnets);
+    this.lastPlot = lastPlot;
+    this.state = state;
+    nextPlot = Math.max(firstPlot, state.getPosition(key, firstPlot));
+    checkpoint = nextPlot;
+    unfinished = new TreeMap<Long, Integer>();
+    final long slots = nextPlot > lastPlot ? 0 : (lastPlot - nextPlot) / DURATION_MS + 1;
+    total = slots * subnets.size();
+  }
+
+  /**
+   * Produce the next job.
+   *
+   * @return the job, or null if every job has been produced
+   */
+  public synchronized PlotJob next() {
+    if (isExhausted()) {
+      return null;
+    }
+
+    final PlotJob job = new PlotJob(subnets.get(nextSubnet), nextPlot, PlotJob.Priority.BACKFILL,
+        this);
+    final Integer count = unfinished.get(nextPlot);
+    unfinished.put(nextPlot, count == null ? 1 : count + 1);
+
+    nextSubnet++;
+    if (nextSubnet == subnets.size()) {
+      nextSubnet = 0;
+      nextPlot += DURATION_MS;
+    }
+    return job;
+  }
+
+  /**
+   * Check if every job has been produced.
+   *
+   * @return true if there are no more jobs
+   */
+  public synchronized boolean isExhausted() {
+    return subnets.isEmpty() || nextPlot > lastPlot;
+  }
+
+  /**
+   * Count jobs finished since I was created.
+   *
+   * @return count of finished jobs
+   */
+  public synchronized long getFinished() {
+    return finished;
+  }
+
+  /**
+   * Count jobs not yet finished.
+   *
+   * @return count of remaining jobs
+   */
+  public synchronized long getRemaining() {
+    return total - finished;
+  }
+
+  /**
+   * A job I produced is finished. Save my position if it has moved.
+   *
+   * @param job the job
+   */
+  public synchronized void finished(final PlotJob job) {
+    final Integer count = unfinished.get(job.plotEndMs);
+    if (count == null) {
+      return;
+    }
+
+    finished++;
+    if (count > 1) {
+      unfinished.put(job.plotEndMs, count - 1);
+      return;
+    }
+
+    unfinished.remove(job.plotEndMs);
+    if (isExhausted() && unfinished.isEmpty()) {
+      state.remove(key);
+      return;
+    }
+
+    final Map.Entry<Long, Integer> first = unfinished.firstEntry();
+    final long position = first == null ? nextPlot : first.getKey();
+    if (position != checkpoint) {
+      checkpoint = position;
+      state.setPosition(key, position);
+    }
+  }
+}
@@ -0,0 +1,129 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.schedule;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+
+/**
+ * Report backfill progress of a single wave server and expose its limits for adjustment at
+ * runtime. Throughput is smoothed over recent reports.
+ *
+ * @author Tom Parker
+ */
+public class BackfillMonitor implements Runnable, BackfillMonitorMBean {
+
+  /** my logger. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(BackfillMonitor.class);
+
+  /** default seconds between reports. */
+  public static final int DEFAULT_REPORT_INTERVAL = 60;
+
+  /** weight given to the latest report when smoothing throughput. */
+  private static final double SMOOTHING = 0.3;
+
+  private final AbstractPlotScheduler scheduler;
+
+  /** plots finished at last report. */
+  private long lastFinished;
+
+  /** time of last report. */
+  private long lastReportMs;
+
+  /** smoothed plots per minute, or NaN before the first measurement. */
+  private volatile double throughput;
+
+  /**
+   * Class constructor.
+   *
+   * @param scheduler scheduler to monitor
+   */
+  public BackfillMonitor(final AbstractPlotScheduler scheduler) {
+    this.scheduler = scheduler;
+    lastReportMs = System.currentTimeMillis();
+    throughput = Double.NaN;
+  }
+
+  /**
+   * Measure throughput and log progress if there is backfill work. Try to catch all exceptions,
+   * ScheduledExecutorService does the wrong thing with exceptions.
+   */
+  public void run() {
+    try {
+      report(System.currentTimeMillis());
+    } catch (final Exception e) {
+      LOGGER.error("Caught exception heading for backfill monitor. " + e.getLocalizedMessage());
+    }
+  }
+
+  /**
+   * Measure throughput since the last report and log progress.
+   *
+   * @param nowMs current time
+   */
+  synchronized void report(final long nowMs) {
+    final long finished = scheduler.getBackfillFinished();
+    final long remaining = scheduler.getBackfillRemaining();
+    final double minutes = (nowMs - lastReportMs) / 60000.0;
+    if (minutes > 0) {
+      final double latest = (finished - lastFinished) / minutes;
+      throughput = Double.isNaN(throughput) ? latest
+          : SMOOTHING * latest + (1 - SMOOTHING) * throughput;
+    }
+    lastFinished = finished;
+    lastReportMs = nowMs;
+
+    if (remaining > 0) {
+      LOGGER.info(String.format("Backfill %s: %d plots finished, %d remaining, %.1f plots/min, "
+          + "ETA %s", scheduler.name, finished, remaining, throughput, getEta()));
+    }
+  }
+
+  public double getRequestRate() {
+    return scheduler.getThrottle().getRequestRate();
+  }
+
+  public void setRequestRate(final double rate) {
+    LOGGER.info("Setting {} backfill request rate to {}/s", scheduler.name, rate);
+    scheduler.getThrottle().setRequestRate(rate);
+  }
+
+  public double getSampleRate() {
+    return scheduler.getThrottle().getSampleRate();
+  }
+
+  public void setSampleRate(final double rate) {
+    LOGGER.info("Setting {} backfill sample rate to {}/s", scheduler.name, rate);
+    scheduler.getThrottle().setSampleRate(rate);
+  }
+
+  public long getPlotsFinished() {
+    return scheduler.getBackfillFinished();
+  }
+
+  public long getPlotsRemaining() {
+    return scheduler.getBackfillRemaining();
+  }
+
+  public double getThroughput() {
+    return throughput;
+  }
+
+  public String getEta() {
+    final long remaining = scheduler.getBackfillRemaining();
+    if (remaining == 0) {
+      return null;
+    }
+    final double rate = throughput;
+    if (Double.isNaN(rate) || rate <= 0) {
+      return null;
+    }
+    return new Date(System.currentTimeMillis() + (long) (remaining / rate * 60000)).toString();
+  }
+}
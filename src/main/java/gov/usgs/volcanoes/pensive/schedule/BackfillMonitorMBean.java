@@ -0,0 +1,71 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.schedule;
+
+/**
+ * Backfill progress and limits of a single wave server, visible and adjustable through JMX.
+ *
+ * @author Tom Parker
+ */
+public interface BackfillMonitorMBean {
+
+  /**
+   * Return the backfill request limit.
+   *
+   * @return requests per second, zero or less for unlimited
+   */
+  double getRequestRate();
+
+  /**
+   * Change the backfill request limit.
+   *
+   * @param rate requests per second, zero or less for unlimited
+   */
+  void setRequestRate(double rate);
+
+  /**
+   * Return the backfill sample limit.
+   *
+   * @return samples per second, zero or less for unlimited
+   */
+  double getSampleRate();
+
+  /**
+   * Change the backfill sample limit.
+   *
+   * @param rate samples per second, zero or less for unlimited
+   */
+  void setSampleRate(double rate);
+
+  /**
+   * Count backfill plots finished.
+   *
+   * @return count of plots
+   */
+  long getPlotsFinished();
+
+  /**
+   * Count backfill plots remaining.
+   *
+   * @return count of plots
+   */
+  long getPlotsRemaining();
+
+  /**
+   * Return recent throughput.
+   *
+   * @return plots per minute
+   */
+  double getThroughput();
+
+  /**
+   * Estimate when backfill will finish.
+   *
+   * @return estimated finish time, or null if unknown
+   */
+  String getEta();
+}
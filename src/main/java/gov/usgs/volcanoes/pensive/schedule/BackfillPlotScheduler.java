@@ -7,10 +7,8 @@
 package gov.usgs.volcanoes.pensive.schedule;
 
 import gov.usgs.volcanoes.core.configfile.ConfigFile;
-import gov.usgs.volcanoes.pensive.PlotJob;
-import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
-
-import java.util.Date;
+import gov.usgs.volcanoes.pensive.FetchPool;
+import gov.usgs.volcanoes.pensive.PlotPipeline;
 
 /**
  * A scheduler to batch a timespan of images.
@@ -28,9 +26,12 @@ public class BackfillPlotScheduler extends AbstractPlotScheduler {
    * 
    * @param name scheduler name
    * @param config scheduler config stanza
+   * @param pipeline where fetched waves go to be plotted
+   * @param fetchPool takes my jobs, along with other servers' jobs
    */
-  public BackfillPlotScheduler(final String name, final ConfigFile config) {
-    super(name, config);
+  public BackfillPlotScheduler(final String name, final ConfigFile config,
+      final PlotPipeline pipeline, final FetchPool fetchPool) {
+    super(name, config, pipeline, fetchPool);
   }
 
   /**
@@ -45,29 +46,10 @@ public class BackfillPlotScheduler extends AbstractPlotScheduler {
   }
 
   /**
-   * Schedule the next plot for each subnet.
+   * Schedule every plot in my time span for each subnet.
    */
   @Override
   protected void schedulePlots() {
-    final long duration = SubnetPlotter.DURATION_S * 1000;
-    final long firstPlot = startTime - (startTime % duration) + duration;
-    long lastPlot = endTime;
-    final long offset = endTime % duration;
-    if (offset > 0) {
-      lastPlot += duration - offset;
-    }
-    
-    LOGGER.debug("Scheduling backfill plots ({} - {})", new Date(firstPlot), new Date(lastPlot));
-    for (final SubnetPlotter subnet : subnets) {
-      try {
-        for (long plotTime = firstPlot; plotTime <= lastPlot; plotTime += duration) {
-          LOGGER.info("Scheduling subnet " + subnet.subnetName + " ("
-              + new Date(plotTime - duration) + " - " + new Date(plotTime) + ")");
-          plotJobs.put(new PlotJob(subnet, plotTime));
-        }
-      } catch (final InterruptedException e) {
-        LOGGER.info("Interrupted. Unable to schedule " + subnet.subnetName);
-      }
-    }
+    backfill(startTime, endTime);
   }
 }
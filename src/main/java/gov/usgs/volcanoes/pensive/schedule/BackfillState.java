@@ -0,0 +1,154 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.schedule;
+
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Positions of unfinished backfill ranges, kept in a small file so an interrupted run resumes
+ * where it stopped. Each line holds a range key and the end time of the first plot not yet
+ * written.
+ *
+ * @author Tom Parker
+ */
+public class BackfillState {
+
+  /** my logger. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(BackfillState.class);
+
+  /** default state file. */
+  public static final String DEFAULT_STATE_FILE = "pensive-backfill.state";
+
+  /** where I'm kept, or null if not kept. */
+  private final File file;
+
+  /** position of each unfinished range. */
+  private final Map<String, Long> positions;
+
+  /**
+   * Class constructor.
+   *
+   * @param config my config file
+   */
+  public BackfillState(final ConfigFile config) {
+    final String fileName = config.getString("backfillState", DEFAULT_STATE_FILE);
+    file = fileName == null || fileName.isEmpty() ? null : new File(fileName);
+    positions = new LinkedHashMap<String, Long>();
+    if (file != null && file.exists()) {
+      read();
+    }
+  }
+
+  /**
+   * Return the saved position of a range.
+   *
+   * @param key range key
+   * @param defaultPosition position to use if none was saved
+   * @return end time of first plot not yet written
+   */
+  public synchronized long getPosition(final String key, final long defaultPosition) {
+    final Long position = positions.get(key);
+    return position == null ? defaultPosition : position;
+  }
+
+  /**
+   * Save the position of a range.
+   *
+   * @param key range key
+   * @param position end time of first plot not yet written
+   */
+  public synchronized void setPosition(final String key, final long position) {
+    positions.put(key, position);
+    write();
+  }
+
+  /**
+   * Forget a finished range.
+   *
+   * @param key range key
+   */
+  public synchronized void remove(final String key) {
+    if (positions.remove(key) != null) {
+      write();
+    }
+  }
+
+  private void read() {
+    BufferedReader reader = null;
+    try {
+      reader = new BufferedReader(new FileReader(file));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        final String[] fields = line.trim().split("\\s+");
+        if (fields.length == 2) {
+          positions.put(fields[0], Long.parseLong(fields[1]));
+        }
+      }
+      LOGGER.info("Read {} unfinished backfill ranges from {}", positions.size(), file);
+    } catch (final IOException e) {
+      LOGGER.error("Cannot read backfill state. {}", e.getLocalizedMessage());
+    } catch (final NumberFormatException e) {
+      LOGGER.error("Cannot parse backfill state. {}", e.getLocalizedMessage());
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (final IOException ignored) {
+          // nothing to do
+        }
+      }
+    }
+  }
+
+  /**
+   * Replace my file, so a crash never leaves it half written.
+   */
+  private void write() {
+    if (file == null) {
+      return;
+    }
+
+    final File dir = file.getAbsoluteFile().getParentFile();
+    File tmp = null;
+    try {
+      tmp = File.createTempFile("." + file.getName(), ".tmp", dir);
+      final FileWriter writer = new FileWriter(tmp);
+      try {
+        for (final Map.Entry<String, Long> entry : positions.entrySet()) {
+          writer.write(entry.getKey() + " " + entry.getValue() + "\n");
+        }
+      } finally {
+        writer.close();
+      }
+      try {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (final AtomicMoveNotSupportedException e) {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (final IOException e) {
+      LOGGER.error("Cannot write backfill state. {}", e.getLocalizedMessage());
+      if (tmp != null) {
+        tmp.delete();
+      }
+    }
+  }
+}
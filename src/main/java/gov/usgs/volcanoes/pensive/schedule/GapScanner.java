@@ -0,0 +1,157 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.schedule;
+
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+import gov.usgs.volcanoes.pensive.PlotJob;
+import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Find plots missing from the recent past and queue them as backfill. Existing plots are found by
+ * listing each plot directory once and matching names produced by
+ * SubnetPlotter.generateFileBase, rather than checking each file.
+ *
+ * @author Tom Parker
+ */
+public class GapScanner implements Runnable {
+
+  /** my logger. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(GapScanner.class);
+
+  /** default span searched for missing plots, in hours. */
+  public static final int DEFAULT_LOOK_BACK = 24;
+
+  private static final long DURATION_MS = SubnetPlotter.DURATION_S * 1000;
+
+  /** scheduler whose subnets I scan. */
+  private final AbstractPlotScheduler scheduler;
+
+  /** span searched for missing plots. */
+  private final long lookBackMs;
+
+  /**
+   * plot end times I've queued for each subnet, which have not yet been seen on disk. Times before
+   * the scan window are dropped on each scan.
+   */
+  final Map<SubnetPlotter, Set<Long>> queued;
+
+  /**
+   * Class constructor.
+   *
+   * @param scheduler scheduler whose subnets I scan
+   * @param config my config stanza
+   */
+  public GapScanner(final AbstractPlotScheduler scheduler, final ConfigFile config) {
+    this.scheduler = scheduler;
+    lookBackMs = config.getInt("gapScanLookBack", DEFAULT_LOOK_BACK) * 60L * 60 * 1000;
+    queued = new HashMap<SubnetPlotter, Set<Long>>();
+  }
+
+  /**
+   * Scan for gaps. Try to catch all exceptions, ScheduledExecutorService does the wrong thing with
+   * exceptions.
+   */
+  public void run() {
+    try {
+      scan(System.currentTimeMillis());
+    } catch (final Exception e) {
+      LOGGER.error("Caught exception heading for gap scanner. " + e.getLocalizedMessage());
+    }
+  }
+
+  /**
+   * Queue missing plots which ended before the current time slot and inside the look-back window.
+   *
+   * @param nowMs current time
+   */
+  public synchronized void scan(final long nowMs) {
+    final long lastPlot = nowMs - (nowMs % DURATION_MS) - DURATION_MS;
+    final long firstPlot = lastPlot - (lookBackMs / DURATION_MS) * DURATION_MS + DURATION_MS;
+    if (firstPlot > lastPlot) {
+      return;
+    }
+    final int slots = (int) ((lastPlot - firstPlot) / DURATION_MS) + 1;
+
+    int missing = 0;
+    for (final SubnetPlotter subnet : scheduler.subnets) {
+      final BitSet found = findPlots(subnet, firstPlot, slots);
+      Set<Long> pending = queued.get(subnet);
+      if (pending == null) {
+        pending = new HashSet<Long>();
+        queued.put(subnet, pending);
+      }
+
+      // plots which never showed up and have aged out of the window are no longer my concern
+      final Iterator<Long> it = pending.iterator();
+      while (it.hasNext()) {
+        if (it.next() < firstPlot) {
+          it.remove();
+        }
+      }
+
+      for (int i = 0; i < slots; i++) {
+        final long plotEndMs = firstPlot + i * DURATION_MS;
+        if (found.get(i)) {
+          pending.remove(plotEndMs);
+        } else if (plotEndMs + subnet.embargoMs < nowMs && pending.add(plotEndMs)) {
+          scheduler.schedule(new PlotJob(subnet, plotEndMs, PlotJob.Priority.BACKFILL));
+          missing++;
+        }
+      }
+    }
+    if (missing > 0) {
+      LOGGER.info("Found {} missing plots for {} since {}", missing, scheduler.name,
+          new Date(firstPlot - DURATION_MS));
+    }
+  }
+
+  /**
+   * Find which of a run of plots exist.
+   *
+   * @param subnet subnet to check
+   * @param firstPlot end of first plot
+   * @param slots number of plots to check
+   * @return bit i set if the plot ending at firstPlot + i plot durations exists
+   */
+  static BitSet findPlots(final SubnetPlotter subnet, final long firstPlot, final int slots) {
+    final BitSet found = new BitSet(slots);
+    final Map<File, Set<String>> listings = new HashMap<File, Set<String>>();
+
+    for (int i = 0; i < slots; i++) {
+      final File plot = new File(subnet.generateFileBase(firstPlot + i * DURATION_MS) + ".png");
+      final File dir = plot.getParentFile();
+      Set<String> names = listings.get(dir);
+      if (names == null) {
+        final String[] list = dir == null ? null : dir.list();
+        if (list == null) {
+          names = Collections.emptySet();
+        } else {
+          names = new HashSet<String>(Arrays.asList(list));
+        }
+        listings.put(dir, names);
+      }
+      if (names.contains(plot.getName())) {
+        found.set(i);
+      }
+    }
+    return found;
+  }
+}
@@ -8,7 +8,11 @@ package gov.usgs.volcanoes.pensive.schedule;
 
 import gov.usgs.volcanoes.core.configfile.ConfigFile;
 import gov.usgs.volcanoes.pensive.PlotJob;
+import gov.usgs.volcanoes.pensive.FetchPool;
+import gov.usgs.volcanoes.pensive.PlotPipeline;
 import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+import gov.usgs.volcanoes.pensive.wave.RealtimeWaveBuffer;
+import gov.usgs.volcanoes.pensive.wave.WaveFetcher;
 
 /**
  * A scheduler to queue plots for the most recent time slot.
@@ -18,14 +22,39 @@ import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
  */
 public class RealtimePlotScheduler extends AbstractPlotScheduler {
 
+  /** If true, keep recent samples in memory and request only new ones. */
+  public static final boolean DEFAULT_RING_BUFFER = false;
+
+  /** recent samples of each channel, or null if not buffering. */
+  private final RealtimeWaveBuffer waveBuffer;
+
   /**
    * Class constructor.
    * 
    * @param name scheduler name
    * @param config scheduler config
+   * @param pipeline where fetched waves go to be plotted
+   * @param fetchPool takes my jobs, along with other servers' jobs
+   */
+  public RealtimePlotScheduler(final String name, final ConfigFile config,
+      final PlotPipeline pipeline, final FetchPool fetchPool) {
+    super(name, config, pipeline, fetchPool);
+    if (config.getBoolean("ringBuffer", DEFAULT_RING_BUFFER)) {
+      waveBuffer = new RealtimeWaveBuffer(config);
+    } else {
+      waveBuffer = null;
+    }
+  }
+
+  /**
+   * Consult my ring buffer, if I have one, before going to the wave server for realtime jobs.
+   *
+   * @param waveSource the wave server connections
+   * @return where realtime jobs get their waves
    */
-  public RealtimePlotScheduler(final String name, final ConfigFile config) {
-    super(name, config);
+  @Override
+  protected WaveFetcher wrapRealtime(final WaveFetcher waveSource) {
+    return waveBuffer == null ? waveSource : waveBuffer.wrap(waveSource);
   }
 
   /**
@@ -34,12 +63,8 @@ public class RealtimePlotScheduler extends AbstractPlotScheduler {
   @Override
   protected void schedulePlots() {
     for (final SubnetPlotter subnet : subnets) {
-      try {
-        LOGGER.info("Scheduling subnet " + subnet.subnetName);
-        plotJobs.put(new PlotJob(subnet));
-      } catch (final InterruptedException e) {
-        LOGGER.info("Interrupted. Unable to schedule " + subnet.subnetName);
-      }
+      LOGGER.info("Scheduling subnet " + subnet.subnetName);
+      schedule(new PlotJob(subnet));
     }
   }
 
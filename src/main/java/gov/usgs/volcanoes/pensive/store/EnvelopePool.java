@@ -0,0 +1,83 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.store;
+
+import gov.usgs.plot.data.Wave;
+
+import java.util.Arrays;
+
+/**
+ * Pool the envelopes of consecutive plots into the envelope of a longer plot.
+ *
+ * @author Tom Parker
+ */
+public class EnvelopePool {
+
+  /** start of pooled span, J2kSec. */
+  private final double t1;
+
+  /** end of pooled span, J2kSec. */
+  private final double t2;
+
+  /** least and greatest sample of each pooled column in turn. */
+  private final int[] envelope;
+
+  /** true once an envelope has been pooled. */
+  private boolean pooled;
+
+  /**
+   * Class constructor.
+   *
+   * @param t1 start of pooled span, J2kSec
+   * @param t2 end of pooled span, J2kSec
+   */
+  public EnvelopePool(final double t1, final double t2) {
+    this.t1 = t1;
+    this.t2 = t2;
+    envelope = new int[2 * WaveEnvelope.COLUMNS];
+    Arrays.fill(envelope, Wave.NO_DATA);
+  }
+
+  /**
+   * Pool the envelope of a shorter plot. Columns outside my span are ignored.
+   *
+   * @param start start of the shorter plot, J2kSec
+   * @param end end of the shorter plot, J2kSec
+   * @param plotEnvelope envelope of the shorter plot
+   */
+  public void add(final double start, final double end, final int[] plotEnvelope) {
+    final int columns = plotEnvelope.length / 2;
+    final double columnS = (end - start) / columns;
+    final double pooledColumnS = (t2 - t1) / WaveEnvelope.COLUMNS;
+    for (int c = 0; c < columns; c++) {
+      final int min = plotEnvelope[2 * c];
+      final int max = plotEnvelope[2 * c + 1];
+      final double time = start + c * columnS;
+      if (min == Wave.NO_DATA || time < t1 || time >= t2) {
+        continue;
+      }
+
+      final int column = Math.min(WaveEnvelope.COLUMNS - 1, (int) ((time - t1) / pooledColumnS));
+      if (envelope[2 * column] == Wave.NO_DATA || min < envelope[2 * column]) {
+        envelope[2 * column] = min;
+      }
+      if (envelope[2 * column + 1] == Wave.NO_DATA || max > envelope[2 * column + 1]) {
+        envelope[2 * column + 1] = max;
+      }
+      pooled = true;
+    }
+  }
+
+  /**
+   * Return the pooled envelope.
+   *
+   * @return least and greatest sample of each column in turn, or null if nothing was pooled
+   */
+  public int[] toEnvelope() {
+    return pooled ? envelope.clone() : null;
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read an envelope file through a memory map. I see the file as it was when I was opened and never
+ * change after, so I may be shared between threads.
+ *
+ * @author Tom Parker
+ */
+public final class EnvelopeReader {
+
+  /** columns in each envelope. */
+  private final int columns;
+
+  /** my file, positioned past the header. Read only with absolute gets. */
+  private final ByteBuffer buffer;
+
+  /** number of whole rows. */
+  private final int rowCount;
+
+  /**
+   * Class constructor.
+   *
+   * @param file the file
+   * @throws IOException when the file cannot be read or isn't an envelope file
+   */
+  public EnvelopeReader(final File file) throws IOException {
+    final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      final ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      columns = WaveEnvelope.readHeader(map);
+      buffer = map.slice();
+    } finally {
+      channel.close();
+    }
+    rowCount = buffer.capacity() / WaveEnvelope.rowBytes(columns);
+  }
+
+  /**
+   * Find the envelope of a plot. Where a plot was written more than once, the last written is used.
+   *
+   * @param plotEndMs time of last sample on plot
+   * @return least and greatest sample of each column in turn, or null if the plot wasn't written
+   */
+  public int[] get(final long plotEndMs) {
+    final int rowBytes = WaveEnvelope.rowBytes(columns);
+    for (int row = rowCount - 1; row >= 0; row--) {
+      final int offset = row * rowBytes;
+      if (buffer.getLong(offset) != plotEndMs) {
+        continue;
+      }
+      final int[] envelope = new int[2 * columns];
+      for (int i = 0; i < envelope.length; i++) {
+        envelope[i] = buffer.getInt(offset + 8 + 4 * i);
+      }
+      return envelope;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,130 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append plot envelopes to an envelope file, keeping the file open between appends. A row left
+ * half written by an earlier run is dropped when the file is opened.
+ *
+ * @author Tom Parker
+ */
+public class EnvelopeWriter implements Closeable {
+
+  /** the file written. */
+  public final File file;
+
+  private final FileChannel channel;
+
+  /** reused from one append to the next. */
+  private final ByteBuffer row;
+
+  /** end of the last whole row. */
+  private long position;
+
+  /**
+   * Class constructor. Opens a file, creating it if needed.
+   *
+   * @param file the file
+   * @throws IOException when the file cannot be opened or holds different envelopes
+   */
+  public EnvelopeWriter(final File file) throws IOException {
+    this.file = file;
+    final File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null) {
+      parent.mkdirs();
+    }
+    row = ByteBuffer.allocate(WaveEnvelope.rowBytes(WaveEnvelope.COLUMNS));
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    try {
+      open();
+    } catch (final IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Write a header to a new file, or check the header of an existing one.
+   *
+   * @throws IOException when the file cannot be read or holds different envelopes
+   */
+  private void open() throws IOException {
+    final ByteBuffer header = ByteBuffer.allocate(SpectraHeader.HEADER_BYTES);
+    final long size = channel.size();
+    if (size == 0) {
+      WaveEnvelope.writeHeader(header, WaveEnvelope.COLUMNS);
+      header.flip();
+      write(header, 0);
+      position = SpectraHeader.HEADER_BYTES;
+      return;
+    }
+
+    while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+      continue;
+    }
+    header.flip();
+    if (WaveEnvelope.readHeader(header) != WaveEnvelope.COLUMNS) {
+      throw new IOException(file + " holds envelopes with different columns");
+    }
+
+    final int rowBytes = row.capacity();
+    position = SpectraHeader.HEADER_BYTES
+        + (size - SpectraHeader.HEADER_BYTES) / rowBytes * rowBytes;
+    if (position < size) {
+      channel.truncate(position);
+    }
+  }
+
+  /**
+   * Append the envelope of a plot.
+   *
+   * @param plotEndMs time of last sample on plot
+   * @param envelope envelope returned by WaveEnvelope.compute
+   * @throws IOException when the row cannot be written
+   */
+  public void append(final long plotEndMs, final int[] envelope) throws IOException {
+    row.clear();
+    row.putLong(plotEndMs);
+    for (final int value : envelope) {
+      row.putInt(value);
+    }
+    row.flip();
+    write(row, position);
+    position += row.capacity();
+  }
+
+  /**
+   * Write a whole buffer.
+   *
+   * @param buffer what to write
+   * @param offset where to write it
+   * @throws IOException when the buffer cannot be written
+   */
+  private void write(final ByteBuffer buffer, final long offset) throws IOException {
+    long at = offset;
+    while (buffer.hasRemaining()) {
+      at += channel.write(buffer, at);
+    }
+  }
+
+  /**
+   * Close my file.
+   *
+   * @throws IOException when the file cannot be closed
+   */
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,81 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.store;
+
+import gov.usgs.volcanoes.core.time.Time;
+import gov.usgs.volcanoes.pensive.Channel;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Write spectra files as CSV, one line per time slice: a timestamp followed by the power in each
+ * frequency bin. Rows are written in the order they were appended.
+ *
+ * <p>Usage: SpectraExport [-t timestampFormat] file...
+ *
+ * @author Tom Parker
+ */
+public final class SpectraExport {
+
+  private SpectraExport() {}
+
+  /**
+   * Write a spectra file as CSV.
+   *
+   * @param reader the spectra file
+   * @param timestampFormat format of each line's timestamp
+   * @param out where to write
+   * @throws IOException when the CSV cannot be written
+   */
+  public static void export(final SpectraReader reader, final String timestampFormat,
+      final Writer out) throws IOException {
+    final float[] power = new float[reader.getHeader().bins];
+    final StringBuilder sb = new StringBuilder();
+    for (int row = 0; row < reader.getRowCount(); row++) {
+      reader.getRow(row, power);
+      sb.setLength(0);
+      sb.append(Time.format(timestampFormat, reader.getTimeMs(row)));
+      for (final float value : power) {
+        sb.append(',').append((int) value);
+      }
+      sb.append('\n');
+      out.write(sb.toString());
+    }
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args command line arguments
+   * @throws IOException when a file cannot be read or written
+   */
+  public static void main(final String[] args) throws IOException {
+    String timestampFormat = Channel.DEFAULT_DATA_TIMESTAMP_FORMAT;
+    int first = 0;
+    if (args.length > 1 && "-t".equals(args[0])) {
+      timestampFormat = args[1];
+      first = 2;
+    }
+    if (first >= args.length) {
+      System.err.println("Usage: SpectraExport [-t timestampFormat] file...");
+      System.exit(1);
+    }
+
+    final Writer out = new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8"));
+    try {
+      for (int i = first; i < args.length; i++) {
+        export(new SpectraReader(new File(args[i])), timestampFormat, out);
+      }
+    } finally {
+      out.flush();
+    }
+  }
+}
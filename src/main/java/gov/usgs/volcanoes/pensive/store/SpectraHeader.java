@@ -0,0 +1,156 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.store;
+
+import gov.usgs.volcanoes.pensive.plot.Spectra;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The fixed-width header of a spectra file. A file holds a header followed by fixed-width rows,
+ * each the start time of a time slice in epoch milliseconds and the power in each frequency bin as
+ * float32, all big-endian. Every row in a file shares the bins and FFT window given by the header.
+ *
+ * @author Tom Parker
+ */
+public final class SpectraHeader {
+
+  /** bytes before the first row. */
+  public static final int HEADER_BYTES = 64;
+
+  /** identifies a spectra file. */
+  private static final int MAGIC = 0x50535043;
+
+  /** current file format. */
+  private static final int VERSION = 1;
+
+  /** number of frequency bins in each row. */
+  public final int bins;
+
+  /** frequency of first bin. */
+  public final double minFreq;
+
+  /** frequency of last bin. */
+  public final double maxFreq;
+
+  /** seconds of data in each time slice. */
+  public final double windowS;
+
+  /**
+   * Class constructor.
+   *
+   * @param bins number of frequency bins in each row
+   * @param minFreq frequency of first bin
+   * @param maxFreq frequency of last bin
+   * @param windowS seconds of data in each time slice
+   */
+  public SpectraHeader(final int bins, final double minFreq, final double maxFreq,
+      final double windowS) {
+    this.bins = bins;
+    this.minFreq = minFreq;
+    this.maxFreq = maxFreq;
+    this.windowS = windowS;
+  }
+
+  /**
+   * Describe the rows of some spectra.
+   *
+   * @param spectra the spectra
+   * @param windowS seconds of data in each time slice
+   * @return a header for their rows
+   */
+  public static SpectraHeader of(final Spectra spectra, final double windowS) {
+    return new SpectraHeader(spectra.getBinCount(), spectra.getMinFreq(), spectra.getMaxFreq(),
+        windowS);
+  }
+
+  /**
+   * Find the start of each time slice of some spectra. Slices are evenly spaced, the first starts
+   * with the spectra and the last ends with them.
+   *
+   * @param spectra the spectra
+   * @return slice start times, J2kSec
+   */
+  public double[] sliceTimes(final Spectra spectra) {
+    final int slices = spectra.getSliceCount();
+    final double span = spectra.getEndTime() - spectra.getStartTime();
+    final double step = slices > 1 ? (span - windowS) / (slices - 1) : 0;
+    final double[] times = new double[slices];
+    for (int i = 0; i < slices; i++) {
+      times[i] = spectra.getStartTime() + i * step;
+    }
+    return times;
+  }
+
+  /**
+   * Return the bytes in each row.
+   *
+   * @return row width
+   */
+  public int rowBytes() {
+    return 8 + 4 * bins;
+  }
+
+  /**
+   * Write me.
+   *
+   * @param buffer where to write, with at least HEADER_BYTES remaining
+   */
+  public void write(final ByteBuffer buffer) {
+    final int start = buffer.position();
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putInt(bins);
+    buffer.putInt(0);
+    buffer.putDouble(minFreq);
+    buffer.putDouble(maxFreq);
+    buffer.putDouble(windowS);
+    while (buffer.position() < start + HEADER_BYTES) {
+      buffer.put((byte) 0);
+    }
+  }
+
+  /**
+   * Read a header.
+   *
+   * @param buffer where to read, positioned at the start of the header
+   * @return the header
+   * @throws IOException when the buffer doesn't hold a header
+   */
+  public static SpectraHeader read(final ByteBuffer buffer) throws IOException {
+    if (buffer.remaining() < HEADER_BYTES) {
+      throw new IOException("Truncated spectra header");
+    }
+    final int start = buffer.position();
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException("Not a spectra file");
+    }
+    final int version = buffer.getInt();
+    if (version != VERSION) {
+      throw new IOException("Unknown spectra file version " + version);
+    }
+    final int bins = buffer.getInt();
+    buffer.getInt();
+    final double minFreq = buffer.getDouble();
+    final double maxFreq = buffer.getDouble();
+    final double windowS = buffer.getDouble();
+    buffer.position(start + HEADER_BYTES);
+    return new SpectraHeader(bins, minFreq, maxFreq, windowS);
+  }
+
+  /**
+   * Check if rows described by another header may share a file with mine.
+   *
+   * @param other the other header
+   * @return true if the rows are alike
+   */
+  public boolean matches(final SpectraHeader other) {
+    return bins == other.bins && minFreq == other.minFreq && maxFreq == other.maxFreq
+        && Math.abs(windowS - other.windowS) < 1e-6;
+  }
+}
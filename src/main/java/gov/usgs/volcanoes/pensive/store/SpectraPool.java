@@ -0,0 +1,129 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.store;
+
+import gov.usgs.volcanoes.core.time.J2kSec;
+import gov.usgs.volcanoes.pensive.plot.Spectra;
+
+/**
+ * Pool stored time slices into fewer, evenly spaced, time slices spanning a longer plot. Each
+ * pooled slice holds the mean or the greatest power of the stored slices starting within it.
+ *
+ * @author Tom Parker
+ */
+public class SpectraPool {
+
+  /** pooled time slices in each plot, more than the pixels across any plot. */
+  public static final int SLICES = 1024;
+
+  /** shared by every row pooled. */
+  private final SpectraHeader header;
+
+  /** start of pooled span, J2kSec. */
+  private final double t1;
+
+  /** end of pooled span, J2kSec. */
+  private final double t2;
+
+  /** if true keep the greatest power, otherwise the mean. */
+  private final boolean max;
+
+  /** pooled power, indexed by pooled slice then by frequency bin. */
+  private final double[][] power;
+
+  /** count of stored slices in each pooled slice. */
+  private final int[] counts;
+
+  /** count of stored slices pooled. */
+  private int total;
+
+  /**
+   * Class constructor.
+   *
+   * @param header describes the rows to be pooled
+   * @param t1 start of pooled span, J2kSec
+   * @param t2 end of pooled span, J2kSec
+   * @param max if true keep the greatest power, otherwise the mean
+   */
+  public SpectraPool(final SpectraHeader header, final double t1, final double t2,
+      final boolean max) {
+    this.header = header;
+    this.t1 = t1;
+    this.t2 = t2;
+    this.max = max;
+    power = new double[SLICES][header.bins];
+    counts = new int[SLICES];
+  }
+
+  /**
+   * Check if rows described by a header may be pooled with mine.
+   *
+   * @param other header of the rows
+   * @return true if the rows are alike
+   */
+  public boolean accepts(final SpectraHeader other) {
+    return header.matches(other);
+  }
+
+  /**
+   * Check if a stored time slice starts within my span.
+   *
+   * @param timeMs start of the slice, epoch milliseconds
+   * @return true if the slice starts within my span
+   */
+  public boolean contains(final long timeMs) {
+    final double time = J2kSec.fromEpoch(timeMs);
+    return time >= t1 && time < t2;
+  }
+
+  /**
+   * Pool a stored time slice. Slices starting outside my span are ignored.
+   *
+   * @param timeMs start of the slice, epoch milliseconds
+   * @param row power in each frequency bin
+   */
+  public void add(final long timeMs, final float[] row) {
+    if (!contains(timeMs)) {
+      return;
+    }
+
+    final double time = J2kSec.fromEpoch(timeMs);
+    final int slice = Math.min(SLICES - 1, (int) ((time - t1) / (t2 - t1) * SLICES));
+    final double[] pooled = power[slice];
+    for (int i = 0; i < pooled.length; i++) {
+      if (!max) {
+        pooled[i] += row[i];
+      } else if (counts[slice] == 0 || row[i] > pooled[i]) {
+        pooled[i] = row[i];
+      }
+    }
+    counts[slice]++;
+    total++;
+  }
+
+  /**
+   * Return the pooled spectra. Pooled slices without stored slices have no power.
+   *
+   * @return the spectra, or null if nothing was pooled
+   */
+  public Spectra toSpectra() {
+    if (total == 0) {
+      return null;
+    }
+
+    final double[][] result = new double[SLICES][];
+    for (int slice = 0; slice < SLICES; slice++) {
+      result[slice] = power[slice].clone();
+      if (!max && counts[slice] > 0) {
+        for (int i = 0; i < result[slice].length; i++) {
+          result[slice][i] /= counts[slice];
+        }
+      }
+    }
+    return new Spectra(result, t1, t2, header.minFreq, header.maxFreq);
+  }
+}
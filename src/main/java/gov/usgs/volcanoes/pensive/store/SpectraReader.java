@@ -0,0 +1,155 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.store;
+
+import gov.usgs.volcanoes.core.time.J2kSec;
+import gov.usgs.volcanoes.pensive.plot.Spectra;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Read a spectra file through a memory map. Rows are in the order they were appended, which need
+ * not be time order. I see the file as it was when I was opened and never change after, so I may
+ * be shared between threads.
+ *
+ * @author Tom Parker
+ */
+public final class SpectraReader {
+
+  /** shared by every row in my file. */
+  private final SpectraHeader header;
+
+  /** my file, positioned past the header. Read only with absolute gets. */
+  private final ByteBuffer buffer;
+
+  /** number of whole rows. */
+  private final int rowCount;
+
+  /**
+   * Class constructor.
+   *
+   * @param file the file
+   * @throws IOException when the file cannot be read or isn't a spectra file
+   */
+  public SpectraReader(final File file) throws IOException {
+    final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      final ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      header = SpectraHeader.read(map);
+      buffer = map.slice();
+    } finally {
+      channel.close();
+    }
+    rowCount = buffer.capacity() / header.rowBytes();
+  }
+
+  /**
+   * Header accessor.
+   *
+   * @return my header
+   */
+  public SpectraHeader getHeader() {
+    return header;
+  }
+
+  /**
+   * Return the number of rows.
+   *
+   * @return count of rows
+   */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Return the start time of a row's time slice.
+   *
+   * @param row row index
+   * @return start time, epoch milliseconds
+   */
+  public long getTimeMs(final int row) {
+    return buffer.getLong(row * header.rowBytes());
+  }
+
+  /**
+   * Read the power in each frequency bin of a row.
+   *
+   * @param row row index
+   * @param power where to put the power, with room for every bin
+   */
+  public void getRow(final int row, final float[] power) {
+    final int offset = row * header.rowBytes() + 8;
+    for (int i = 0; i < header.bins; i++) {
+      power[i] = buffer.getFloat(offset + 4 * i);
+    }
+  }
+
+  /**
+   * Pool every row within a pool's span, if the rows may be pooled together.
+   *
+   * @param pool where to pool rows
+   * @return true if my rows were pooled
+   */
+  public boolean poolInto(final SpectraPool pool) {
+    if (!pool.accepts(header)) {
+      return false;
+    }
+
+    final float[] row = new float[header.bins];
+    for (int i = 0; i < rowCount; i++) {
+      final long time = getTimeMs(i);
+      if (pool.contains(time)) {
+        getRow(i, row);
+        pool.add(time, row);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gather the time slices starting within a time span, in time order. Where slices were written
+   * more than once, the last written is used.
+   *
+   * @param t1 start of time span, J2kSec
+   * @param t2 end of time span, exclusive, J2kSec
+   * @return the spectra, or null if no slices start within the span
+   */
+  public Spectra getSpectra(final double t1, final double t2) {
+    final long startMs = J2kSec.asEpoch(t1);
+    final long endMs = J2kSec.asEpoch(t2);
+    final TreeMap<Long, Integer> rows = new TreeMap<Long, Integer>();
+    for (int row = 0; row < rowCount; row++) {
+      final long time = getTimeMs(row);
+      if (time >= startMs && time < endMs) {
+        rows.put(time, row);
+      }
+    }
+    if (rows.isEmpty()) {
+      return null;
+    }
+
+    final double[][] power = new double[rows.size()][header.bins];
+    final float[] row = new float[header.bins];
+    int slice = 0;
+    for (final Map.Entry<Long, Integer> entry : rows.entrySet()) {
+      getRow(entry.getValue(), row);
+      for (int i = 0; i < row.length; i++) {
+        power[slice][i] = row[i];
+      }
+      slice++;
+    }
+    final double startTime = J2kSec.fromEpoch(rows.firstKey());
+    final double endTime = J2kSec.fromEpoch(rows.lastKey()) + header.windowS;
+    return new Spectra(power, startTime, endTime, header.minFreq, header.maxFreq);
+  }
+}
@@ -0,0 +1,156 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.store;
+
+import gov.usgs.volcanoes.core.time.J2kSec;
+import gov.usgs.volcanoes.pensive.plot.Spectra;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append spectra to a spectra file, keeping the file open between appends. A row left half written
+ * by an earlier run is dropped when the file is opened.
+ *
+ * @author Tom Parker
+ */
+public class SpectraWriter implements Closeable {
+
+  /** the file written. */
+  public final File file;
+
+  /** shared by every row in my file. */
+  private final SpectraHeader header;
+
+  private final FileChannel channel;
+
+  /** end of the last whole row. */
+  private long position;
+
+  /** reused from one append to the next. */
+  private ByteBuffer rows;
+
+  /**
+   * Class constructor. Opens a file, creating it if needed.
+   *
+   * @param file the file
+   * @param header describes the rows to be appended
+   * @throws IOException when the file cannot be opened or holds different rows
+   */
+  public SpectraWriter(final File file, final SpectraHeader header) throws IOException {
+    this.file = file;
+    this.header = header;
+    final File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null) {
+      parent.mkdirs();
+    }
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    try {
+      open();
+    } catch (final IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Write my header to a new file, or check the header of an existing one.
+   *
+   * @throws IOException when the file cannot be read or holds different rows
+   */
+  private void open() throws IOException {
+    final long size = channel.size();
+    if (size == 0) {
+      final ByteBuffer buffer = ByteBuffer.allocate(SpectraHeader.HEADER_BYTES);
+      header.write(buffer);
+      buffer.flip();
+      write(buffer, 0);
+      position = SpectraHeader.HEADER_BYTES;
+      return;
+    }
+
+    final ByteBuffer buffer = ByteBuffer.allocate(SpectraHeader.HEADER_BYTES);
+    while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+      continue;
+    }
+    buffer.flip();
+    if (!header.matches(SpectraHeader.read(buffer))) {
+      throw new IOException(file + " holds spectra with different frequency bins");
+    }
+
+    final int rowBytes = header.rowBytes();
+    position = SpectraHeader.HEADER_BYTES
+        + (size - SpectraHeader.HEADER_BYTES) / rowBytes * rowBytes;
+    if (position < size) {
+      channel.truncate(position);
+    }
+  }
+
+  /**
+   * Append the time slices of some spectra which start within a time span.
+   *
+   * @param spectra the spectra
+   * @param t1 start of time span, J2kSec
+   * @param t2 end of time span, exclusive, J2kSec
+   * @throws IOException when the rows cannot be written
+   */
+  public void append(final Spectra spectra, final double t1, final double t2)
+      throws IOException {
+    if (spectra.getBinCount() != header.bins) {
+      throw new IOException(file + " holds spectra with different frequency bins");
+    }
+
+    final double[] times = header.sliceTimes(spectra);
+    final double[][] power = spectra.getPower();
+    final int bytes = times.length * header.rowBytes();
+    if (rows == null || rows.capacity() < bytes) {
+      rows = ByteBuffer.allocate(bytes);
+    }
+    rows.clear();
+    for (int i = 0; i < times.length; i++) {
+      if (times[i] < t1 || times[i] >= t2) {
+        continue;
+      }
+      rows.putLong(J2kSec.asEpoch(times[i]));
+      for (final double value : power[i]) {
+        rows.putFloat((float) value);
+      }
+    }
+    rows.flip();
+    final int written = rows.remaining();
+    write(rows, position);
+    position += written;
+  }
+
+  /**
+   * Write a whole buffer.
+   *
+   * @param buffer what to write
+   * @param offset where to write it
+   * @throws IOException when the buffer cannot be written
+   */
+  private void write(final ByteBuffer buffer, final long offset) throws IOException {
+    long at = offset;
+    while (buffer.hasRemaining()) {
+      at += channel.write(buffer, at);
+    }
+  }
+
+  /**
+   * Close my file.
+   *
+   * @throws IOException when the file cannot be closed
+   */
+  public void close() throws IOException {
+    channel.close();
+  }
+}
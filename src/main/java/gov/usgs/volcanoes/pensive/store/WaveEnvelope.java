@@ -0,0 +1,131 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.store;
+
+import gov.usgs.plot.data.Wave;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The least and greatest sample in each of a fixed number of columns spanning a plot, enough to
+ * redraw the plot's wave panel without the wave. An envelope file holds a fixed-width header
+ * followed by one row per plot, each the plot end time in epoch milliseconds and the least and
+ * greatest sample of each column as int32, all big-endian.
+ *
+ * @author Tom Parker
+ */
+public final class WaveEnvelope {
+
+  /** columns in each envelope, more than the pixels across any plot. */
+  public static final int COLUMNS = 1024;
+
+  /** identifies an envelope file. */
+  private static final int MAGIC = 0x50454E56;
+
+  /** current file format. */
+  private static final int VERSION = 1;
+
+  private WaveEnvelope() {}
+
+  /**
+   * Find the envelope of a wave over a time span.
+   *
+   * @param wave the wave
+   * @param t1 start of time span, J2kSec
+   * @param t2 end of time span, J2kSec
+   * @return least and greatest sample of each column in turn, Wave.NO_DATA where a column is empty
+   */
+  public static int[] compute(final Wave wave, final double t1, final double t2) {
+    final int[] envelope = new int[2 * COLUMNS];
+    Arrays.fill(envelope, Wave.NO_DATA);
+
+    final double rate = wave.getSamplingRate();
+    final double columnS = (t2 - t1) / COLUMNS;
+    final int first = Math.max(0, (int) Math.ceil((t1 - wave.getStartTime()) * rate));
+    final int last =
+        Math.min(wave.numSamples() - 1, (int) Math.floor((t2 - wave.getStartTime()) * rate));
+    for (int i = first; i <= last; i++) {
+      final int value = wave.buffer[i];
+      if (value == Wave.NO_DATA) {
+        continue;
+      }
+      final double time = wave.getStartTime() + i / rate;
+      final int column = Math.min(COLUMNS - 1, (int) ((time - t1) / columnS)) * 2;
+      if (envelope[column] == Wave.NO_DATA || value < envelope[column]) {
+        envelope[column] = value;
+      }
+      if (envelope[column + 1] == Wave.NO_DATA || value > envelope[column + 1]) {
+        envelope[column + 1] = value;
+      }
+    }
+    return envelope;
+  }
+
+  /**
+   * Make a wave which draws as an envelope, the least and greatest sample of each column in turn.
+   *
+   * @param envelope envelope returned by compute
+   * @param t1 start of time span, J2kSec
+   * @param t2 end of time span, J2kSec
+   * @return the wave
+   */
+  public static Wave toWave(final int[] envelope, final double t1, final double t2) {
+    return new Wave(envelope.clone(), t1, envelope.length / (t2 - t1));
+  }
+
+  /**
+   * Return the bytes in each row of an envelope file.
+   *
+   * @param columns columns in each envelope
+   * @return row width
+   */
+  static int rowBytes(final int columns) {
+    return 8 + 8 * columns;
+  }
+
+  /**
+   * Write an envelope file header.
+   *
+   * @param buffer where to write, with at least SpectraHeader.HEADER_BYTES remaining
+   * @param columns columns in each envelope
+   */
+  static void writeHeader(final ByteBuffer buffer, final int columns) {
+    final int start = buffer.position();
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putInt(columns);
+    while (buffer.position() < start + SpectraHeader.HEADER_BYTES) {
+      buffer.put((byte) 0);
+    }
+  }
+
+  /**
+   * Read an envelope file header.
+   *
+   * @param buffer where to read, positioned at the start of the header
+   * @return columns in each envelope
+   * @throws IOException when the buffer doesn't hold a header
+   */
+  static int readHeader(final ByteBuffer buffer) throws IOException {
+    if (buffer.remaining() < SpectraHeader.HEADER_BYTES) {
+      throw new IOException("Truncated envelope header");
+    }
+    final int start = buffer.position();
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException("Not an envelope file");
+    }
+    final int version = buffer.getInt();
+    if (version != VERSION) {
+      throw new IOException("Unknown envelope file version " + version);
+    }
+    final int columns = buffer.getInt();
+    buffer.position(start + SpectraHeader.HEADER_BYTES);
+    return columns;
+  }
+}
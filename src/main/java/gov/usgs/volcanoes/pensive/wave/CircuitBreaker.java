@@ -0,0 +1,264 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.wave;
+
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+import gov.usgs.volcanoes.core.time.J2kSec;
+import gov.usgs.volcanoes.pensive.WaveSource;
+import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stop asking an unresponsive wave server for data. Connections report the time spent on the wire
+ * for each request. A request which fails, or which runs nearly to the server's timeout for each
+ * plot's worth of data asked for, counts against the server; a prompt answer with data clears the
+ * count. A prompt answer without data, as from a station which is down, neither counts against
+ * the server nor clears the count. After enough failures in a row the breaker opens and requests
+ * return no data at once, so no thread waits on a dead host. While open, a background thread
+ * makes a small request of channels which recently had data now and then, and closes the breaker
+ * once one is answered promptly.
+ *
+ * @author Tom Parker
+ */
+public class CircuitBreaker {
+
+  /** my logger. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  /** default failures in a row which open the breaker. Zero disables the breaker. */
+  public static final int DEFAULT_FAILURES = 3;
+
+  /** default seconds between probes while open. */
+  public static final int DEFAULT_PROBE_INTERVAL = 30;
+
+  /** share of the server timeout after which a request counts as failed. */
+  private static final double TIMEOUT_SHARE = 0.9;
+
+  /** seconds of data asked for by a probe. */
+  private static final double PROBE_S = 60;
+
+  /** most channels with recent data tried by each probe. */
+  private static final int PROBE_CHANNELS = 5;
+
+  /** wave server name. */
+  private final String name;
+
+  private final int maxFailures;
+  private final long probeIntervalMs;
+
+  /** nanoseconds after which a request for a plot's worth of data counts as failed. */
+  private final long failureNs;
+
+  private int failures;
+  private volatile boolean open;
+
+  /** where probes get waves, the source I last wrapped. */
+  private volatile WaveFetcher probeSource;
+
+  /** a channel recently asked for, used by probes when no channel has had data. */
+  private volatile String lastChannel;
+
+  /** channels which recently had data, newest last. Guarded by me. */
+  private final LinkedList<String> recentChannels;
+
+  /**
+   * Class constructor.
+   *
+   * @param name wave server name
+   * @param config my wave source config stanza
+   */
+  public CircuitBreaker(final String name, final ConfigFile config) {
+    this.name = name;
+    maxFailures = config.getInt("breakerFailures", DEFAULT_FAILURES);
+    probeIntervalMs = 1000L * config.getInt("breakerProbeInterval", DEFAULT_PROBE_INTERVAL);
+    final int timeout = config.getInt("timeout", WaveSource.DEFAULT_TIMEOUT_S);
+    failureNs = (long) (TIMEOUT_SHARE * TimeUnit.SECONDS.toNanos(timeout));
+    recentChannels = new LinkedList<String>();
+  }
+
+  /**
+   * Check whether requests are being refused.
+   *
+   * @return true if the breaker is open
+   */
+  public boolean isOpen() {
+    return open;
+  }
+
+  /**
+   * Return the time between probes while open.
+   *
+   * @return milliseconds between probes
+   */
+  public long getProbeIntervalMs() {
+    return probeIntervalMs;
+  }
+
+  /**
+   * Retrieve a wave unless the breaker is open.
+   *
+   * @param channel channel name
+   * @param t1 time of first sample, J2kSec
+   * @param t2 time of last sample, J2kSec
+   * @param source where to get waves
+   * @return the wave or null if no data is available or the breaker is open
+   */
+  public Wave getWave(final String channel, final double t1, final double t2,
+      final WaveFetcher source) {
+    if (maxFailures < 1) {
+      return source.getWave(channel, t1, t2);
+    }
+    if (open) {
+      return null;
+    }
+
+    lastChannel = channel;
+    return source.getWave(channel, t1, t2);
+  }
+
+  /**
+   * Count a request made over a connection, opening the breaker after enough failures in a row.
+   * Requests finishing while the breaker is open are ignored.
+   *
+   * @param channel channel name
+   * @param latencyNs nanoseconds spent on the wire
+   * @param seconds seconds of data requested
+   * @param wave the answer, or null if there was none
+   * @param error true if the request threw
+   */
+  public synchronized void record(final String channel, final long latencyNs,
+      final double seconds, final Wave wave, final boolean error) {
+    if (maxFailures < 1 || open) {
+      return;
+    }
+
+    final double plots = Math.max(1, seconds / SubnetPlotter.DURATION_S);
+    final boolean prompt = !error && latencyNs < failureNs * plots;
+    if (prompt && wave != null) {
+      failures = 0;
+      recentChannels.remove(channel);
+      recentChannels.addLast(channel);
+      if (recentChannels.size() > PROBE_CHANNELS) {
+        recentChannels.removeFirst();
+      }
+      return;
+    }
+    if (prompt) {
+      return;
+    }
+
+    failures++;
+    if (failures >= maxFailures) {
+      open = true;
+      LOGGER.warn("{} failed {} requests in a row. I'll stop asking it for data until it recovers.",
+          name, failures);
+      final Thread t =
+          new Thread(new Prober(probeSource, probeChannels(), !recentChannels.isEmpty()));
+      t.setName(name + "-probe");
+      t.setDaemon(true);
+      t.start();
+    }
+  }
+
+  /**
+   * Choose channels for probes. Call with my lock held.
+   *
+   * @return channels which recently had data, or the channel last asked for if none had
+   */
+  private List<String> probeChannels() {
+    final List<String> channels = new ArrayList<String>(recentChannels);
+    if (channels.isEmpty() && lastChannel != null) {
+      channels.add(lastChannel);
+    }
+    return channels;
+  }
+
+  /**
+   * Close the breaker.
+   */
+  private synchronized void close() {
+    failures = 0;
+    open = false;
+    LOGGER.info("{} is answering again.", name);
+  }
+
+  /**
+   * Wrap a source so that its requests pass through me. The source is also where probes get
+   * waves.
+   *
+   * @param source where to get waves
+   * @return a WaveFetcher which is guarded by me
+   */
+  public WaveFetcher wrap(final WaveFetcher source) {
+    probeSource = source;
+    return new WaveFetcher() {
+      public Wave getWave(final String channel, final double t1, final double t2) {
+        return CircuitBreaker.this.getWave(channel, t1, t2, source);
+      }
+    };
+  }
+
+  /**
+   * Probe an open breaker's server until it answers promptly. If any channel probed recently had
+   * data, the answer must hold data too.
+   */
+  private class Prober implements Runnable {
+    private final WaveFetcher source;
+    private final List<String> channels;
+    private final boolean needData;
+
+    private Prober(final WaveFetcher source, final List<String> channels,
+        final boolean needData) {
+      this.source = source;
+      this.channels = channels;
+      this.needData = needData;
+    }
+
+    public void run() {
+      while (true) {
+        try {
+          Thread.sleep(probeIntervalMs);
+        } catch (final InterruptedException e) {
+          return;
+        }
+
+        for (final String channel : channels) {
+          if (probe(channel)) {
+            close();
+            return;
+          }
+        }
+      }
+    }
+
+    /**
+     * Ask for the latest data of a channel.
+     *
+     * @param channel channel name
+     * @return true if the server answered promptly
+     */
+    private boolean probe(final String channel) {
+      final double t2 = J2kSec.fromEpoch(System.currentTimeMillis());
+      final long startNs = System.nanoTime();
+      try {
+        final Wave wave = source.getWave(channel, t2 - PROBE_S, t2);
+        return System.nanoTime() - startNs < failureNs && (wave != null || !needData);
+      } catch (final RuntimeException e) {
+        LOGGER.debug("Probe of {} failed. {}", name, e.getLocalizedMessage());
+        return false;
+      }
+    }
+  }
+}
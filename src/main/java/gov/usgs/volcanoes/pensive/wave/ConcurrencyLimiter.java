@@ -0,0 +1,203 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.wave;
+
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limit the requests in flight to a wave server, adapting the limit to how the server responds.
+ * Each prompt reply raises the limit by one over a full limit's worth of requests; a slow or
+ * failed request cuts it by a quarter. Only requests started since the last cut may cut it again,
+ * so one bout of congestion cuts it once. The limit stays between configured bounds, and is fixed
+ * if they are equal. Unless configured, the lower bound is half the upper.
+ *
+ * @author Tom Parker
+ */
+public class ConcurrencyLimiter implements ConcurrencyLimiterMBean {
+
+  /** my logger. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConcurrencyLimiter.class);
+
+  /** default seconds a request may take for each plot's worth of data before it is slow. */
+  public static final double DEFAULT_LATENCY_THRESHOLD = 5;
+
+  /** share of the limit kept after a slow request. */
+  private static final double BACKOFF = 0.75;
+
+  private final int minLimit;
+  private final int maxLimit;
+
+  /** nanoseconds a request may take for each plot's worth of data. */
+  private final double thresholdNs;
+
+  private final ReentrantLock lock;
+
+  /** signaled when a request finishes or the limit rises. */
+  private final Condition changed;
+
+  private double limit;
+  private int inFlight;
+  private long slowRequests;
+
+  /** start time of the last request to cut the limit. */
+  private long lastCutNs;
+
+  /**
+   * Class constructor.
+   *
+   * @param config my wave source config stanza
+   * @param maxLimit highest limit, the number of connections to the wave server
+   */
+  public ConcurrencyLimiter(final ConfigFile config, final int maxLimit) {
+    this.maxLimit = Math.max(1, maxLimit);
+    final int defaultMin = (this.maxLimit + 1) / 2;
+    minLimit = Math.max(1, Math.min(this.maxLimit, config.getInt("minThreads", defaultMin)));
+    thresholdNs = config.getDouble("latencyThreshold", DEFAULT_LATENCY_THRESHOLD) * 1e9;
+    limit = this.maxLimit;
+    lock = new ReentrantLock();
+    changed = lock.newCondition();
+    lastCutNs = System.nanoTime();
+  }
+
+  /**
+   * Wait for room to make a request. Each call must be followed by a call to release().
+   *
+   * @return start time of the request, to be handed to release()
+   */
+  public long acquire() {
+    lock.lock();
+    try {
+      while (inFlight >= (int) limit) {
+        changed.awaitUninterruptibly();
+      }
+      inFlight++;
+      return System.nanoTime();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Finish a request and adjust the limit.
+   *
+   * @param startNs value returned by acquire()
+   * @param seconds seconds of data requested
+   * @param failed true if the request failed
+   */
+  public void release(final long startNs, final double seconds, final boolean failed) {
+    lock.lock();
+    try {
+      inFlight--;
+      sample(startNs, System.nanoTime() - startNs, seconds, failed);
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Adjust the limit after a request.
+   *
+   * @param startNs start time of the request
+   * @param latencyNs time taken by the request
+   * @param seconds seconds of data requested
+   * @param failed true if the request failed
+   */
+  void sample(final long startNs, final long latencyNs, final double seconds,
+      final boolean failed) {
+    lock.lock();
+    try {
+      final double plots = Math.max(1, seconds / SubnetPlotter.DURATION_S);
+      if (!failed && latencyNs <= thresholdNs * plots) {
+        limit = Math.min(maxLimit, limit + 1 / limit);
+        return;
+      }
+
+      slowRequests++;
+      if (startNs - lastCutNs < 0) {
+        return;
+      }
+      lastCutNs = System.nanoTime();
+      final double cut = Math.max(minLimit, limit * BACKOFF);
+      if ((int) cut != (int) limit) {
+        LOGGER.info("Request {} after {} ms. Limiting to {} requests in flight.",
+            failed ? "failed" : "slow", TimeUnit.NANOSECONDS.toMillis(latencyNs), (int) cut);
+      }
+      limit = cut;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Return the current limit.
+   *
+   * @return most requests in flight at once
+   */
+  public int getLimit() {
+    lock.lock();
+    try {
+      return (int) limit;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Return the lowest the limit may fall.
+   *
+   * @return lowest limit
+   */
+  public int getMinLimit() {
+    return minLimit;
+  }
+
+  /**
+   * Return the highest the limit may rise.
+   *
+   * @return highest limit
+   */
+  public int getMaxLimit() {
+    return maxLimit;
+  }
+
+  /**
+   * Count requests in flight.
+   *
+   * @return count of requests
+   */
+  public int getInFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Count requests which were slow or failed.
+   *
+   * @return count of requests
+   */
+  public long getSlowRequests() {
+    lock.lock();
+    try {
+      return slowRequests;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.wave;
+
+/**
+ * Concurrent requests made of a single wave server, visible through JMX.
+ *
+ * @author Tom Parker
+ */
+public interface ConcurrencyLimiterMBean {
+
+  /**
+   * Return the current limit.
+   *
+   * @return most requests in flight at once
+   */
+  int getLimit();
+
+  /**
+   * Return the lowest the limit may fall.
+   *
+   * @return lowest limit
+   */
+  int getMinLimit();
+
+  /**
+   * Return the highest the limit may rise.
+   *
+   * @return highest limit
+   */
+  int getMaxLimit();
+
+  /**
+   * Count requests in flight.
+   *
+   * @return count of requests
+   */
+  int getInFlight();
+
+  /**
+   * Count requests which were slow or failed, causing the limit to fall.
+   *
+   * @return count of requests
+   */
+  long getSlowRequests();
+}
@@ -0,0 +1,500 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.wave;
+
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+import gov.usgs.volcanoes.core.time.J2kSec;
+import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keep fetched samples on disk so re-runs over the same time span don't go back to the wave
+ * server. Samples are kept in chunks of one plot length, aligned to multiples of their length, one
+ * file per channel and chunk. Each chunk holds first differences of its samples as variable length
+ * integers, which is compact for seismic data and is decoded straight from a memory-mapped file.
+ * Requests touching chunks which may still be filling are passed through and nothing is kept.
+ * Chunks which are empty, partial or hold gaps may yet be filled by late data, so they are fetched
+ * again once they expire. Once my files grow beyond their limit the least recently used are
+ * removed.
+ *
+ * @author Tom Parker
+ */
+public class DiskWaveCache {
+
+  /** my logger. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(DiskWaveCache.class);
+
+  /** default cache directory. Empty disables the cache. */
+  public static final String DEFAULT_WAVE_CACHE = "";
+
+  /** default most megabytes kept. */
+  public static final int DEFAULT_WAVE_CACHE_SIZE = 2048;
+
+  /** default minutes after a chunk ends before it is kept. */
+  public static final int DEFAULT_WAVE_CACHE_SETTLE = 60;
+
+  /** default minutes an incomplete chunk is kept before it is fetched again. */
+  public static final int DEFAULT_WAVE_CACHE_RETRY = 60;
+
+  /** seconds in each chunk. */
+  public static final double CHUNK_S = SubnetPlotter.DURATION_S;
+
+  /** identifies a chunk file. */
+  private static final int MAGIC = 0x50574332;
+
+  /** suffix of chunk files. */
+  private static final String SUFFIX = ".pwc";
+
+  /** where my files are kept. */
+  private final File dir;
+
+  /** most bytes kept. */
+  private final long maxBytes;
+
+  /** seconds after a chunk ends before it is kept. */
+  private final double settleS;
+
+  /** milliseconds an incomplete chunk is kept before it is fetched again. */
+  private final long retryMs;
+
+  /** size of each file kept, least recently used first. */
+  private final LinkedHashMap<File, Long> files;
+
+  /** total size of files kept. */
+  private long bytes;
+
+  /**
+   * Class constructor.
+   *
+   * @param config my config file
+   */
+  public DiskWaveCache(final ConfigFile config) {
+    dir = new File(config.getString("waveCache", DEFAULT_WAVE_CACHE));
+    maxBytes = config.getInt("waveCacheSize", DEFAULT_WAVE_CACHE_SIZE) * 1024L * 1024L;
+    settleS = 60.0 * config.getInt("waveCacheSettle", DEFAULT_WAVE_CACHE_SETTLE);
+    retryMs = 60L * 1000 * config.getInt("waveCacheRetry", DEFAULT_WAVE_CACHE_RETRY);
+    files = new LinkedHashMap<File, Long>(16, 0.75f, true);
+    dir.mkdirs();
+    scan();
+  }
+
+  /**
+   * Check if a disk cache is requested in a config file.
+   *
+   * @param config config file
+   * @return true if a cache directory is given
+   */
+  public static boolean isEnabled(final ConfigFile config) {
+    final String dir = config.getString("waveCache", DEFAULT_WAVE_CACHE);
+    return dir != null && !dir.isEmpty();
+  }
+
+  /**
+   * Retrieve a wave, reading the chunks containing it from disk and fetching only the runs of
+   * chunks I don't hold.
+   *
+   * @param channel channel name
+   * @param t1 time of first sample, J2kSec
+   * @param t2 time of last sample, J2kSec
+   * @param source where to get missing chunks
+   * @return the wave or null if no data is available
+   */
+  public Wave getWave(final String channel, final double t1, final double t2,
+      final WaveFetcher source) {
+    final long first = (long) Math.floor(t1 / CHUNK_S);
+    final long last = (long) Math.floor(t2 / CHUNK_S);
+    final double settled = J2kSec.fromEpoch(System.currentTimeMillis()) - settleS;
+    if ((last + 1) * CHUNK_S > settled) {
+      return source.getWave(channel, t1, t2);
+    }
+
+    final List<Wave> waves = new ArrayList<Wave>();
+    long missing = -1;
+    for (long chunk = first; chunk <= last; chunk++) {
+      final Wave wave = read(channel, chunk);
+      if (wave == null) {
+        if (missing < 0) {
+          missing = chunk;
+        }
+        continue;
+      }
+      if (missing >= 0) {
+        waves.addAll(fetch(channel, missing, chunk - 1, source));
+        missing = -1;
+      }
+      waves.add(wave);
+    }
+    if (missing >= 0) {
+      waves.addAll(fetch(channel, missing, last, source));
+    }
+    return join(waves, t1, t2);
+  }
+
+  /**
+   * Fetch a run of chunks and keep them. Nothing is kept if the server has no data at all, which
+   * may mean it didn't answer. Chunks which are empty, partial or hold gaps are kept only until
+   * they expire.
+   *
+   * @param channel channel name
+   * @param first first chunk number
+   * @param last last chunk number
+   * @param source where to get chunks
+   * @return each chunk
+   */
+  private List<Wave> fetch(final String channel, final long first, final long last,
+      final WaveFetcher source) {
+    final List<Wave> chunks = new ArrayList<Wave>();
+    final Wave wave = source.getWave(channel, first * CHUNK_S, (last + 1) * CHUNK_S);
+    if (wave == null || wave.numSamples() == 0) {
+      return chunks;
+    }
+
+    final double rate = wave.getSamplingRate();
+    final long waveStart = Math.round(wave.getStartTime() * rate);
+    for (long chunk = first; chunk <= last; chunk++) {
+      final long start = Math.max(waveStart, Math.round(chunk * CHUNK_S * rate));
+      final long end =
+          Math.min(waveStart + wave.numSamples(), Math.round((chunk + 1) * CHUNK_S * rate));
+      final int[] samples = new int[(int) Math.max(0, end - start)];
+      if (samples.length > 0) {
+        System.arraycopy(wave.buffer, (int) (start - waveStart), samples, 0, samples.length);
+      }
+      final Wave piece = new Wave(samples, start / rate, rate);
+      chunks.add(piece);
+      final long expiresMs =
+          isComplete(piece, chunk) ? Long.MAX_VALUE : System.currentTimeMillis() + retryMs;
+      write(channel, chunk, piece, expiresMs);
+    }
+    LOGGER.debug("Fetched {} chunks of {}", last - first + 1, channel);
+    return chunks;
+  }
+
+  /**
+   * Check if a chunk holds every sample it should.
+   *
+   * @param piece the chunk's samples
+   * @param chunk chunk number
+   * @return true if the chunk has no gaps
+   */
+  private static boolean isComplete(final Wave piece, final long chunk) {
+    final double rate = piece.getSamplingRate();
+    final long first = Math.round(chunk * CHUNK_S * rate);
+    final long expected = Math.round((chunk + 1) * CHUNK_S * rate) - first;
+    if (piece.numSamples() != expected || Math.round(piece.getStartTime() * rate) != first) {
+      return false;
+    }
+    for (final int value : piece.buffer) {
+      if (value == Wave.NO_DATA) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Join chunks and cut a span from them.
+   *
+   * @param waves chunks in time order
+   * @param t1 time of first sample, J2kSec
+   * @param t2 time of last sample, J2kSec
+   * @return the wave or null if no data is available
+   */
+  private static Wave join(final List<Wave> waves, final double t1, final double t2) {
+    double rate = 0;
+    for (final Wave wave : waves) {
+      if (wave.numSamples() > 0) {
+        rate = wave.getSamplingRate();
+        break;
+      }
+    }
+    if (rate == 0) {
+      return null;
+    }
+
+    final WaveRingBuffer ring = new WaveRingBuffer(rate, t2 - t1 + 2 * CHUNK_S);
+    for (final Wave wave : waves) {
+      if (wave.getSamplingRate() == rate) {
+        ring.add(wave);
+      }
+    }
+    return ring.getWave(t1, t2);
+  }
+
+  /**
+   * Read a chunk through a memory map.
+   *
+   * @param channel channel name
+   * @param chunk chunk number
+   * @return the chunk, or null if it isn't held or has expired
+   */
+  private Wave read(final String channel, final long chunk) {
+    final File file = file(channel, chunk);
+    synchronized (files) {
+      if (files.get(file) == null) {
+        return null;
+      }
+    }
+
+    try {
+      final FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      try {
+        final MappedByteBuffer buffer = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+        if (expiresMs(buffer) <= System.currentTimeMillis()) {
+          return null;
+        }
+        final Wave wave = decode(buffer);
+        file.setLastModified(System.currentTimeMillis());
+        return wave;
+      } finally {
+        fc.close();
+      }
+    } catch (final IOException e) {
+      LOGGER.warn("Cannot read {}. {}", file, e.getLocalizedMessage());
+      forget(file);
+      return null;
+    }
+  }
+
+  /**
+   * Write a chunk, replacing the file so a reader never sees it half written.
+   *
+   * @param channel channel name
+   * @param chunk chunk number
+   * @param wave the chunk's samples
+   * @param expiresMs when to fetch the chunk again, epoch milliseconds
+   */
+  private void write(final String channel, final long chunk, final Wave wave,
+      final long expiresMs) {
+    final File file = file(channel, chunk);
+    final File parent = file.getParentFile();
+    parent.mkdirs();
+    File tmp = null;
+    try {
+      tmp = File.createTempFile("." + file.getName(), ".tmp", parent);
+      final DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+      try {
+        encode(wave, expiresMs, out);
+      } finally {
+        out.close();
+      }
+      try {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (final AtomicMoveNotSupportedException e) {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (final IOException e) {
+      LOGGER.warn("Cannot write {}. {}", file, e.getLocalizedMessage());
+      if (tmp != null) {
+        tmp.delete();
+      }
+      return;
+    }
+    keep(file, file.length());
+  }
+
+  /**
+   * Write a chunk's header and the first differences of its samples.
+   *
+   * @param wave the samples
+   * @param expiresMs when to fetch the chunk again, epoch milliseconds
+   * @param out where to write them
+   * @throws IOException when the samples cannot be written
+   */
+  static void encode(final Wave wave, final long expiresMs, final DataOutputStream out)
+      throws IOException {
+    out.writeInt(MAGIC);
+    out.writeLong(expiresMs);
+    out.writeDouble(wave.getSamplingRate());
+    out.writeLong(Math.round(wave.getStartTime() * wave.getSamplingRate()));
+    out.writeInt(wave.numSamples());
+    long previous = 0;
+    for (final int value : wave.buffer) {
+      final long delta = value - previous;
+      long zigzag = (delta << 1) ^ (delta >> 63);
+      while ((zigzag & ~0x7FL) != 0) {
+        out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+        zigzag >>>= 7;
+      }
+      out.writeByte((int) zigzag);
+      previous = value;
+    }
+  }
+
+  /**
+   * Read when a chunk written by encode expires, leaving the buffer's position alone.
+   *
+   * @param buffer the chunk
+   * @return when to fetch the chunk again, epoch milliseconds
+   * @throws IOException when the chunk is not valid
+   */
+  static long expiresMs(final ByteBuffer buffer) throws IOException {
+    if (buffer.remaining() < 12 || buffer.getInt(buffer.position()) != MAGIC) {
+      throw new IOException("Not a wave chunk");
+    }
+    return buffer.getLong(buffer.position() + 4);
+  }
+
+  /**
+   * Read a chunk written by encode.
+   *
+   * @param buffer the chunk
+   * @return the samples
+   * @throws IOException when the chunk is not valid
+   */
+  static Wave decode(final ByteBuffer buffer) throws IOException {
+    try {
+      if (buffer.getInt() != MAGIC) {
+        throw new IOException("Not a wave chunk");
+      }
+      buffer.getLong();
+      final double rate = buffer.getDouble();
+      final long start = buffer.getLong();
+      final int[] samples = new int[buffer.getInt()];
+      long previous = 0;
+      for (int i = 0; i < samples.length; i++) {
+        long zigzag = 0;
+        int shift = 0;
+        byte b;
+        do {
+          b = buffer.get();
+          zigzag |= (long) (b & 0x7F) << shift;
+          shift += 7;
+        } while ((b & 0x80) != 0);
+        previous += (zigzag >>> 1) ^ -(zigzag & 1);
+        samples[i] = (int) previous;
+      }
+      return new Wave(samples, start / rate, rate);
+    } catch (final RuntimeException e) {
+      throw new IOException("Truncated wave chunk", e);
+    }
+  }
+
+  /**
+   * Return the file holding a chunk.
+   *
+   * @param channel channel name
+   * @param chunk chunk number
+   * @return the file
+   */
+  private File file(final String channel, final long chunk) {
+    return new File(new File(dir, channel.replaceAll("[^\\w.-]", "_")), chunk + SUFFIX);
+  }
+
+  /**
+   * Note a file written and remove the least recently used files until I'm within my limit.
+   *
+   * @param file the file
+   * @param length its size in bytes
+   */
+  private void keep(final File file, final long length) {
+    final List<File> evicted = new ArrayList<File>();
+    synchronized (files) {
+      final Long old = files.put(file, length);
+      bytes += length - (old == null ? 0 : old);
+      final Iterator<Map.Entry<File, Long>> it = files.entrySet().iterator();
+      while (bytes > maxBytes && it.hasNext()) {
+        final Map.Entry<File, Long> eldest = it.next();
+        if (eldest.getKey().equals(file)) {
+          continue;
+        }
+        bytes -= eldest.getValue();
+        evicted.add(eldest.getKey());
+        it.remove();
+      }
+    }
+    for (final File f : evicted) {
+      f.delete();
+    }
+  }
+
+  /**
+   * Stop tracking a file which cannot be read, and remove it.
+   *
+   * @param file the file
+   */
+  private void forget(final File file) {
+    synchronized (files) {
+      final Long length = files.remove(file);
+      if (length != null) {
+        bytes -= length;
+      }
+    }
+    file.delete();
+  }
+
+  /**
+   * Find files kept by an earlier run, oldest first.
+   */
+  private void scan() {
+    final List<File> found = new ArrayList<File>();
+    final File[] channels = dir.listFiles();
+    if (channels != null) {
+      for (final File channel : channels) {
+        final File[] chunks = channel.listFiles();
+        if (chunks == null) {
+          continue;
+        }
+        for (final File chunk : chunks) {
+          if (chunk.getName().endsWith(SUFFIX)) {
+            found.add(chunk);
+          } else if (chunk.getName().endsWith(".tmp")) {
+            chunk.delete();
+          }
+        }
+      }
+    }
+
+    Collections.sort(found, new Comparator<File>() {
+      public int compare(final File a, final File b) {
+        return Long.compare(a.lastModified(), b.lastModified());
+      }
+    });
+    for (final File file : found) {
+      keep(file, file.length());
+    }
+    LOGGER.info("Found {} wave chunks ({} MB) in {}", files.size(), bytes / (1024 * 1024), dir);
+  }
+
+  /**
+   * Wrap a source so that its requests are satisfied by me when possible.
+   *
+   * @param source where to get missing chunks
+   * @return a WaveFetcher which consults me first
+   */
+  public WaveFetcher wrap(final WaveFetcher source) {
+    return new WaveFetcher() {
+      public Wave getWave(final String channel, final double t1, final double t2) {
+        return DiskWaveCache.this.getWave(channel, t1, t2, source);
+      }
+    };
+  }
+}
@@ -0,0 +1,186 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.wave;
+
+import gov.usgs.plot.data.Wave;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request waves from redundant wave servers, asking the next server only when the last one asked
+ * is slow to answer. A server is slow once it has taken longer than a percentile of its recent
+ * latencies. The first answer holding data wins; an answer without data sends the request on at
+ * once. Servers are asked in the order given, except that a server which has lately been faster
+ * than the first is asked first.
+ *
+ * @author Tom Parker
+ */
+public class HedgedFetcher implements WaveFetcher {
+
+  /** my logger. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(HedgedFetcher.class);
+
+  /** default latency percentile after which the next server is asked. */
+  public static final double DEFAULT_HEDGE_PERCENTILE = 95;
+
+  /** nanoseconds to wait before asking the next server when too little is known of the last. */
+  private static final long DEFAULT_HEDGE_DELAY_NS = TimeUnit.SECONDS.toNanos(2);
+
+  /** servers in the order given. */
+  private final List<Server> servers;
+
+  private final double percentile;
+
+  /** where requests are made. */
+  private final ExecutorService executor;
+
+  /**
+   * Class constructor.
+   *
+   * @param percentile latency percentile after which the next server is asked
+   * @param executor where requests are made
+   */
+  public HedgedFetcher(final double percentile, final ExecutorService executor) {
+    this.percentile = percentile;
+    this.executor = executor;
+    servers = new ArrayList<Server>();
+  }
+
+  /**
+   * Add a server, after any already added.
+   *
+   * @param name server name
+   * @param source where to get waves from the server
+   * @param stats the server's recent latencies
+   */
+  public void add(final String name, final WaveFetcher source, final LatencyStats stats) {
+    servers.add(new Server(name, source, stats));
+  }
+
+  /**
+   * Retrieve a wave from whichever server answers first with data.
+   *
+   * @param channel channel name
+   * @param t1 time of first sample, J2kSec
+   * @param t2 time of last sample, J2kSec
+   * @return the wave or null if no server has data
+   */
+  public Wave getWave(final String channel, final double t1, final double t2) {
+    final List<Server> order = order();
+    final CompletionService<Wave> requests = new ExecutorCompletionService<Wave>(executor);
+    final List<Future<Wave>> futures = new ArrayList<Future<Wave>>();
+    int answered = 0;
+    try {
+      futures.add(requests.submit(order.get(0).request(channel, t1, t2)));
+      while (answered < futures.size()) {
+        Future<Wave> answer;
+        if (futures.size() < order.size()) {
+          final Server last = order.get(futures.size() - 1);
+          answer = requests.poll(hedgeDelayNs(last), TimeUnit.NANOSECONDS);
+          if (answer == null) {
+            final Server server = order.get(futures.size());
+            LOGGER.debug("{} is slow with {}. Asking {}.", last.name, channel, server.name);
+            futures.add(requests.submit(server.request(channel, t1, t2)));
+            continue;
+          }
+        } else {
+          answer = requests.take();
+        }
+
+        answered++;
+        final Wave wave = get(answer);
+        if (wave != null && wave.numSamples() > 0) {
+          return wave;
+        }
+        if (answered == futures.size() && futures.size() < order.size()) {
+          futures.add(requests.submit(order.get(futures.size()).request(channel, t1, t2)));
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      for (final Future<Wave> future : futures) {
+        future.cancel(false);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Order servers for a request.
+   *
+   * @return servers, first to ask first
+   */
+  private List<Server> order() {
+    final List<Server> order = new ArrayList<Server>(servers);
+    final long firstMedian = order.get(0).stats.percentile(50);
+    if (firstMedian < 0) {
+      return order;
+    }
+
+    Server fastest = order.get(0);
+    long fastestMedian = firstMedian;
+    for (final Server server : order) {
+      final long median = server.stats.percentile(50);
+      if (median >= 0 && median < fastestMedian) {
+        fastest = server;
+        fastestMedian = median;
+      }
+    }
+    order.remove(fastest);
+    order.add(0, fastest);
+    return order;
+  }
+
+  private long hedgeDelayNs(final Server server) {
+    final long delayNs = server.stats.percentile(percentile);
+    return delayNs < 0 ? DEFAULT_HEDGE_DELAY_NS : delayNs;
+  }
+
+  private static Wave get(final Future<Wave> answer) throws InterruptedException {
+    try {
+      return answer.get();
+    } catch (final ExecutionException e) {
+      LOGGER.debug("Hedged request failed. {}", e.getCause().getLocalizedMessage());
+      return null;
+    }
+  }
+
+  /**
+   * A server which may be asked for waves.
+   */
+  private static final class Server {
+    private final String name;
+    private final WaveFetcher source;
+    private final LatencyStats stats;
+
+    private Server(final String name, final WaveFetcher source, final LatencyStats stats) {
+      this.name = name;
+      this.source = source;
+      this.stats = stats;
+    }
+
+    private Callable<Wave> request(final String channel, final double t1, final double t2) {
+      return new Callable<Wave>() {
+        public Wave call() {
+          return source.getWave(channel, t1, t2);
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.wave;
+
+import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of the most recent requests made of a wave server. Each is remembered per plot's worth
+ * of data asked for, so long back-fill requests do not skew the latency expected of a realtime
+ * request.
+ *
+ * @author Tom Parker
+ */
+public class LatencyStats {
+
+  /** number of requests remembered. */
+  public static final int WINDOW = 100;
+
+  /** fewest requests from which a percentile is given. */
+  public static final int MIN_SAMPLES = 20;
+
+  /** latencies in nanoseconds, oldest overwritten first. */
+  private final long[] latencies;
+
+  private int count;
+  private int next;
+
+  /**
+   * Class constructor.
+   */
+  public LatencyStats() {
+    latencies = new long[WINDOW];
+  }
+
+  /**
+   * Remember a request.
+   *
+   * @param latencyNs time taken by the request
+   * @param seconds span of data requested
+   */
+  public synchronized void record(final long latencyNs, final double seconds) {
+    final double plots = Math.max(1, seconds / SubnetPlotter.DURATION_S);
+    latencies[next] = (long) (latencyNs / plots);
+    next = (next + 1) % latencies.length;
+    count = Math.min(count + 1, latencies.length);
+  }
+
+  /**
+   * Find a percentile of recent latencies.
+   *
+   * @param percentile percentile, 0 to 100
+   * @return latency in nanoseconds for one plot's worth of data, or -1 if too few requests have
+   *         been made
+   */
+  public synchronized long percentile(final double percentile) {
+    if (count < MIN_SAMPLES) {
+      return -1;
+    }
+
+    final long[] sorted = Arrays.copyOf(latencies, count);
+    Arrays.sort(sorted);
+    final int index = (int) Math.ceil(percentile / 100 * count) - 1;
+    return sorted[Math.max(0, Math.min(count - 1, index))];
+  }
+}
@@ -0,0 +1,141 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.wave;
+
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keep the most recent few plot windows of every channel in memory so each realtime cycle only
+ * needs to ask the wave server for samples newer than those already held. Requests start a little
+ * before the newest sample held to pick up samples which arrived late.
+ *
+ * @author Tom Parker
+ */
+public class RealtimeWaveBuffer {
+
+  /** my logger. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(RealtimeWaveBuffer.class);
+
+  /** default number of plot windows to hold. */
+  public static final int DEFAULT_WINDOWS = 2;
+
+  /** default number of seconds to re-request before the newest sample held. */
+  public static final int DEFAULT_OVERLAP_S = 30;
+
+  /** seconds of data held for each channel. */
+  private final double durationS;
+
+  /** seconds to re-request before the newest sample held. */
+  private final double overlapS;
+
+  /** one buffer per channel. */
+  private final Map<String, ChannelBuffer> channels;
+
+  /**
+   * Class constructor.
+   *
+   * @param config my wave source config stanza
+   */
+  public RealtimeWaveBuffer(final ConfigFile config) {
+    final int windows = Math.max(2, config.getInt("ringBufferWindows", DEFAULT_WINDOWS));
+    durationS = windows * SubnetPlotter.DURATION_S;
+    overlapS = config.getInt("ringBufferOverlap", DEFAULT_OVERLAP_S);
+    channels = new HashMap<String, ChannelBuffer>();
+  }
+
+  /**
+   * Retrieve a wave, asking the source only for samples I don't already hold. Requests reaching
+   * further back than I hold samples are passed straight to the source.
+   *
+   * @param channel channel name
+   * @param t1 time of first sample, J2kSec
+   * @param t2 time of last sample, J2kSec
+   * @param source where to get samples I don't have
+   * @return the wave or null if no data is available
+   */
+  public Wave getWave(final String channel, final double t1, final double t2,
+      final WaveFetcher source) {
+    ChannelBuffer channelBuffer;
+    synchronized (channels) {
+      channelBuffer = channels.get(channel);
+      if (channelBuffer == null) {
+        channelBuffer = new ChannelBuffer();
+        channels.put(channel, channelBuffer);
+      }
+    }
+
+    synchronized (channelBuffer) {
+      WaveRingBuffer ring = channelBuffer.ring;
+      if (isTooOld(ring, t1, t2)) {
+        return source.getWave(channel, t1, t2);
+      }
+
+      double fetchStart = t1;
+      if (ring != null && ring.getStartTime() <= t1 + 1 / ring.getSamplingRate()) {
+        fetchStart = Math.max(t1, ring.getEndTime() - overlapS);
+      }
+
+      if (fetchStart < t2) {
+        final Wave wave = source.getWave(channel, fetchStart, t2);
+        if (wave != null && wave.numSamples() > 0) {
+          if (ring == null || ring.getSamplingRate() != wave.getSamplingRate()) {
+            ring = new WaveRingBuffer(wave.getSamplingRate(), durationS);
+            channelBuffer.ring = ring;
+          }
+          ring.add(wave);
+          LOGGER.debug("Buffered {} samples of {}", wave.numSamples(), channel);
+        }
+      }
+
+      return ring == null ? null : ring.getWave(t1, t2);
+    }
+  }
+
+  /**
+   * Check if a request reaches further back than I can hold.
+   *
+   * @param ring samples held for the channel, or null if none are held
+   * @param t1 time of first sample, J2kSec
+   * @param t2 time of last sample, J2kSec
+   * @return true if the request should go straight to the source
+   */
+  private boolean isTooOld(final WaveRingBuffer ring, final double t1, final double t2) {
+    if (t2 - t1 > durationS) {
+      return true;
+    }
+    return ring != null && t1 < ring.getEndTime() - durationS;
+  }
+
+  /**
+   * Wrap a source so that its requests are satisfied by me when possible.
+   *
+   * @param source where to get samples I don't have
+   * @return a WaveFetcher which consults me first
+   */
+  public WaveFetcher wrap(final WaveFetcher source) {
+    return new WaveFetcher() {
+      public Wave getWave(final String channel, final double t1, final double t2) {
+        return RealtimeWaveBuffer.this.getWave(channel, t1, t2, source);
+      }
+    };
+  }
+
+  /**
+   * Ring buffer for a single channel, replaced if the channel's sampling rate changes.
+   */
+  private static final class ChannelBuffer {
+    private WaveRingBuffer ring;
+  }
+}
@@ -0,0 +1,184 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.wave;
+
+import gov.usgs.plot.data.Wave;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hold waves requested by more than one subnet during a single plot interval. Each subnet
+ * subscribes to the waves it will need when its plot job is scheduled and releases them once it
+ * has been rendered. The first subscriber to ask for a wave retrieves it, everyone else gets a copy.
+ *
+ * @author Tom Parker
+ */
+public class SharedWaveCache {
+
+  /** my logger. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(SharedWaveCache.class);
+
+  /** Waves with at least one subscriber. */
+  private final Map<Key, Entry> entries;
+
+  /**
+   * Class constructor.
+   */
+  public SharedWaveCache() {
+    entries = new HashMap<Key, Entry>();
+  }
+
+  /**
+   * Register interest in a wave.
+   *
+   * @param channel channel name
+   * @param t1 time of first sample, J2kSec
+   * @param t2 time of last sample, J2kSec
+   */
+  public synchronized void subscribe(final String channel, final double t1, final double t2) {
+    final Key key = new Key(channel, t1, t2);
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      entry = new Entry();
+      entries.put(key, entry);
+    }
+    entry.subscribers++;
+  }
+
+  /**
+   * Withdraw interest in a wave. The wave is dropped once its last subscriber has released it.
+   *
+   * @param channel channel name
+   * @param t1 time of first sample, J2kSec
+   * @param t2 time of last sample, J2kSec
+   */
+  public synchronized void release(final String channel, final double t1, final double t2) {
+    final Key key = new Key(channel, t1, t2);
+    final Entry entry = entries.get(key);
+    if (entry == null) {
+      return;
+    }
+
+    entry.subscribers--;
+    if (entry.subscribers < 1) {
+      entries.remove(key);
+    }
+  }
+
+  /**
+   * Return the count of waves currently held.
+   *
+   * @return count of waves
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Retrieve a wave, asking the source only if no other subscriber has already done so. Waves
+   * nobody subscribed to are passed straight through.
+   *
+   * @param channel channel name
+   * @param t1 time of first sample, J2kSec
+   * @param t2 time of last sample, J2kSec
+   * @param source where to get the wave if I don't have it
+   * @return a private copy of the wave or null if no data is available
+   */
+  public Wave getWave(final String channel, final double t1, final double t2,
+      final WaveFetcher source) {
+    final Entry entry;
+    synchronized (this) {
+      entry = entries.get(new Key(channel, t1, t2));
+    }
+
+    if (entry == null) {
+      return source.getWave(channel, t1, t2);
+    }
+
+    synchronized (entry) {
+      if (entry.fetched) {
+        LOGGER.debug("Using shared wave for {}", channel);
+      } else {
+        entry.wave = source.getWave(channel, t1, t2);
+        entry.fetched = true;
+      }
+      return copy(entry.wave);
+    }
+  }
+
+  /**
+   * Wrap a source so that its requests are satisfied by me when possible.
+   *
+   * @param source where to get waves I don't have
+   * @return a WaveFetcher which consults me first
+   */
+  public WaveFetcher wrap(final WaveFetcher source) {
+    return new WaveFetcher() {
+      public Wave getWave(final String channel, final double t1, final double t2) {
+        return SharedWaveCache.this.getWave(channel, t1, t2, source);
+      }
+    };
+  }
+
+  /**
+   * Copy a wave so subscribers are free to modify theirs.
+   *
+   * @param wave wave to copy, may be null
+   * @return a copy of the wave
+   */
+  private static Wave copy(final Wave wave) {
+    if (wave == null) {
+      return null;
+    }
+    return new Wave(wave.buffer.clone(), wave.getStartTime(), wave.getSamplingRate());
+  }
+
+  /**
+   * A wave request.
+   */
+  private static final class Key {
+    private final String channel;
+    private final double t1;
+    private final double t2;
+
+    private Key(final String channel, final double t1, final double t2) {
+      this.channel = channel;
+      this.t1 = t1;
+      this.t2 = t2;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return channel.equals(other.channel) && t1 == other.t1 && t2 == other.t2;
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = channel.hashCode();
+      hash = 31 * hash + Double.valueOf(t1).hashCode();
+      hash = 31 * hash + Double.valueOf(t2).hashCode();
+      return hash;
+    }
+  }
+
+  /**
+   * A shared wave and its subscribers.
+   */
+  private static final class Entry {
+    private int subscribers;
+    private boolean fetched;
+    private Wave wave;
+  }
+}
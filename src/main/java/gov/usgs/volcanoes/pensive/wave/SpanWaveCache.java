@@ -0,0 +1,214 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.wave;
+
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+import gov.usgs.volcanoes.core.time.J2kSec;
+import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Satisfy backfill requests from long spans of each channel, fetched in a single request. Spans
+ * are aligned to multiples of their length, and each channel holds its newest span plus a margin
+ * before it, so padded requests running across a span boundary are served from memory too.
+ * Requests for spans which may still be filling, or which I no longer hold, are passed through, as
+ * are requests when a span couldn't be fetched. Channels unused for an hour are released, and the
+ * least recently used channels are released while my spans take more than their share of memory.
+ *
+ * @author Tom Parker
+ */
+public class SpanWaveCache {
+
+  /** my logger. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(SpanWaveCache.class);
+
+  /** default span length in seconds. Zero disables spans. */
+  public static final int DEFAULT_SPAN_S = 0;
+
+  /** default megabytes of spans held for all channels. */
+  public static final int DEFAULT_SPAN_MEMORY = 1024;
+
+  /** milliseconds a channel may go unused before its spans are released. */
+  private static final long IDLE_MS = 60 * 60 * 1000;
+
+  /** seconds of the previous span held, room for a plot and its padding. */
+  private static final double MARGIN_S = 2 * SubnetPlotter.DURATION_S;
+
+  /** seconds in each span. */
+  private final double spanS;
+
+  /** most bytes of spans held for all channels. */
+  private final long maxBytes;
+
+  /** spans held for each channel, least recently used first. */
+  private final Map<String, ChannelSpans> channels;
+
+  /**
+   * Class constructor.
+   *
+   * @param config my wave source config stanza
+   */
+  public SpanWaveCache(final ConfigFile config) {
+    spanS = Math.max(SubnetPlotter.DURATION_S, config.getInt("backfillSpan", DEFAULT_SPAN_S));
+    maxBytes = config.getInt("backfillSpanMemory", DEFAULT_SPAN_MEMORY) * 1024L * 1024L;
+    channels = new LinkedHashMap<String, ChannelSpans>(16, 0.75f, true);
+  }
+
+  /**
+   * Check if spans are requested in a config stanza.
+   *
+   * @param config wave source config stanza
+   * @return true if spans are requested
+   */
+  public static boolean isEnabled(final ConfigFile config) {
+    return config.getInt("backfillSpan", DEFAULT_SPAN_S) > 0;
+  }
+
+  /**
+   * Retrieve a wave, fetching whole spans containing it if I don't already hold them.
+   *
+   * @param channel channel name
+   * @param t1 time of first sample, J2kSec
+   * @param t2 time of last sample, J2kSec
+   * @param source where to get spans
+   * @return the wave or null if no data is available
+   */
+  public Wave getWave(final String channel, final double t1, final double t2,
+      final WaveFetcher source) {
+    final long first = (long) Math.floor(t1 / spanS);
+    final long last = (long) Math.ceil(t2 / spanS) - 1;
+    final double settled = J2kSec.fromEpoch(System.currentTimeMillis()) - SubnetPlotter.DURATION_S;
+    if (last - first > 1 || (last + 1) * spanS > settled) {
+      return source.getWave(channel, t1, t2);
+    }
+
+    ChannelSpans spans;
+    synchronized (channels) {
+      spans = channels.get(channel);
+      if (spans == null) {
+        spans = new ChannelSpans();
+        channels.put(channel, spans);
+      }
+      spans.lastUsedMs = System.currentTimeMillis();
+      evict(spans);
+    }
+
+    synchronized (spans) {
+      final long next = spans.newest == Long.MIN_VALUE ? first : Math.max(first, spans.newest + 1);
+      for (long span = next; span <= last; span++) {
+        if (!load(channel, spans, span, source)) {
+          return source.getWave(channel, t1, t2);
+        }
+      }
+
+      if (t1 < spans.heldFrom) {
+        return source.getWave(channel, t1, t2);
+      }
+      return spans.ring == null ? null : spans.ring.getWave(t1, t2);
+    }
+  }
+
+  /**
+   * Fetch a span, pushing out all but the end of the span before it. The span is held only if the
+   * source answered.
+   *
+   * @param channel channel name
+   * @param spans spans held for the channel
+   * @param span span number
+   * @param source where to get the span
+   * @return true if the span is held, false if it couldn't be fetched
+   */
+  private boolean load(final String channel, final ChannelSpans spans, final long span,
+      final WaveFetcher source) {
+    final double start = span * spanS;
+    final Wave wave = source.getWave(channel, start, start + spanS);
+    if (wave == null) {
+      LOGGER.debug("Cannot fetch span of {} at {}", channel, start);
+      return false;
+    }
+
+    final double heldFrom = start - MARGIN_S;
+    spans.heldFrom = span == spans.newest + 1 ? Math.max(spans.heldFrom, heldFrom) : start;
+    spans.newest = span;
+    if (wave.numSamples() == 0) {
+      return true;
+    }
+
+    if (spans.ring == null || spans.ring.getSamplingRate() != wave.getSamplingRate()) {
+      spans.ring = new WaveRingBuffer(wave.getSamplingRate(), spanS + MARGIN_S);
+      spans.bytes = (long) (4 * wave.getSamplingRate() * (spanS + MARGIN_S));
+      spans.heldFrom = start;
+    }
+    spans.ring.add(wave);
+    LOGGER.debug("Fetched {} samples of {} in one span", wave.numSamples(), channel);
+    return true;
+  }
+
+  /**
+   * Release channels unused for a while, then the least recently used channels while my spans take
+   * more than their share of memory. Call with my channels locked.
+   *
+   * @param keep the channel about to be used
+   */
+  private void evict(final ChannelSpans keep) {
+    long bytes = 0;
+    for (final ChannelSpans spans : channels.values()) {
+      bytes += spans.bytes;
+    }
+
+    final long idleSince = System.currentTimeMillis() - IDLE_MS;
+    final Iterator<ChannelSpans> it = channels.values().iterator();
+    while (it.hasNext()) {
+      final ChannelSpans spans = it.next();
+      if (spans == keep || spans.lastUsedMs > idleSince && bytes <= maxBytes) {
+        break;
+      }
+      bytes -= spans.bytes;
+      it.remove();
+    }
+  }
+
+  /**
+   * Wrap a source so that its requests are satisfied by me when possible.
+   *
+   * @param source where to get spans
+   * @return a WaveFetcher which consults me first
+   */
+  public WaveFetcher wrap(final WaveFetcher source) {
+    return new WaveFetcher() {
+      public Wave getWave(final String channel, final double t1, final double t2) {
+        return SpanWaveCache.this.getWave(channel, t1, t2, source);
+      }
+    };
+  }
+
+  /**
+   * Spans held for a single channel.
+   */
+  private static final class ChannelSpans {
+    private WaveRingBuffer ring;
+
+    /** bytes held by my ring. */
+    private volatile long bytes;
+
+    /** when I was last asked for a wave, epoch milliseconds. Guarded by the channel map. */
+    private long lastUsedMs;
+
+    /** number of newest span fetched. */
+    private long newest = Long.MIN_VALUE;
+
+    /** time from which every span fetched is still held, J2kSec. */
+    private double heldFrom = Double.POSITIVE_INFINITY;
+  }
+}
@@ -0,0 +1,105 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.wave;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket refilled at a steady rate and holding at most one second's worth of tokens.
+ * Takers may overdraw the bucket; each taker then waits until its share of the debt has been
+ * repaid, so callers are served in turn at the configured rate.
+ *
+ * @author Tom Parker
+ */
+public class TokenBucket {
+
+  private static final double NS_PER_S = 1e9;
+
+  /** tokens added per second. Zero or less means unlimited. */
+  private double rate;
+
+  /** tokens available, negative when overdrawn. */
+  private double tokens;
+
+  /** time of last refill. */
+  private long refilledNs;
+
+  /**
+   * Class constructor.
+   *
+   * @param rate tokens added per second, zero or less for unlimited
+   */
+  public TokenBucket(final double rate) {
+    this.rate = rate;
+    tokens = Math.max(0, rate);
+    refilledNs = System.nanoTime();
+  }
+
+  /**
+   * Return my rate.
+   *
+   * @return tokens added per second, zero or less for unlimited
+   */
+  public synchronized double getRate() {
+    return rate;
+  }
+
+  /**
+   * Change my rate. Takes effect for the next taker.
+   *
+   * @param rate tokens added per second, zero or less for unlimited
+   */
+  public synchronized void setRate(final double rate) {
+    refill();
+    this.rate = rate;
+    if (rate <= 0) {
+      tokens = 0;
+    } else {
+      tokens = Math.min(tokens, rate);
+    }
+  }
+
+  /**
+   * Take tokens, waiting until the bucket is no longer overdrawn. Taking zero tokens just waits
+   * for earlier debts to be repaid.
+   *
+   * @param count tokens to take
+   * @throws InterruptedException when interrupted while waiting
+   */
+  public void take(final double count) throws InterruptedException {
+    final long waitNs;
+    synchronized (this) {
+      if (rate <= 0) {
+        return;
+      }
+      refill();
+      tokens -= count;
+      waitNs = tokens < 0 ? (long) (-tokens / rate * NS_PER_S) : 0;
+    }
+    TimeUnit.NANOSECONDS.sleep(waitNs);
+  }
+
+  /**
+   * Take tokens without waiting. Whoever takes next waits for any debt to be repaid.
+   *
+   * @param count tokens to take
+   */
+  public synchronized void charge(final double count) {
+    if (rate > 0) {
+      refill();
+      tokens -= count;
+    }
+  }
+
+  private void refill() {
+    final long now = System.nanoTime();
+    if (rate > 0) {
+      tokens = Math.min(rate, tokens + (now - refilledNs) / NS_PER_S * rate);
+    }
+    refilledNs = now;
+  }
+}
@@ -0,0 +1,27 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.wave;
+
+import gov.usgs.plot.data.Wave;
+
+/**
+ * Something which can provide wave data for a single channel.
+ *
+ * @author Tom Parker
+ */
+public interface WaveFetcher {
+
+  /**
+   * Retrieve a wave.
+   *
+   * @param channel channel name, as understood by the wave server
+   * @param t1 time of first sample, J2kSec
+   * @param t2 time of last sample, J2kSec
+   * @return the wave or null if no data is available
+   */
+  Wave getWave(String channel, double t1, double t2);
+}
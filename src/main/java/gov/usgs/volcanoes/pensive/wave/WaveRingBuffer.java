@@ -0,0 +1,165 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.wave;
+
+import gov.usgs.plot.data.Wave;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size circular buffer of samples from a single channel. Samples are addressed by their
+ * absolute sample number, the sample time multiplied by the sampling rate, so overlapping waves
+ * land on the same slots and late samples can fill holes left by earlier requests.
+ *
+ * @author Tom Parker
+ */
+public class WaveRingBuffer {
+
+  /** my samples. */
+  private final int[] buffer;
+
+  /** sampling rate of every sample I hold. */
+  private final double samplingRate;
+
+  /** sample number of oldest sample held. */
+  private long firstSample;
+
+  /** sample number of newest sample held. */
+  private long lastSample;
+
+  /** true until the first sample arrives. */
+  private boolean empty;
+
+  /**
+   * Class constructor.
+   *
+   * @param samplingRate sampling rate of my channel
+   * @param durationS seconds of data to hold
+   */
+  public WaveRingBuffer(final double samplingRate, final double durationS) {
+    this.samplingRate = samplingRate;
+    buffer = new int[(int) Math.ceil(durationS * samplingRate) + 1];
+    empty = true;
+  }
+
+  /**
+   * Sampling rate accessor.
+   *
+   * @return my sampling rate
+   */
+  public double getSamplingRate() {
+    return samplingRate;
+  }
+
+  /**
+   * Return the time of my oldest sample.
+   *
+   * @return time of oldest sample, J2kSec, or NaN if I'm empty
+   */
+  public synchronized double getStartTime() {
+    return empty ? Double.NaN : firstSample / samplingRate;
+  }
+
+  /**
+   * Return the time of my newest sample.
+   *
+   * @return time of newest sample, J2kSec, or NaN if I'm empty
+   */
+  public synchronized double getEndTime() {
+    return empty ? Double.NaN : lastSample / samplingRate;
+  }
+
+  /**
+   * Add samples. Samples older than my capacity are ignored, samples newer than my newest sample
+   * push old samples out.
+   *
+   * @param wave samples to add
+   */
+  public synchronized void add(final Wave wave) {
+    long sample = Math.round(wave.getStartTime() * samplingRate);
+    for (final int value : wave.buffer) {
+      put(sample++, value);
+    }
+  }
+
+  /**
+   * Put a single sample.
+   *
+   * @param sample sample number
+   * @param value sample value
+   */
+  private void put(final long sample, final int value) {
+    if (value == Wave.NO_DATA) {
+      return;
+    }
+
+    if (empty) {
+      Arrays.fill(buffer, Wave.NO_DATA);
+      firstSample = sample;
+      lastSample = sample;
+      buffer[index(sample)] = value;
+      empty = false;
+    } else if (sample > lastSample) {
+      for (long s = Math.max(lastSample + 1, sample - buffer.length + 1); s < sample; s++) {
+        buffer[index(s)] = Wave.NO_DATA;
+      }
+      buffer[index(sample)] = value;
+      lastSample = sample;
+      firstSample = Math.max(firstSample, lastSample - buffer.length + 1);
+    } else if (sample >= firstSample) {
+      buffer[index(sample)] = value;
+    } else if (sample > lastSample - buffer.length) {
+      for (long s = sample + 1; s < firstSample; s++) {
+        buffer[index(s)] = Wave.NO_DATA;
+      }
+      buffer[index(sample)] = value;
+      firstSample = sample;
+    }
+  }
+
+  /**
+   * Return the samples I hold for a time span, trimmed to the first and last sample with data.
+   *
+   * @param t1 start time, J2kSec
+   * @param t2 end time, J2kSec
+   * @return a new wave or null if I have no data in the span
+   */
+  public synchronized Wave getWave(final double t1, final double t2) {
+    if (empty) {
+      return null;
+    }
+
+    long first = Math.max(Math.round(t1 * samplingRate), firstSample);
+    long last = Math.min(Math.round(t2 * samplingRate), lastSample);
+    while (first <= last && buffer[index(first)] == Wave.NO_DATA) {
+      first++;
+    }
+    while (last >= first && buffer[index(last)] == Wave.NO_DATA) {
+      last--;
+    }
+    if (first > last) {
+      return null;
+    }
+
+    final int[] samples = new int[(int) (last - first + 1)];
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = buffer[index(first + i)];
+    }
+    return new Wave(samples, first / samplingRate, samplingRate);
+  }
+
+  /**
+   * Map a sample number to a slot in my buffer.
+   *
+   * @param sample sample number
+   * @return buffer index
+   */
+  private int index(final long sample) {
+    final int idx = (int) (sample % buffer.length);
+    return idx < 0 ? idx + buffer.length : idx;
+  }
+}
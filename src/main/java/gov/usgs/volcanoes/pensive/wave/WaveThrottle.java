@@ -0,0 +1,120 @@
+/**
+ * I waive copyright and related rights in the this work worldwide
+ * through the CC0 1.0 Universal public domain dedication.
+ * https://creativecommons.org/publicdomain/zero/1.0/legalcode
+ */
+
+package gov.usgs.volcanoes.pensive.wave;
+
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+
+/**
+ * Limit the requests and samples per second asked of a wave server. Request tokens are taken
+ * before each request; sample tokens are charged once the size of the reply is known, delaying
+ * the following requests.
+ *
+ * @author Tom Parker
+ */
+public class WaveThrottle {
+
+  /** default requests per second. Zero is unlimited. */
+  public static final double DEFAULT_REQUEST_RATE = 0;
+
+  /** default samples per second. Zero is unlimited. */
+  public static final double DEFAULT_SAMPLE_RATE = 0;
+
+  private final TokenBucket requests;
+  private final TokenBucket samples;
+
+  /**
+   * Class constructor.
+   *
+   * @param config my wave source config stanza
+   */
+  public WaveThrottle(final ConfigFile config) {
+    requests = new TokenBucket(config.getDouble("backfillRequestRate", DEFAULT_REQUEST_RATE));
+    samples = new TokenBucket(config.getDouble("backfillSampleRate", DEFAULT_SAMPLE_RATE));
+  }
+
+  /**
+   * Wait for a turn to make a request.
+   *
+   * @throws InterruptedException when interrupted while waiting
+   */
+  public void beforeRequest() throws InterruptedException {
+    samples.take(0);
+    requests.take(1);
+  }
+
+  /**
+   * Charge for the samples returned by a request. The next request waits for them to be repaid.
+   *
+   * @param count number of samples returned
+   */
+  public void afterRequest(final int count) {
+    samples.charge(count);
+  }
+
+  /**
+   * Wrap a source so that its requests wait for me. A request interrupted while waiting is not
+   * made.
+   *
+   * @param source where to get waves
+   * @return a WaveFetcher which is limited by me
+   */
+  public WaveFetcher wrap(final WaveFetcher source) {
+    return new WaveFetcher() {
+      public Wave getWave(final String channel, final double t1, final double t2) {
+        try {
+          beforeRequest();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return null;
+        }
+
+        final Wave wave = source.getWave(channel, t1, t2);
+        if (wave != null) {
+          afterRequest(wave.numSamples());
+        }
+        return wave;
+      }
+    };
+  }
+
+  /**
+   * Return the request limit.
+   *
+   * @return requests per second, zero or less for unlimited
+   */
+  public double getRequestRate() {
+    return requests.getRate();
+  }
+
+  /**
+   * Change the request limit.
+   *
+   * @param rate requests per second, zero or less for unlimited
+   */
+  public void setRequestRate(final double rate) {
+    requests.setRate(rate);
+  }
+
+  /**
+   * Return the sample limit.
+   *
+   * @return samples per second, zero or less for unlimited
+   */
+  public double getSampleRate() {
+    return samples.getRate();
+  }
+
+  /**
+   * Change the sample limit.
+   *
+   * @param rate samples per second, zero or less for unlimited
+   */
+  public void setSampleRate(final double rate) {
+    samples.setRate(rate);
+  }
+}
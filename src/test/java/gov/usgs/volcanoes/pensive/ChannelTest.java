@@ -0,0 +1,120 @@
+package gov.usgs.volcanoes.pensive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+import gov.usgs.volcanoes.core.time.J2kSec;
+import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ChannelTest {
+
+    private static final double SAMPLING_RATE = 50;
+
+    /** 2015-10-11 00:00 UTC */
+    private static final long PLOT_END = 1444521600000L;
+
+    private static final long DURATION_MS = SubnetPlotter.DURATION_S * 1000;
+
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    File pathRoot;
+    ConfigFile config;
+    Channel channel;
+
+    @Before
+    public void setup() throws IOException {
+        pathRoot = File.createTempFile("pensive", "");
+        pathRoot.delete();
+        config = new ConfigFile();
+        config.put("pathRoot", pathRoot.getPath());
+        config.put("writeData", "true");
+        config.put("filePathFormat", "yyyy/DDD");
+        channel = new Channel("STA_EHZ_AV", 0, new Dimension(576, 100), new Dimension(150, 25),
+                false, config, "net", "test");
+    }
+
+    @After
+    public void tearDown() {
+        channel.close();
+        delete(pathRoot);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static Wave wave(long plotEndMs) {
+        int[] samples = new int[(int) (SubnetPlotter.DURATION_S * SAMPLING_RATE)];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (int) (1000 * Math.sin(2 * Math.PI * 5 * i / SAMPLING_RATE));
+        }
+        double start = J2kSec.fromEpoch(plotEndMs) - SubnetPlotter.DURATION_S;
+        return new Wave(samples, start, SAMPLING_RATE);
+    }
+
+    @Test
+    public void storesDataOnlyInBinary() {
+        assertTrue(Channel.storesData(config));
+        config.put("dataFormat", "csv");
+        assertEquals(false, Channel.storesData(config));
+        assertEquals(false, Channel.storesData(new ConfigFile()));
+    }
+
+    @Test
+    public void restoreStoredPlot() {
+        ChannelPlot prepared = channel.prepare(PLOT_END, wave(PLOT_END));
+        assertNotNull(prepared.spectra);
+
+        ChannelPlot restored = channel.restore(PLOT_END);
+        assertNotNull(restored);
+        assertNotNull(restored.spectra);
+        assertEquals(prepared.spectra.getBinCount(), restored.spectra.getBinCount());
+        assertEquals(prepared.spectra.getMinFreq(), restored.spectra.getMinFreq(), 1e-6);
+        assertEquals(prepared.spectra.getMaxFreq(), restored.spectra.getMaxFreq(), 1e-6);
+    }
+
+    @Test
+    public void restoreWithoutStoredData() {
+        channel.prepare(PLOT_END, wave(PLOT_END));
+
+        assertNull(channel.restore(PLOT_END + DURATION_MS));
+        assertNull(channel.restore(PLOT_END + DAY_MS));
+    }
+
+    @Test
+    public void subnetWithoutStoredDataIsLeftAlone() throws InterruptedException {
+        config.putList("test.channel", Arrays.asList("STA EHZ AV"));
+        SubnetPlotter subnet = new SubnetPlotter("net", "test", config);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertEquals(0, subnet.restore(PLOT_END, executor).size());
+
+            subnet.render(PLOT_END, new Wave[] { wave(PLOT_END) }, executor);
+            assertEquals(2, subnet.restore(PLOT_END, executor).size());
+        } finally {
+            subnet.close();
+            executor.shutdown();
+        }
+    }
+}
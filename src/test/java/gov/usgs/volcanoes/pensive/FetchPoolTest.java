@@ -0,0 +1,44 @@
+package gov.usgs.volcanoes.pensive;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class FetchPoolTest {
+
+    @Test
+    public void interruptedFetchesAreFinished() throws InterruptedException {
+        ConfigFile config = new ConfigFile();
+        config.put("embargo", "0");
+        config.putList("test.channel", Arrays.asList("STA EHZ AV"));
+        SubnetPlotter subnet = new SubnetPlotter("net", "test", config);
+
+        final CountDownLatch finished = new CountDownLatch(2);
+        PlotJob.Listener listener = new PlotJob.Listener() {
+            public void finished(PlotJob job) {
+                finished.countDown();
+            }
+        };
+
+        FetchPool pool = new FetchPool(new ConfigFile());
+        PlotJobQueue queue = pool.createQueue(1);
+        pool.add(queue, 1, new FetchPool.JobFetcher() {
+            public void fetch(PlotJob job) throws InterruptedException {
+                throw new InterruptedException();
+            }
+        });
+        pool.start();
+        queue.put(new PlotJob(subnet, 0, PlotJob.Priority.BACKFILL, listener));
+        queue.put(new PlotJob(subnet, 600000, PlotJob.Priority.BACKFILL, listener));
+        finished.await(5, TimeUnit.SECONDS);
+        pool.stop();
+        assertEquals(0, finished.getCount());
+    }
+}
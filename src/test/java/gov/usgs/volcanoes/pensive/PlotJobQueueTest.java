@@ -0,0 +1,109 @@
+package gov.usgs.volcanoes.pensive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+public class PlotJobQueueTest {
+
+    private static final long DURATION_MS = SubnetPlotter.DURATION_S * 1000;
+
+    SubnetPlotter subnet;
+    PlotJobQueue queue;
+
+    @Before
+    public void setup() {
+        ConfigFile config = new ConfigFile();
+        config.put("embargo", "0");
+        config.putList("test.channel", Arrays.asList("STA EHZ AV"));
+        subnet = new SubnetPlotter("net", "test", config);
+        queue = new PlotJobQueue();
+    }
+
+    @Test
+    public void ordersDistantJobsWithoutOverflow() throws InterruptedException {
+        PlotJob late = new PlotJob(subnet, 0);
+        PlotJob early = new PlotJob(subnet, -1000L * Integer.MAX_VALUE);
+        queue.put(late);
+        queue.put(early);
+
+        assertSame(early, queue.poll(0, TimeUnit.MILLISECONDS));
+        assertSame(late, queue.poll(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void realtimeBeforeBackfill() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        PlotJob backfill = new PlotJob(subnet, now - 10 * DURATION_MS);
+        PlotJob realtime = new PlotJob(subnet, now, PlotJob.Priority.REALTIME);
+        queue.put(backfill);
+        queue.put(realtime);
+
+        assertSame(realtime, queue.poll(0, TimeUnit.MILLISECONDS));
+        assertSame(backfill, queue.poll(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void waitingRealtimeDoesNotBlockBackfill() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        PlotJob backfill = new PlotJob(subnet, now - DURATION_MS);
+        queue.put(new PlotJob(subnet, now + DURATION_MS, PlotJob.Priority.REALTIME));
+        queue.put(backfill);
+
+        assertSame(backfill, queue.poll(0, TimeUnit.MILLISECONDS));
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void releasedAtDeadline() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 200;
+        PlotJob job = new PlotJob(subnet, deadline, PlotJob.Priority.REALTIME);
+        queue.put(job);
+
+        assertNull(queue.poll(50, TimeUnit.MILLISECONDS));
+        assertSame(job, queue.poll(2, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() >= deadline);
+    }
+
+    @Test
+    public void backfillLimitedUntilDone() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        queue = new PlotJobQueue(1);
+        queue.put(new PlotJob(subnet, now - 2 * DURATION_MS));
+        queue.put(new PlotJob(subnet, now - DURATION_MS));
+
+        PlotJob first = queue.poll(0, TimeUnit.MILLISECONDS);
+        assertNull(queue.poll(0, TimeUnit.MILLISECONDS));
+
+        PlotJob realtime = new PlotJob(subnet, now, PlotJob.Priority.REALTIME);
+        queue.put(realtime);
+        assertSame(realtime, queue.poll(0, TimeUnit.MILLISECONDS));
+
+        queue.done(first);
+        assertEquals(now - DURATION_MS, queue.poll(0, TimeUnit.MILLISECONDS).plotEndMs);
+    }
+
+    @Test
+    public void takeFromOneLaneWithoutWaiting() {
+        long now = System.currentTimeMillis();
+        PlotJob backfill = new PlotJob(subnet, now - DURATION_MS);
+        PlotJob realtime = new PlotJob(subnet, now + DURATION_MS, PlotJob.Priority.REALTIME);
+        queue.put(backfill);
+        queue.put(realtime);
+
+        assertNull(queue.take(PlotJob.Priority.REALTIME));
+        assertSame(backfill, queue.take(PlotJob.Priority.BACKFILL));
+        assertTrue(queue.readyInNs() > 0);
+        assertTrue(queue.readyInNs() <= TimeUnit.MILLISECONDS.toNanos(DURATION_MS));
+    }
+}
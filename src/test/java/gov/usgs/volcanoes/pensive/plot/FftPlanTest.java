@@ -0,0 +1,73 @@
+package gov.usgs.volcanoes.pensive.plot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import gov.usgs.plot.data.Wave;
+
+public class FftPlanTest {
+
+    private static final double TOLERANCE = 1e-6;
+
+    private static int[] samples(int count) {
+        Random random = new Random(42);
+        int[] samples = new int[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = random.nextInt(2000) - 1000;
+        }
+        return samples;
+    }
+
+    private static double[] dft(int[] samples, int offset, int nfft, int binSize, int lowBin,
+            int highBin) {
+        double[] amplitude = new double[highBin - lowBin + 1];
+        for (int bin = lowBin; bin <= highBin; bin++) {
+            double re = 0;
+            double im = 0;
+            for (int i = 0; i < binSize; i++) {
+                int sample = samples[offset + i];
+                double value = sample == Wave.NO_DATA ? 0
+                        : sample * 0.5 * (1 - Math.cos(2 * Math.PI * i / (binSize - 1)));
+                re += value * Math.cos(2 * Math.PI * bin * i / nfft);
+                im -= value * Math.sin(2 * Math.PI * bin * i / nfft);
+            }
+            amplitude[bin - lowBin] = Math.sqrt(re * re + im * im);
+        }
+        return amplitude;
+    }
+
+    private static void check(int nfft, int binSize, int lowBin, int highBin) {
+        int[] samples = samples(binSize + 10);
+        samples[7] = Wave.NO_DATA;
+        double[] amplitude = new double[highBin - lowBin + 1];
+
+        FftPlan.get(nfft, binSize).amplitudes(samples, 5, lowBin, highBin, amplitude);
+
+        assertArrayEquals(dft(samples, 5, nfft, binSize, lowBin, highBin), amplitude,
+                TOLERANCE);
+    }
+
+    @Test
+    public void powerOfTwo() {
+        check(256, 256, 0, 128);
+    }
+
+    @Test
+    public void zeroPadded() {
+        check(512, 200, 3, 100);
+    }
+
+    @Test
+    public void notPowerOfTwo() {
+        check(300, 300, 0, 150);
+    }
+
+    @Test
+    public void plansAreShared() {
+        assertSame(FftPlan.get(256, 256), FftPlan.get(256, 256));
+    }
+}
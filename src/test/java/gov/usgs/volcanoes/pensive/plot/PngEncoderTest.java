@@ -0,0 +1,110 @@
+package gov.usgs.volcanoes.pensive.plot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+
+public class PngEncoderTest {
+
+    private static BufferedImage image(int colors) {
+        BufferedImage image = new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, ((x + y * image.getWidth()) % colors) * 0x010203);
+            }
+        }
+        return image;
+    }
+
+    @Test
+    public void fewColorsAreIndexed() {
+        BufferedImage image = image(16);
+        BufferedImage indexed = PngEncoder.toIndexed(image);
+
+        assertNotNull(indexed);
+        assertEquals(BufferedImage.TYPE_BYTE_INDEXED, indexed.getType());
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                assertEquals(image.getRGB(x, y), indexed.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void manyColorsAreNotIndexed() {
+        assertNull(PngEncoder.toIndexed(image(300)));
+    }
+
+    @Test
+    public void writeReplacesFile() throws IOException {
+        File dir = File.createTempFile("pensive", "");
+        dir.delete();
+        File file = new File(dir, "plot.png");
+        PngEncoder encoder = new PngEncoder(new ConfigFile());
+
+        encoder.write(new PlotImage(file.getPath(), image(16)));
+        encoder.write(new PlotImage(file.getPath(), image(8)));
+
+        BufferedImage read = ImageIO.read(file);
+        assertEquals(image(8).getRGB(9, 0), read.getRGB(9, 0));
+        assertEquals(1, dir.list().length);
+        assertTrue(file.delete());
+        assertTrue(dir.delete());
+    }
+
+    private static byte[] encode(BufferedImage image, int level, boolean indexed)
+            throws IOException {
+        ConfigFile config = new ConfigFile();
+        config.put("pngCompressionLevel", "" + level);
+        config.put("pngIndexed", "" + indexed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new PngEncoder(config).encode(image, out);
+        return out.toByteArray();
+    }
+
+    private static void assertSamePixels(BufferedImage expected, byte[] png) throws IOException {
+        BufferedImage read = ImageIO.read(new ByteArrayInputStream(png));
+        assertNotNull(read);
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), read.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void rgbImagesRoundTrip() throws IOException {
+        BufferedImage image = image(300);
+        assertSamePixels(image, encode(image, 3, false));
+    }
+
+    @Test
+    public void paletteImagesRoundTrip() throws IOException {
+        BufferedImage image = image(16);
+        assertSamePixels(image, encode(PngEncoder.toIndexed(image), 3, true));
+    }
+
+    @Test
+    public void compressionLevelIsUsed() throws IOException {
+        BufferedImage image = image(7);
+        byte[] stored = encode(image, 0, false);
+        byte[] deflated = encode(image, 9, false);
+
+        assertTrue(deflated.length < stored.length);
+        assertSamePixels(image, stored);
+        assertSamePixels(image, deflated);
+    }
+}
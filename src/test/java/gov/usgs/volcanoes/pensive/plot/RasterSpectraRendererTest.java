@@ -0,0 +1,72 @@
+package gov.usgs.volcanoes.pensive.plot;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RasterSpectraRendererTest {
+
+    private static final int SIZE = 8;
+
+    RasterSpectraRenderer renderer;
+    BufferedImage image;
+
+    @Before
+    public void setup() {
+        renderer = new RasterSpectraRenderer(4);
+        renderer.setLocation(0, 0, SIZE, SIZE);
+        renderer.setFreqRange(0, 2);
+        renderer.setPowerRange(0, 4);
+
+        double[][] power = { { 0.5, 1.5 }, { 2.5, 3.5 } };
+        renderer.setSpectra(new Spectra(power, 0, 2, 0, 2), 0, 2);
+
+        image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        renderer.render(g);
+        g.dispose();
+    }
+
+    private int rgb(int x, int y) {
+        return image.getRGB(x, y) & 0xFFFFFF;
+    }
+
+    @Test
+    public void cellsMapToQuadrants() {
+        assertEquals(renderer.color(0.5), rgb(2, 5));
+        assertEquals(renderer.color(1.5), rgb(2, 2));
+        assertEquals(renderer.color(2.5), rgb(5, 5));
+        assertEquals(renderer.color(3.5), rgb(5, 2));
+    }
+
+    @Test
+    public void powerIsClamped() {
+        double[][] power = { { -10, 100 } };
+        renderer.setSpectra(new Spectra(power, 0, 2, 0, 2), 0, 2);
+        Graphics2D g = image.createGraphics();
+        renderer.render(g);
+        g.dispose();
+
+        assertEquals(renderer.color(0.5), rgb(3, 5));
+        assertEquals(renderer.color(3.5), rgb(3, 2));
+    }
+
+    @Test
+    public void rowsMapToNearestBin() {
+        // bins at 0, 1 and 2 Hz; rows 2 and 5 are at 1.375 and 0.625 Hz, nearest the middle bin
+        double[][] power = { { 0.5, 1.5, 2.5 } };
+        renderer.setSpectra(new Spectra(power, 0, 2, 0, 2), 0, 2);
+        Graphics2D g = image.createGraphics();
+        renderer.render(g);
+        g.dispose();
+
+        assertEquals(renderer.color(2.5), rgb(3, 1));
+        assertEquals(renderer.color(1.5), rgb(3, 2));
+        assertEquals(renderer.color(1.5), rgb(3, 5));
+        assertEquals(renderer.color(0.5), rgb(3, 6));
+    }
+}
@@ -0,0 +1,65 @@
+package gov.usgs.volcanoes.pensive.plot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+
+public class SpectraCalculatorTest {
+
+    private static final double SAMPLING_RATE = 50;
+    private static final double START = 1000;
+    private static final double DURATION = 60;
+    private static final double SIGNAL_FREQ = 5;
+
+    SpectraCalculator calculator;
+    Wave wave;
+
+    @Before
+    public void setup() {
+        calculator = new SpectraCalculator(new ConfigFile());
+
+        int[] samples = new int[(int) (DURATION * SAMPLING_RATE)];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (int) (1000 * Math.sin(2 * Math.PI * SIGNAL_FREQ * i / SAMPLING_RATE));
+        }
+        wave = new Wave(samples, START, SAMPLING_RATE);
+    }
+
+    @Test
+    public void peakAtSignalFrequency() {
+        Spectra spectra = calculator.compute(wave, START, START + DURATION);
+        double binWidth = (spectra.getMaxFreq() - spectra.getMinFreq()) / (spectra.getBinCount() - 1);
+
+        for (double[] slice : spectra.getPower()) {
+            int peak = 0;
+            for (int bin = 1; bin < slice.length; bin++) {
+                if (slice[bin] > slice[peak]) {
+                    peak = bin;
+                }
+            }
+            assertEquals(SIGNAL_FREQ, spectra.getMinFreq() + peak * binWidth, binWidth);
+        }
+    }
+
+    @Test
+    public void sliceCount() {
+        Spectra spectra = calculator.compute(wave, START, START + DURATION);
+        int step = (int) Math.round(SpectraCalculator.DEFAULT_BIN_SIZE
+                * (1 - SpectraCalculator.DEFAULT_OVERLAP));
+        int expected = (wave.numSamples() - SpectraCalculator.DEFAULT_BIN_SIZE) / step + 1;
+
+        assertEquals(expected, spectra.getSliceCount());
+        assertEquals(START, spectra.getStartTime(), 1e-9);
+    }
+
+    @Test
+    public void shortWave() {
+        Wave shortWave = new Wave(new int[10], START, SAMPLING_RATE);
+        assertNull(calculator.compute(shortWave, START, START + DURATION));
+    }
+}
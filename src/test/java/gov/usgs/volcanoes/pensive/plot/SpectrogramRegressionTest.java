@@ -0,0 +1,92 @@
+package gov.usgs.volcanoes.pensive.plot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Test;
+
+import gov.usgs.plot.data.SliceWave;
+import gov.usgs.plot.data.Wave;
+import gov.usgs.plot.render.wave.SpectrogramRenderer;
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+
+/**
+ * Compare spectra computed by SpectraCalculator with those of the library SpectrogramRenderer
+ * which Pensive used to draw, set up as ChannelPlotter set it up, so the minPower and maxPower
+ * tuned for it still apply.
+ */
+public class SpectrogramRegressionTest {
+
+    private static final double SAMPLING_RATE = 50;
+    private static final double START = 1000;
+    private static final double DURATION = SubnetPlotter.DURATION_S;
+
+    /** dB */
+    private static final double TOLERANCE = 1;
+
+    private static Wave wave(double amplitude) {
+        int[] samples = new int[(int) (DURATION * SAMPLING_RATE)];
+        for (int i = 0; i < samples.length; i++) {
+            double t = i / SAMPLING_RATE;
+            samples[i] = (int) (amplitude * Math.sin(2 * Math.PI * 5 * t)
+                    + amplitude / 10 * Math.sin(2 * Math.PI * 2.3 * t));
+        }
+        return new Wave(samples, START, SAMPLING_RATE);
+    }
+
+    private static double[][] library(Wave wave) {
+        SpectrogramRenderer sr = new SpectrogramRenderer();
+        sr.setOverlap(SpectraCalculator.DEFAULT_OVERLAP);
+        sr.setLogPower(SpectraCalculator.DEFAULT_LOG_POWER);
+        sr.setMinFreq(SpectraCalculator.DEFAULT_MIN_FREQ);
+        sr.setMaxFreq(SpectraCalculator.DEFAULT_MAX_FREQ);
+        sr.setNfft(SpectraCalculator.DEFAULT_NFFT);
+        sr.setBinSize(SpectraCalculator.DEFAULT_BIN_SIZE);
+        sr.setMinPower(30);
+        sr.setMaxPower(120);
+        sr.setTimeZone("UTC");
+        sr.setLocation(0, 0, 576, 100);
+
+        SliceWave slice = new SliceWave(wave);
+        slice.setSlice(START, START + DURATION);
+        sr.setWave(slice);
+        sr.setViewStartTime(START);
+        sr.setViewEndTime(START + DURATION);
+        sr.createDefaultFrameDecorator();
+        sr.update();
+
+        assertNotNull(sr.getSpectrogram());
+        return sr.getSpectrogram().getSpectraAmplitude();
+    }
+
+    /** Greatest power in each time slice, averaged over slices. */
+    private static double meanPeak(double[][] power) {
+        double sum = 0;
+        for (double[] slice : power) {
+            double peak = Double.NEGATIVE_INFINITY;
+            for (double p : slice) {
+                peak = Math.max(peak, p);
+            }
+            sum += peak;
+        }
+        return sum / power.length;
+    }
+
+    private static void assertSamePower(Wave wave) {
+        double[][] expected = library(wave);
+        Spectra spectra = new SpectraCalculator(new ConfigFile())
+                .compute(wave, START, START + DURATION);
+
+        assertEquals(meanPeak(expected), meanPeak(spectra.getPower()), TOLERANCE);
+    }
+
+    @Test
+    public void samePowerAsLibrary() {
+        assertSamePower(wave(1000));
+    }
+
+    @Test
+    public void samePowerAsLibraryAtLowAmplitude() {
+        assertSamePower(wave(50));
+    }
+}
@@ -0,0 +1,96 @@
+package gov.usgs.volcanoes.pensive.schedule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+import gov.usgs.volcanoes.pensive.PlotJob;
+import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+public class BackfillCursorTest {
+
+    private static final long DURATION_MS = SubnetPlotter.DURATION_S * 1000;
+    private static final long FIRST = 1444521600000L;
+    private static final long LAST = FIRST + 2 * DURATION_MS;
+    private static final String KEY = "test:range";
+
+    File stateFile;
+    ConfigFile config;
+    List<SubnetPlotter> subnets;
+
+    @Before
+    public void setup() throws IOException {
+        stateFile = File.createTempFile("pensive", ".state");
+        stateFile.delete();
+        config = new ConfigFile();
+        config.put("backfillState", stateFile.getPath());
+        config.putList("a.channel", Arrays.asList("STA EHZ AV"));
+        config.putList("b.channel", Arrays.asList("STA EHZ AV"));
+        subnets = Arrays.asList(new SubnetPlotter("net", "a", config),
+                new SubnetPlotter("net", "b", config));
+    }
+
+    @After
+    public void tearDown() {
+        stateFile.delete();
+    }
+
+    @Test
+    public void producesEverySubnetForEachSlot() {
+        BackfillCursor cursor = new BackfillCursor(KEY, subnets, FIRST, LAST,
+                new BackfillState(config));
+        for (long plotEnd = FIRST; plotEnd <= LAST; plotEnd += DURATION_MS) {
+            for (SubnetPlotter subnet : subnets) {
+                PlotJob job = cursor.next();
+                assertSame(subnet, job.subnet);
+                assertEquals(plotEnd, job.plotEndMs);
+                assertEquals(PlotJob.Priority.BACKFILL, job.priority);
+            }
+        }
+        assertTrue(cursor.isExhausted());
+        assertNull(cursor.next());
+    }
+
+    @Test
+    public void resumesFromFirstUnfinishedSlot() {
+        BackfillCursor cursor = new BackfillCursor(KEY, subnets, FIRST, LAST,
+                new BackfillState(config));
+        PlotJob a0 = cursor.next();
+        PlotJob b0 = cursor.next();
+        PlotJob a1 = cursor.next();
+        PlotJob b1 = cursor.next();
+        a0.finished();
+        b1.finished();
+        b0.finished();
+
+        cursor = new BackfillCursor(KEY, subnets, FIRST, LAST, new BackfillState(config));
+        assertEquals(a1.plotEndMs, cursor.next().plotEndMs);
+    }
+
+    @Test
+    public void finishedRangeIsForgotten() {
+        BackfillCursor cursor = new BackfillCursor(KEY, subnets, FIRST, FIRST,
+                new BackfillState(config));
+        PlotJob a = cursor.next();
+        PlotJob b = cursor.next();
+        assertTrue(cursor.isExhausted());
+        a.finished();
+        b.finished();
+
+        cursor = new BackfillCursor(KEY, subnets, FIRST, FIRST, new BackfillState(config));
+        assertFalse(cursor.isExhausted());
+        assertEquals(FIRST, cursor.next().plotEndMs);
+    }
+}
@@ -0,0 +1,108 @@
+package gov.usgs.volcanoes.pensive.schedule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+import gov.usgs.volcanoes.pensive.FetchPool;
+import gov.usgs.volcanoes.pensive.PlotPipeline;
+import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class GapScannerTest {
+
+    private static final long DURATION_MS = SubnetPlotter.DURATION_S * 1000;
+
+    /** 2015-10-11 00:00 UTC, so the plots below span two directories. */
+    private static final long MIDNIGHT = 1444521600000L;
+
+    File pathRoot;
+    ConfigFile config;
+    SubnetPlotter subnet;
+
+    @Before
+    public void setup() throws IOException {
+        pathRoot = File.createTempFile("pensive", "");
+        pathRoot.delete();
+        config = new ConfigFile();
+        config.put("pathRoot", pathRoot.getPath());
+        config.put("gapScanLookBack", "1");
+        config.putList("test.channel", Arrays.asList("STA EHZ AV"));
+        subnet = new SubnetPlotter("net", "test", config);
+    }
+
+    @After
+    public void tearDown() {
+        delete(pathRoot);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private void touch(long plotEndMs) throws IOException {
+        File file = new File(subnet.generateFileBase(plotEndMs) + ".png");
+        file.getParentFile().mkdirs();
+        file.createNewFile();
+    }
+
+    @Test
+    public void findPlotsAcrossDirectories() throws IOException {
+        long first = MIDNIGHT - 2 * DURATION_MS;
+        touch(first);
+        touch(MIDNIGHT + DURATION_MS);
+
+        BitSet found = GapScanner.findPlots(subnet, first, 4);
+        assertEquals("{0, 3}", found.toString());
+    }
+
+    @Test
+    public void missingPlotsQueuedOnce() throws IOException {
+        BackfillPlotScheduler scheduler =
+                new BackfillPlotScheduler("test", config, new PlotPipeline(config),
+                        new FetchPool(config));
+        scheduler.add(subnet);
+        GapScanner scanner = new GapScanner(scheduler, config);
+        long now = MIDNIGHT + 30 * 60 * 1000;
+        touch(MIDNIGHT);
+
+        scanner.scan(now);
+        assertEquals(5, scheduler.plotJobs.size());
+
+        scanner.scan(now);
+        assertEquals(5, scheduler.plotJobs.size());
+    }
+
+    @Test
+    public void queuedPlotsPrunedOutsideWindow() throws IOException {
+        BackfillPlotScheduler scheduler =
+                new BackfillPlotScheduler("test", config, new PlotPipeline(config),
+                        new FetchPool(config));
+        scheduler.add(subnet);
+        GapScanner scanner = new GapScanner(scheduler, config);
+        long now = MIDNIGHT + 30 * 60 * 1000;
+
+        scanner.scan(now);
+        assertEquals(6, scanner.queued.get(subnet).size());
+
+        scanner.scan(now + 2 * 60 * 60 * 1000);
+        for (long plotEndMs : scanner.queued.get(subnet)) {
+            assertTrue(plotEndMs > now);
+        }
+        assertEquals(6, scanner.queued.get(subnet).size());
+    }
+}
@@ -0,0 +1,82 @@
+package gov.usgs.volcanoes.pensive.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.core.time.J2kSec;
+import gov.usgs.volcanoes.pensive.plot.Spectra;
+
+public class SpectraPoolTest {
+
+    private static final double HOUR = 3600;
+
+    private static final SpectraHeader HEADER = new SpectraHeader(2, 0, 10, 5.12);
+
+    /** Ten stored slices at the start of each pooled slice of an hour. */
+    private SpectraPool pool(boolean max) {
+        SpectraPool pool = new SpectraPool(HEADER, 0, HOUR, max);
+        double step = HOUR / SpectraPool.SLICES;
+        for (int slice = 0; slice < SpectraPool.SLICES; slice++) {
+            for (int i = 0; i < 10; i++) {
+                long time = J2kSec.asEpoch(slice * step + (i + 1) * step / 20);
+                pool.add(time, new float[] {i, slice});
+            }
+        }
+        return pool;
+    }
+
+    @Test
+    public void meanPooling() {
+        Spectra spectra = pool(false).toSpectra();
+        assertEquals(SpectraPool.SLICES, spectra.getSliceCount());
+        assertEquals(2, spectra.getBinCount());
+        assertEquals(HOUR, spectra.getEndTime() - spectra.getStartTime(), 1e-9);
+        assertEquals(4.5, spectra.getPower()[7][0], 1e-9);
+        assertEquals(7, spectra.getPower()[7][1], 1e-9);
+    }
+
+    @Test
+    public void maxPooling() {
+        Spectra spectra = pool(true).toSpectra();
+        assertEquals(9, spectra.getPower()[7][0], 1e-9);
+        assertEquals(7, spectra.getPower()[7][1], 1e-9);
+    }
+
+    @Test
+    public void slicesOutsideSpanAreIgnored() {
+        SpectraPool pool = new SpectraPool(HEADER, 0, HOUR, false);
+        pool.add(J2kSec.asEpoch(HOUR), new float[] {1, 1});
+        pool.add(J2kSec.asEpoch(-1), new float[] {1, 1});
+        assertNull(pool.toSpectra());
+        assertFalse(pool.accepts(new SpectraHeader(3, 0, 10, 5.12)));
+    }
+
+    @Test
+    public void envelopesPoolLeastAndGreatest() {
+        EnvelopePool pool = new EnvelopePool(0, HOUR);
+        assertNull(pool.toEnvelope());
+
+        int[] envelope = new int[2 * WaveEnvelope.COLUMNS];
+        for (int c = 0; c < WaveEnvelope.COLUMNS; c++) {
+            envelope[2 * c] = -c;
+            envelope[2 * c + 1] = c;
+        }
+        envelope[0] = Wave.NO_DATA;
+        envelope[1] = Wave.NO_DATA;
+        pool.add(0, 600, envelope);
+
+        // six ten-minute columns to each hour column, the first empty
+        int[] pooled = pool.toEnvelope();
+        assertEquals(-5, pooled[0]);
+        assertEquals(5, pooled[1]);
+        int[] empty = Arrays.copyOfRange(pooled, pooled.length - 2, pooled.length);
+        assertEquals(Wave.NO_DATA, empty[0]);
+        assertEquals(Wave.NO_DATA, empty[1]);
+    }
+}
@@ -0,0 +1,119 @@
+package gov.usgs.volcanoes.pensive.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import gov.usgs.volcanoes.pensive.plot.Spectra;
+
+public class SpectraStoreTest {
+
+    private static final double WINDOW = 2;
+    private static final double STEP = 1;
+
+    File file;
+
+    @Before
+    public void setup() throws IOException {
+        file = File.createTempFile("spectra", ".spc");
+        file.delete();
+    }
+
+    @After
+    public void cleanup() {
+        file.delete();
+    }
+
+    /** Slices one second apart, each bin's power the slice start plus the bin number. */
+    private Spectra spectra(double start, int slices) {
+        double[][] power = new double[slices][3];
+        for (int i = 0; i < slices; i++) {
+            for (int j = 0; j < 3; j++) {
+                power[i][j] = start + i * STEP + j;
+            }
+        }
+        return new Spectra(power, start, start + (slices - 1) * STEP + WINDOW, 1, 3);
+    }
+
+    private SpectraWriter writer() throws IOException {
+        return new SpectraWriter(file, SpectraHeader.of(spectra(0, 1), WINDOW));
+    }
+
+    @Test
+    public void rowsRoundTrip() throws IOException {
+        SpectraWriter writer = writer();
+        writer.append(spectra(10, 20), 15, 25);
+        writer.close();
+
+        SpectraReader reader = new SpectraReader(file);
+        assertEquals(10, reader.getRowCount());
+        Spectra spectra = reader.getSpectra(0, 100);
+        assertEquals(15, spectra.getStartTime(), 1e-6);
+        assertEquals(24 + WINDOW, spectra.getEndTime(), 1e-6);
+        assertEquals(1, spectra.getMinFreq(), 1e-9);
+        assertEquals(3, spectra.getMaxFreq(), 1e-9);
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 3; j++) {
+                assertEquals(15 + i + j, spectra.getPower()[i][j], 1e-3);
+            }
+        }
+        assertNull(reader.getSpectra(100, 200));
+    }
+
+    @Test
+    public void appendsAcrossRunsAreTimeOrdered() throws IOException {
+        SpectraWriter writer = writer();
+        writer.append(spectra(20, 10), 20, 30);
+        writer.close();
+        writer = writer();
+        writer.append(spectra(10, 10), 10, 20);
+        writer.close();
+
+        Spectra spectra = new SpectraReader(file).getSpectra(12, 22);
+        assertEquals(10, spectra.getSliceCount());
+        assertEquals(12, spectra.getPower()[0][0], 1e-3);
+        assertEquals(21, spectra.getPower()[9][0], 1e-3);
+    }
+
+    @Test
+    public void partialRowIsDropped() throws IOException {
+        SpectraWriter writer = writer();
+        writer.append(spectra(0, 5), 0, 5);
+        writer.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        writer = writer();
+        writer.append(spectra(5, 1), 5, 6);
+        writer.close();
+        SpectraReader reader = new SpectraReader(file);
+        assertEquals(5, reader.getRowCount());
+        assertEquals(5, reader.getSpectra(5, 6).getPower()[0][0], 1e-3);
+    }
+
+    @Test(expected = IOException.class)
+    public void differentBinsAreRefused() throws IOException {
+        writer().close();
+        new SpectraWriter(file, new SpectraHeader(4, 1, 3, WINDOW));
+    }
+
+    @Test
+    public void exportWritesCsv() throws IOException {
+        SpectraWriter writer = writer();
+        writer.append(spectra(0, 2), 0, 2);
+        writer.close();
+
+        StringWriter csv = new StringWriter();
+        SpectraExport.export(new SpectraReader(file), "HH:mm:ss", csv);
+        assertEquals("12:00:00,0,1,2\n12:00:01,1,2,3\n", csv.toString());
+    }
+}
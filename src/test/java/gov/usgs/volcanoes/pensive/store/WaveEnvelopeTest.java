@@ -0,0 +1,82 @@
+package gov.usgs.volcanoes.pensive.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import gov.usgs.plot.data.Wave;
+
+public class WaveEnvelopeTest {
+
+    private static final double SPAN = 600;
+
+    File file;
+
+    @Before
+    public void setup() throws IOException {
+        file = File.createTempFile("envelope", ".env");
+        file.delete();
+    }
+
+    @After
+    public void cleanup() {
+        file.delete();
+    }
+
+    /** Each sample's value is its sample number, with a gap over the first ten seconds. */
+    private Wave wave(double rate) {
+        int[] samples = new int[(int) (SPAN * rate) + 1];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = i < 10 * rate ? Wave.NO_DATA : i;
+        }
+        return new Wave(samples, 0, rate);
+    }
+
+    @Test
+    public void columnsHoldLeastAndGreatest() {
+        int[] envelope = WaveEnvelope.compute(wave(100), 0, SPAN);
+        assertEquals(2 * WaveEnvelope.COLUMNS, envelope.length);
+        assertEquals(Wave.NO_DATA, envelope[0]);
+        assertEquals(Wave.NO_DATA, envelope[1]);
+
+        double columnS = SPAN / WaveEnvelope.COLUMNS;
+        int column = WaveEnvelope.COLUMNS / 2;
+        assertEquals((int) Math.ceil(column * columnS * 100), envelope[2 * column]);
+        assertEquals((int) Math.ceil((column + 1) * columnS * 100) - 1, envelope[2 * column + 1]);
+        assertEquals((int) (SPAN * 100), envelope[envelope.length - 1]);
+    }
+
+    @Test
+    public void envelopesRoundTrip() throws IOException {
+        int[] first = WaveEnvelope.compute(wave(100), 0, SPAN);
+        int[] second = WaveEnvelope.compute(wave(50), 0, SPAN);
+        EnvelopeWriter writer = new EnvelopeWriter(file);
+        writer.append(600000, first);
+        writer.append(1200000, first);
+        writer.close();
+        writer = new EnvelopeWriter(file);
+        writer.append(600000, second);
+        writer.close();
+
+        EnvelopeReader reader = new EnvelopeReader(file);
+        assertArrayEquals(second, reader.get(600000));
+        assertArrayEquals(first, reader.get(1200000));
+        assertNull(reader.get(1800000));
+    }
+
+    @Test
+    public void envelopeDrawsAsWave() {
+        int[] envelope = WaveEnvelope.compute(wave(100), 0, SPAN);
+        Wave wave = WaveEnvelope.toWave(envelope, 0, SPAN);
+        assertEquals(0, wave.getStartTime(), 1e-9);
+        assertEquals(SPAN, wave.getEndTime(), 1e-9);
+        assertArrayEquals(envelope, wave.buffer);
+    }
+}
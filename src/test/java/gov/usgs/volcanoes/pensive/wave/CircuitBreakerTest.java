@@ -0,0 +1,130 @@
+package gov.usgs.volcanoes.pensive.wave;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+
+public class CircuitBreakerTest {
+
+    private static final String CHANNEL = "STA EHZ AV";
+    private static final long SECOND_NS = 1000000000L;
+
+    ConfigFile config;
+    FakeSource source;
+    Wave wave;
+
+    @Before
+    public void setup() {
+        config = new ConfigFile();
+        config.put("breakerFailures", "2");
+        config.put("breakerProbeInterval", "1");
+        config.put("timeout", "10");
+        source = new FakeSource();
+        wave = new Wave(new int[] {1, 2, 3}, 0, 1);
+    }
+
+    private static void fail(CircuitBreaker breaker) {
+        breaker.record(CHANNEL, 0, 600, null, true);
+    }
+
+    @Test
+    public void opensAfterFailuresInARow() {
+        CircuitBreaker breaker = new CircuitBreaker("test", config);
+        WaveFetcher fetcher = breaker.wrap(source);
+        fail(breaker);
+        assertFalse(breaker.isOpen());
+        fail(breaker);
+        assertTrue(breaker.isOpen());
+
+        int calls = source.calls;
+        assertNull(fetcher.getWave(CHANNEL, 0, 600));
+        assertEquals(calls, source.calls);
+    }
+
+    @Test
+    public void successClearsFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("test", config);
+        fail(breaker);
+        breaker.record(CHANNEL, SECOND_NS, 600, wave, false);
+        fail(breaker);
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    public void promptEmptyAnswersNeitherCountNorClear() {
+        CircuitBreaker breaker = new CircuitBreaker("test", config);
+        for (int i = 0; i < 5; i++) {
+            breaker.record(CHANNEL, SECOND_NS, 600, null, false);
+        }
+        assertFalse(breaker.isOpen());
+
+        fail(breaker);
+        breaker.record(CHANNEL, SECOND_NS, 600, null, false);
+        breaker.record(CHANNEL, SECOND_NS, 600, null, false);
+        assertFalse(breaker.isOpen());
+        fail(breaker);
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    public void slowThresholdScalesWithSecondsRequested() {
+        CircuitBreaker breaker = new CircuitBreaker("test", config);
+        for (int i = 0; i < 5; i++) {
+            breaker.record(CHANNEL, 30 * SECOND_NS, 3600, wave, false);
+        }
+        assertFalse(breaker.isOpen());
+
+        breaker.record(CHANNEL, 30 * SECOND_NS, 600, wave, false);
+        breaker.record(CHANNEL, 30 * SECOND_NS, 600, wave, false);
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    public void probeClosesOnceServerAnswers() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker("test", config);
+        breaker.wrap(source);
+        breaker.record(CHANNEL, SECOND_NS, 600, wave, false);
+        source.failing = true;
+        fail(breaker);
+        fail(breaker);
+        assertTrue(breaker.isOpen());
+        source.failing = false;
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (breaker.isOpen() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    public void disabled() {
+        config = new ConfigFile();
+        config.put("breakerFailures", "0");
+        CircuitBreaker breaker = new CircuitBreaker("test", config);
+        for (int i = 0; i < 5; i++) {
+            fail(breaker);
+        }
+        assertFalse(breaker.isOpen());
+    }
+
+    private class FakeSource implements WaveFetcher {
+        volatile boolean failing;
+        volatile int calls;
+
+        public Wave getWave(String channel, double t1, double t2) {
+            calls++;
+            if (failing) {
+                throw new RuntimeException("no route to host");
+            }
+            return wave;
+        }
+    }
+}
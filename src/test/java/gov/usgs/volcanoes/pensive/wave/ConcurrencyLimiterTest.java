@@ -0,0 +1,77 @@
+package gov.usgs.volcanoes.pensive.wave;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+
+public class ConcurrencyLimiterTest {
+
+    private static final long SECOND_NS = 1000000000L;
+
+    ConfigFile config;
+
+    @Before
+    public void setup() {
+        config = new ConfigFile();
+        config.put("minThreads", "2");
+        config.put("latencyThreshold", "1");
+    }
+
+    @Test
+    public void slowRequestCutsLimitOnce() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(config, 8);
+        long start = System.nanoTime();
+        limiter.sample(start, 2 * SECOND_NS, 600, false);
+        assertEquals(6, limiter.getLimit());
+
+        limiter.sample(start, 2 * SECOND_NS, 600, false);
+        assertEquals(6, limiter.getLimit());
+        assertEquals(2, limiter.getSlowRequests());
+    }
+
+    @Test
+    public void latencyScaledByDataRequested() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(config, 8);
+        limiter.sample(System.nanoTime(), 2 * SECOND_NS, 3600, false);
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    public void staysWithinBounds() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(config, 4);
+        for (int i = 0; i < 10; i++) {
+            limiter.sample(System.nanoTime(), 0, 600, true);
+        }
+        assertEquals(2, limiter.getLimit());
+
+        for (int i = 0; i < 100; i++) {
+            limiter.sample(System.nanoTime(), 0, 600, false);
+        }
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void fixedWhenBoundsEqual() {
+        ConfigFile fixed = new ConfigFile();
+        fixed.put("minThreads", "5");
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(fixed, 5);
+        limiter.sample(System.nanoTime(), 0, 600, true);
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    public void lowerBoundDefaultsToHalf() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new ConfigFile(), 5);
+        for (int i = 0; i < 10; i++) {
+            limiter.sample(System.nanoTime(), 0, 600, true);
+        }
+        assertEquals(3, limiter.getLimit());
+
+        limiter = new ConcurrencyLimiter(new ConfigFile(), 1);
+        limiter.sample(System.nanoTime(), 0, 600, true);
+        assertEquals(1, limiter.getLimit());
+    }
+}
@@ -0,0 +1,169 @@
+package gov.usgs.volcanoes.pensive.wave;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+
+public class DiskWaveCacheTest {
+
+    private static final double SAMPLING_RATE = 10;
+    private static final double CHUNK = DiskWaveCache.CHUNK_S;
+
+    File dir;
+    int requests;
+    boolean empty;
+    double dataStart = Double.NEGATIVE_INFINITY;
+
+    /** Each sample's value is its sample number. */
+    WaveFetcher source = new WaveFetcher() {
+        public Wave getWave(String channel, double t1, double t2) {
+            requests++;
+            if (empty) {
+                return null;
+            }
+            long first = Math.round(Math.max(t1, dataStart) * SAMPLING_RATE);
+            int[] samples = new int[(int) (Math.round(t2 * SAMPLING_RATE) - first + 1)];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = (int) (first + i);
+            }
+            return new Wave(samples, first / SAMPLING_RATE, SAMPLING_RATE);
+        }
+    };
+
+    @Before
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("waveCache").toFile();
+    }
+
+    @After
+    public void cleanup() {
+        delete(dir);
+    }
+
+    private void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private DiskWaveCache cache(int megabytes) {
+        return cache(megabytes, DiskWaveCache.DEFAULT_WAVE_CACHE_RETRY);
+    }
+
+    private DiskWaveCache cache(int megabytes, int retryMinutes) {
+        ConfigFile config = new ConfigFile();
+        config.put("waveCache", dir.getPath());
+        config.put("waveCacheSize", "" + megabytes);
+        config.put("waveCacheRetry", "" + retryMinutes);
+        return new DiskWaveCache(config);
+    }
+
+    private void assertContinuous(Wave wave, double t1, double t2) {
+        assertEquals(t1, wave.getStartTime(), 1e-9);
+        assertEquals(Math.round((t2 - t1) * SAMPLING_RATE) + 1, wave.numSamples());
+        for (int i = 0; i < wave.numSamples(); i++) {
+            assertEquals(Math.round(t1 * SAMPLING_RATE) + i, wave.buffer[i]);
+        }
+    }
+
+    @Test
+    public void encodingRoundTrips() throws IOException {
+        int[] samples = { 0, 5, -3, Wave.NO_DATA, Integer.MAX_VALUE, 7 };
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DiskWaveCache.encode(new Wave(samples, 12.5, 100), 42, new DataOutputStream(bytes));
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        assertEquals(42, DiskWaveCache.expiresMs(buffer));
+        Wave wave = DiskWaveCache.decode(buffer);
+        assertEquals(12.5, wave.getStartTime(), 1e-9);
+        assertEquals(100, wave.getSamplingRate(), 1e-9);
+        for (int i = 0; i < samples.length; i++) {
+            assertEquals(samples[i], wave.buffer[i]);
+        }
+    }
+
+    @Test
+    public void rerunsReadFromDisk() {
+        assertContinuous(cache(10).getWave("STA", CHUNK + 5, 2 * CHUNK - 5, source),
+                CHUNK + 5, 2 * CHUNK - 5);
+        assertContinuous(cache(10).getWave("STA", CHUNK + 5, 2 * CHUNK - 5, source),
+                CHUNK + 5, 2 * CHUNK - 5);
+        assertEquals(1, requests);
+    }
+
+    @Test
+    public void onlyMissingChunksAreFetched() {
+        DiskWaveCache cache = cache(10);
+        cache.getWave("STA", CHUNK, 2 * CHUNK - 1, source);
+        assertContinuous(cache.getWave("STA", CHUNK - 5, 2 * CHUNK + 5, source),
+                CHUNK - 5, 2 * CHUNK + 5);
+        assertEquals(3, requests);
+    }
+
+    @Test
+    public void unansweredRequestsAreNotKept() {
+        DiskWaveCache cache = cache(10);
+        empty = true;
+        assertNull(cache.getWave("STA", 0, CHUNK - 1, source));
+        empty = false;
+        assertContinuous(cache.getWave("STA", 0, CHUNK - 1, source), 0, CHUNK - 1);
+        assertEquals(2, requests);
+    }
+
+    @Test
+    public void leastRecentlyUsedChunksAreRemoved() {
+        DiskWaveCache cache = cache(1);
+        for (int chunk = 0; chunk < 200; chunk++) {
+            cache.getWave("STA", chunk * CHUNK, (chunk + 1) * CHUNK - 1, source);
+        }
+        requests = 0;
+        cache.getWave("STA", 199 * CHUNK, 200 * CHUNK - 1, source);
+        assertEquals(0, requests);
+        cache.getWave("STA", 0, CHUNK - 1, source);
+        assertEquals(1, requests);
+    }
+
+    @Test
+    public void incompleteChunksExpire() {
+        dataStart = CHUNK + 5;
+        DiskWaveCache cache = cache(10, 0);
+        cache.getWave("STA", 0, 2 * CHUNK - 1, source);
+        assertEquals(1, requests);
+
+        // the first chunk is empty and the second partial, so both are fetched again
+        dataStart = Double.NEGATIVE_INFINITY;
+        assertContinuous(cache.getWave("STA", 0, 2 * CHUNK - 1, source), 0, 2 * CHUNK - 1);
+        assertEquals(2, requests);
+
+        // now complete, they are kept
+        cache.getWave("STA", 0, 2 * CHUNK - 1, source);
+        assertEquals(2, requests);
+    }
+
+    @Test
+    public void recentChunksAreNotKept() {
+        ConfigFile config = new ConfigFile();
+        config.put("waveCache", dir.getPath());
+        config.put("waveCacheSettle", "" + Integer.MAX_VALUE / 60);
+        DiskWaveCache cache = new DiskWaveCache(config);
+        cache.getWave("STA", 0, CHUNK - 1, source);
+        cache.getWave("STA", 0, CHUNK - 1, source);
+        assertEquals(2, requests);
+    }
+}
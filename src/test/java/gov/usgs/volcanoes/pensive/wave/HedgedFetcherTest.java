@@ -0,0 +1,126 @@
+package gov.usgs.volcanoes.pensive.wave;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.pensive.plot.SubnetPlotter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class HedgedFetcherTest {
+
+    ExecutorService executor;
+    LatencyStats primaryStats;
+    LatencyStats secondaryStats;
+
+    @Before
+    public void setup() {
+        executor = Executors.newCachedThreadPool();
+        primaryStats = new LatencyStats();
+        secondaryStats = new LatencyStats();
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void percentileOfRecentLatencies() {
+        assertEquals(-1, primaryStats.percentile(50));
+        for (int i = 1; i <= 100; i++) {
+            primaryStats.record(i, SubnetPlotter.DURATION_S);
+        }
+        assertEquals(50, primaryStats.percentile(50));
+        assertEquals(95, primaryStats.percentile(95));
+    }
+
+    @Test
+    public void latencyIsPerPlotOfData() {
+        for (int i = 0; i < LatencyStats.MIN_SAMPLES; i++) {
+            primaryStats.record(100, SubnetPlotter.DURATION_S);
+            primaryStats.record(14400, 144 * SubnetPlotter.DURATION_S);
+            primaryStats.record(100, 1);
+        }
+        assertEquals(100, primaryStats.percentile(100));
+    }
+
+    @Test
+    public void slowServerIsHedged() {
+        record(primaryStats, 10, LatencyStats.MIN_SAMPLES);
+        Wave wave = wave();
+        HedgedFetcher fetcher = new HedgedFetcher(95, executor);
+        fetcher.add("primary", new FakeSource(2000, wave()), primaryStats);
+        fetcher.add("secondary", new FakeSource(0, wave), secondaryStats);
+
+        long start = System.nanoTime();
+        assertSame(wave, fetcher.getWave("STA EHZ AV", 0, 600));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+    }
+
+    @Test
+    public void emptyAnswerSentOn() {
+        Wave wave = wave();
+        HedgedFetcher fetcher = new HedgedFetcher(95, executor);
+        fetcher.add("primary", new FakeSource(0, null), primaryStats);
+        fetcher.add("secondary", new FakeSource(0, wave), secondaryStats);
+
+        long start = System.nanoTime();
+        assertSame(wave, fetcher.getWave("STA EHZ AV", 0, 600));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+    }
+
+    @Test
+    public void fasterServerAskedFirst() {
+        record(primaryStats, TimeUnit.MILLISECONDS.toNanos(500), LatencyStats.MIN_SAMPLES);
+        record(secondaryStats, TimeUnit.MILLISECONDS.toNanos(5), LatencyStats.MIN_SAMPLES);
+        FakeSource primary = new FakeSource(0, wave());
+        FakeSource secondary = new FakeSource(0, wave());
+        HedgedFetcher fetcher = new HedgedFetcher(95, executor);
+        fetcher.add("primary", primary, primaryStats);
+        fetcher.add("secondary", secondary, secondaryStats);
+
+        fetcher.getWave("STA EHZ AV", 0, 600);
+        assertEquals(0, primary.calls);
+        assertEquals(1, secondary.calls);
+    }
+
+    private static void record(LatencyStats stats, long latency, int count) {
+        for (int i = 0; i < count; i++) {
+            stats.record(latency, SubnetPlotter.DURATION_S);
+        }
+    }
+
+    private static Wave wave() {
+        return new Wave(new int[100], 0, 100);
+    }
+
+    private static class FakeSource implements WaveFetcher {
+        final long delayMs;
+        final Wave wave;
+        volatile int calls;
+
+        FakeSource(long delayMs, Wave wave) {
+            this.delayMs = delayMs;
+            this.wave = wave;
+        }
+
+        public Wave getWave(String channel, double t1, double t2) {
+            calls++;
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                return null;
+            }
+            return wave;
+        }
+    }
+}
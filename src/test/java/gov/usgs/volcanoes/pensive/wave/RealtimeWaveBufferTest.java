@@ -0,0 +1,61 @@
+package gov.usgs.volcanoes.pensive.wave;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+
+public class RealtimeWaveBufferTest {
+
+    private static final double SAMPLING_RATE = 10;
+    private static final double NOW = 100000;
+
+    RealtimeWaveBuffer buffer;
+    WaveFetcher fetcher;
+    double lastT1;
+
+    /** Each sample's value is its sample number. */
+    WaveFetcher source = new WaveFetcher() {
+        public Wave getWave(String channel, double t1, double t2) {
+            lastT1 = t1;
+            long first = Math.round(t1 * SAMPLING_RATE);
+            int[] samples = new int[(int) (Math.round(t2 * SAMPLING_RATE) - first + 1)];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = (int) (first + i);
+            }
+            return new Wave(samples, first / SAMPLING_RATE, SAMPLING_RATE);
+        }
+    };
+
+    @Before
+    public void setup() {
+        buffer = new RealtimeWaveBuffer(new ConfigFile());
+        fetcher = buffer.wrap(source);
+    }
+
+    @Test
+    public void recentRequestsFetchOnlyNewSamples() {
+        fetcher.getWave("STA", NOW - 600, NOW);
+        Wave wave = fetcher.getWave("STA", NOW - 300, NOW + 300);
+        assertEquals(NOW - 30, lastT1, 1e-9);
+        assertEquals(NOW - 300, wave.getStartTime(), 1e-9);
+        assertEquals(6001, wave.numSamples());
+    }
+
+    @Test
+    public void oldRequestsGoToSource() {
+        fetcher.getWave("STA", NOW - 600, NOW);
+        Wave wave = fetcher.getWave("STA", NOW - 86400, NOW - 85800);
+        assertNotNull(wave);
+        assertEquals(NOW - 86400, wave.getStartTime(), 1e-9);
+        assertEquals(6001, wave.numSamples());
+
+        wave = fetcher.getWave("STA", NOW - 7200, NOW);
+        assertEquals(NOW - 7200, wave.getStartTime(), 1e-9);
+        assertEquals(72001, wave.numSamples());
+    }
+}
@@ -0,0 +1,108 @@
+package gov.usgs.volcanoes.pensive.wave;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+
+public class SpanWaveCacheTest {
+
+    private static final double SAMPLING_RATE = 10;
+    private static final double SPAN = 3600;
+
+    SpanWaveCache cache;
+    int requests;
+    int failures;
+
+    /** Each sample's value is its sample number. */
+    WaveFetcher source = new WaveFetcher() {
+        public Wave getWave(String channel, double t1, double t2) {
+            requests++;
+            if (failures > 0) {
+                failures--;
+                return null;
+            }
+            long first = Math.round(t1 * SAMPLING_RATE);
+            int[] samples = new int[(int) (Math.round(t2 * SAMPLING_RATE) - first + 1)];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = (int) (first + i);
+            }
+            return new Wave(samples, first / SAMPLING_RATE, SAMPLING_RATE);
+        }
+    };
+
+    @Before
+    public void setup() {
+        ConfigFile config = new ConfigFile();
+        config.put("backfillSpan", "" + (int) SPAN);
+        cache = new SpanWaveCache(config);
+    }
+
+    private void assertContinuous(Wave wave, double t1, double t2) {
+        assertEquals(t1, wave.getStartTime(), 1e-9);
+        assertEquals(Math.round((t2 - t1) * SAMPLING_RATE) + 1, wave.numSamples());
+        for (int i = 0; i < wave.numSamples(); i++) {
+            assertEquals(Math.round(t1 * SAMPLING_RATE) + i, wave.buffer[i]);
+        }
+    }
+
+    @Test
+    public void windowsShareOneRequest() {
+        for (double t2 = 600; t2 <= SPAN; t2 += 600) {
+            assertContinuous(cache.getWave("STA", t2 - 600, t2, source), t2 - 600, t2);
+        }
+        assertEquals(1, requests);
+    }
+
+    @Test
+    public void windowsRunAcrossSpans() {
+        cache.getWave("STA", 0, 600, source);
+        cache.getWave("STA", SPAN - 600, SPAN, source);
+        assertContinuous(cache.getWave("STA", SPAN - 605, SPAN + 5, source), SPAN - 605, SPAN + 5);
+        assertEquals(2, requests);
+    }
+
+    @Test
+    public void oldWindowsPassThrough() {
+        cache.getWave("STA", 2 * SPAN, 2 * SPAN + 600, source);
+        assertContinuous(cache.getWave("STA", 0, 600, source), 0, 600);
+        assertEquals(2, requests);
+    }
+
+    @Test
+    public void recentWindowsPassThrough() {
+        double now = System.currentTimeMillis() / 1000.0 - 946728000;
+        cache.getWave("STA", now - 600, now, source);
+        cache.getWave("STA", now - 600, now, source);
+        assertEquals(2, requests);
+    }
+
+    @Test
+    public void failedSpansAreRetried() {
+        failures = 1;
+        assertContinuous(cache.getWave("STA", 0, 600, source), 0, 600);
+        assertContinuous(cache.getWave("STA", 600, 1200, source), 600, 1200);
+        assertContinuous(cache.getWave("STA", 1200, 1800, source), 1200, 1800);
+        assertEquals(3, requests);
+    }
+
+    @Test
+    public void leastRecentlyUsedChannelsAreReleased() {
+        ConfigFile config = new ConfigFile();
+        config.put("backfillSpan", "" + (int) SPAN);
+        config.put("backfillSpanMemory", "1");
+        cache = new SpanWaveCache(config);
+
+        // each channel holds about 190 kB
+        for (int i = 0; i < 7; i++) {
+            cache.getWave("STA" + i, 0, 600, source);
+        }
+        cache.getWave("STA6", 600, 1200, source);
+        assertEquals(7, requests);
+        cache.getWave("STA0", 600, 1200, source);
+        assertEquals(8, requests);
+    }
+}
@@ -0,0 +1,53 @@
+package gov.usgs.volcanoes.pensive.wave;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    private static double elapsedS(long startNs) {
+        return (System.nanoTime() - startNs) / 1e9;
+    }
+
+    @Test
+    public void unlimitedNeverWaits() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(0);
+        long start = System.nanoTime();
+        bucket.take(1e9);
+        assertTrue(elapsedS(start) < .1);
+    }
+
+    @Test
+    public void overdraftWaitsAtRate() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(20);
+        long start = System.nanoTime();
+        bucket.take(20);
+        assertTrue(elapsedS(start) < .1);
+
+        bucket.take(10);
+        double elapsed = elapsedS(start);
+        assertTrue(elapsed > .4 && elapsed < 1.5);
+    }
+
+    @Test
+    public void chargeDelaysNextTaker() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(20);
+        bucket.take(20);
+        bucket.charge(10);
+        long start = System.nanoTime();
+        bucket.take(0);
+        double elapsed = elapsedS(start);
+        assertTrue(elapsed > .4 && elapsed < 1.5);
+    }
+
+    @Test
+    public void rateChangeTakesEffect() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1);
+        bucket.take(1);
+        bucket.setRate(0);
+        long start = System.nanoTime();
+        bucket.take(100);
+        assertTrue(elapsedS(start) < .1);
+    }
+}
@@ -0,0 +1,68 @@
+package gov.usgs.volcanoes.pensive.wave;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import gov.usgs.plot.data.Wave;
+
+public class WaveRingBufferTest {
+
+    private static final double SAMPLING_RATE = 10;
+    private static final double START = 1000;
+
+    WaveRingBuffer ring;
+
+    @Before
+    public void setup() {
+        ring = new WaveRingBuffer(SAMPLING_RATE, 1);
+    }
+
+    @Test
+    public void emptyBuffer() {
+        assertNull(ring.getWave(START, START + 1));
+    }
+
+    @Test
+    public void overlappingAdds() {
+        ring.add(new Wave(new int[] { 1, 2, 3, 4 }, START, SAMPLING_RATE));
+        ring.add(new Wave(new int[] { 3, 4, 5, 6 }, START + .2, SAMPLING_RATE));
+
+        Wave wave = ring.getWave(START, START + 1);
+        assertEquals(START, wave.getStartTime(), 1e-9);
+        assertArrayEquals(new int[] { 1, 2, 3, 4, 5, 6 }, wave.buffer);
+    }
+
+    @Test
+    public void lateSamplesFillGaps() {
+        ring.add(new Wave(new int[] { 1, Wave.NO_DATA, 3 }, START, SAMPLING_RATE));
+        ring.add(new Wave(new int[] { 2 }, START + .1, SAMPLING_RATE));
+
+        assertArrayEquals(new int[] { 1, 2, 3 }, ring.getWave(START, START + 1).buffer);
+    }
+
+    @Test
+    public void oldSamplesArePushedOut() {
+        int[] samples = new int[15];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = i;
+        }
+        ring.add(new Wave(samples, START, SAMPLING_RATE));
+
+        Wave wave = ring.getWave(START, START + 2);
+        assertEquals(START + .4, wave.getStartTime(), 1e-9);
+        assertEquals(11, wave.numSamples());
+        assertEquals(14, wave.buffer[10]);
+    }
+
+    @Test
+    public void trailingGapIsTrimmed() {
+        ring.add(new Wave(new int[] { 1, 2, Wave.NO_DATA, Wave.NO_DATA }, START, SAMPLING_RATE));
+
+        assertArrayEquals(new int[] { 1, 2 }, ring.getWave(START, START + 1).buffer);
+        assertEquals(START + .1, ring.getEndTime(), 1e-9);
+    }
+}
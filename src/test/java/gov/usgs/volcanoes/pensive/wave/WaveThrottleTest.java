@@ -0,0 +1,39 @@
+package gov.usgs.volcanoes.pensive.wave;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import gov.usgs.plot.data.Wave;
+import gov.usgs.volcanoes.core.configfile.ConfigFile;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WaveThrottleTest {
+
+    @Test
+    public void interruptedRequestIsNotMade() {
+        ConfigFile config = new ConfigFile();
+        config.put("backfillSampleRate", "1");
+        WaveThrottle throttle = new WaveThrottle(config);
+        final AtomicInteger requests = new AtomicInteger();
+        WaveFetcher throttled = throttle.wrap(new WaveFetcher() {
+            public Wave getWave(String channel, double t1, double t2) {
+                requests.incrementAndGet();
+                return new Wave(new int[100], t1, 100);
+            }
+        });
+
+        throttle.afterRequest(100);
+        Thread.currentThread().interrupt();
+        try {
+            assertNull(throttled.getWave("STA EHZ AV", 0, 1));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(0, requests.get());
+    }
+}